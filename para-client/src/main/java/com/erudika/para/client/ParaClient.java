@@ -362,6 +362,9 @@ public final class ParaClient {
 				if (p.getSortby() != null) {
 					map.put("sort", Collections.singletonList(p.getSortby()));
 				}
+				if (p.getTrackTotalHits() != null) {
+					map.put("trackTotalHits", Collections.singletonList(Integer.toString(p.getTrackTotalHits())));
+				}
 			}
 		}
 		return map;
@@ -784,6 +787,32 @@ public final class ParaClient {
 		return getItems(find("wildcard", params), pager);
 	}
 
+	/**
+	 * Searches for objects that have a property with a value within a range, e.g. objects created in the last hour.
+	 * Numeric fields, like "timestamp", are compared as numbers, all other fields - as strings.
+	 * @param <P> type of the object
+	 * @param type the type of object to search for. See {@link com.erudika.para.core.ParaObject#getType()}
+	 * @param field the property name of an object
+	 * @param from the lower bound (inclusive) or null for no lower bound
+	 * @param to the upper bound (inclusive) or null for no upper bound
+	 * @param pager a {@link com.erudika.para.utils.Pager}
+	 * @return a list of objects found
+	 */
+	public <P extends ParaObject> List<P> findRange(String type, String field, String from, String to,
+			Pager... pager) {
+		MultivaluedMap<String, String> params = new MultivaluedHashMap<>();
+		params.putSingle("field", field);
+		if (!StringUtils.isBlank(from)) {
+			params.putSingle("from", from);
+		}
+		if (!StringUtils.isBlank(to)) {
+			params.putSingle("to", to);
+		}
+		params.putSingle(Config._TYPE, type);
+		params.putAll(pagerToParams(pager));
+		return getItems(find("range", params), pager);
+	}
+
 	/**
 	 * Counts indexed objects.
 	 * @param type the type of object to search for. See {@link com.erudika.para.core.ParaObject#getType()}
@@ -1181,6 +1210,25 @@ public final class ParaClient {
 		return keys;
 	}
 
+	/**
+	 * Rebuilds the search index of this App in the background.
+	 * The progress can be checked with {@link #getRebuildIndexStatus()}.
+	 * @return a response message
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> rebuildIndex() {
+		return getEntity(invokePost("_reindex", null), Map.class);
+	}
+
+	/**
+	 * Returns the progress of the last index rebuild for this App.
+	 * @return a map of status information, e.g. objects reindexed, objects per second and ETA
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> getRebuildIndexStatus() {
+		return getEntity(invokeGet("_reindex", null), Map.class);
+	}
+
 	/**
 	 * Returns all registered types for this App.
 	 * @return a map of plural-singular form of all the registered types.
@@ -164,4 +164,25 @@ public interface Cache {
 	 * @see #removeAll(java.util.List)
 	 */
 	void removeAll(String appid, List<String> ids);
+
+	/**
+	 * Remembers that an object doesn't exist in the data store, so that repeated reads for it
+	 * can be answered from cache. The entry is replaced when an object with that id is put in the cache.
+	 * Implementations which don't support negative entries may ignore this.
+	 * @param appid the name of the application
+	 * @param id the id of the missing object, not null or empty
+	 * @param ttlSeconds the time to live for the entry
+	 */
+	default void putMissing(String appid, String id, Long ttlSeconds) { }
+
+	/**
+	 * Checks if an object is known not to exist in the data store.
+	 * @param appid the name of the application
+	 * @param id the object's id, not null or empty
+	 * @return true if {@link #putMissing(java.lang.String, java.lang.String, java.lang.Long)}
+	 * was called for that id and the entry hasn't expired or been replaced
+	 */
+	default boolean isMissing(String appid, String id) {
+		return false;
+	}
 }
@@ -38,6 +38,7 @@ public class MockCache implements Cache {
 
 	private static final Logger logger = LoggerFactory.getLogger(MockCache.class);
 	private Map<String, Map<String, Object>> maps = new ConcurrentHashMap<>();
+	private Map<String, Long> missing = new ConcurrentHashMap<>();
 
 	@Override
 	public boolean contains(String appid, String id) {
@@ -56,6 +57,7 @@ public class MockCache implements Cache {
 	public <T> void put(String appid, String id, T object) {
 		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
 			getMap(appid).put(id, object);
+			missing.remove(appid + "/" + id);
 			logger.debug("Cache.put() {} {}", appid, id);
 		}
 	}
@@ -69,6 +71,7 @@ public class MockCache implements Cache {
 		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
 			getMap(appid).put(id, object);
 			getMap(appid).put(id + ":ttl", Utils.timestamp() + ttlSeconds * 1000);
+			missing.remove(appid + "/" + id);
 			logger.debug("Cache.put() {} {} ttl {}", appid, id, ttlSeconds);
 		}
 	}
@@ -80,6 +83,7 @@ public class MockCache implements Cache {
 			for (Map.Entry<String, T> entry : objects.entrySet()) {
 				if (!StringUtils.isBlank(entry.getKey()) && entry.getValue() != null) {
 					cleanMap.put(entry.getKey(), entry.getValue());
+					missing.remove(appid + "/" + entry.getKey());
 				}
 			}
 			getMap(appid).putAll(cleanMap);
@@ -130,6 +134,7 @@ public class MockCache implements Cache {
 		if (!StringUtils.isBlank(id) && !StringUtils.isBlank(appid)) {
 			logger.debug("Cache.remove() {} {}", appid, id);
 			getMap(appid).remove(id);
+			missing.remove(appid + "/" + id);
 		}
 	}
 
@@ -138,6 +143,7 @@ public class MockCache implements Cache {
 		if (!StringUtils.isBlank(appid)) {
 			logger.debug("Cache.removeAll() {}", appid);
 			getMap(appid).clear();
+			missing.keySet().removeIf((key) -> key.startsWith(appid + "/"));
 		}
 	}
 
@@ -153,6 +159,27 @@ public class MockCache implements Cache {
 		}
 	}
 
+	@Override
+	public void putMissing(String appid, String id, Long ttlSeconds) {
+		if (!StringUtils.isBlank(id) && !StringUtils.isBlank(appid) && ttlSeconds != null && ttlSeconds > 0L) {
+			missing.put(appid + "/" + id, Utils.timestamp() + ttlSeconds * 1000);
+			logger.debug("Cache.putMissing() {} {} ttl {}", appid, id, ttlSeconds);
+		}
+	}
+
+	@Override
+	public boolean isMissing(String appid, String id) {
+		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
+			return false;
+		}
+		Long ttl = missing.get(appid + "/" + id);
+		if (ttl != null && isExpired(ttl)) {
+			missing.remove(appid + "/" + id);
+			return false;
+		}
+		return ttl != null;
+	}
+
 	private boolean isExpired(Long ttl) {
 		if (ttl == null) {
 			return false;
@@ -120,6 +120,10 @@ public class App implements ParaObject, Serializable {
 	// used to store various settings, OAuth keys, etc.
 	@Stored private Map<String, Object> settings;
 
+	// compiled from resourcePermissions on first use, discarded when they change
+	private transient volatile CompiledPermissions compiledPermissions;
+	private transient volatile long permissionsVersion;
+
 	/**
 	 * No-args constructor.
 	 */
@@ -253,6 +257,27 @@ public class App implements ParaObject, Serializable {
 	 */
 	public void setResourcePermissions(Map<String, Map<String, List<String>>> resourcePermissions) {
 		this.resourcePermissions = resourcePermissions;
+		permissionsChanged();
+	}
+
+	/**
+	 * Returns the compiled form of the permissions map, compiling it if it has changed.
+	 * @return the compiled permissions
+	 */
+	private CompiledPermissions getCompiledPermissions() {
+		long version = permissionsVersion;
+		CompiledPermissions compiled = compiledPermissions;
+		if (compiled == null || compiled.getVersion() != version) {
+			compiled = CompiledPermissions.compile(getResourcePermissions(), version);
+			// a concurrent change bumps the version, so a stale result is never used
+			compiledPermissions = compiled;
+		}
+		return compiled;
+	}
+
+	private void permissionsChanged() {
+		permissionsVersion++;
+		compiledPermissions = null;
 	}
 
 	/**
@@ -599,6 +624,7 @@ public class App implements ParaObject, Serializable {
 				perm.add(allowedMethod.toString());
 			}
 			getResourcePermissions().get(subjectid).put(resourcePath, perm);
+			permissionsChanged();
 			return true;
 		}
 		return false;
@@ -640,6 +666,7 @@ public class App implements ParaObject, Serializable {
 			if (getResourcePermissions().get(subjectid).isEmpty()) {
 				getResourcePermissions().remove(subjectid);
 			}
+			permissionsChanged();
 			return true;
 		}
 		return false;
@@ -653,6 +680,7 @@ public class App implements ParaObject, Serializable {
 	public boolean revokeAllResourcePermissions(String subjectid) {
 		if (!StringUtils.isBlank(subjectid) && getResourcePermissions().containsKey(subjectid)) {
 			getResourcePermissions().remove(subjectid);
+			permissionsChanged();
 			return true;
 		}
 		return false;
@@ -670,16 +698,16 @@ public class App implements ParaObject, Serializable {
 		if (subjectid != null && !StringUtils.isBlank(resourcePath) && !StringUtils.isBlank(httpMethod)) {
 			// urlDecode resource path
 			resourcePath = Utils.urlDecode(resourcePath);
+			CompiledPermissions permissions = getCompiledPermissions();
 
-			if (getResourcePermissions().isEmpty()) {
+			if (permissions.isEmpty()) {
 				// Default policy is "deny all". Returning true here would make it "allow all".
 				return false;
 			}
 			if (isDeniedExplicitly(subjectid, resourcePath, httpMethod)) {
 				return false;
 			}
-			if (getResourcePermissions().containsKey(subjectid) &&
-					getResourcePermissions().get(subjectid).containsKey(resourcePath)) {
+			if (permissions.hasResource(subjectid, resourcePath)) {
 				// subject-specific permissions have precedence over wildcard permissions
 				// i.e. only the permissions for that subjectid are checked, other permissions are ignored
 				allow = isAllowed(subjectid, resourcePath, httpMethod);
@@ -704,47 +732,18 @@ public class App implements ParaObject, Serializable {
 	}
 
 	final boolean isAllowed(String subjectid, String resourcePath, String httpMethod) {
-		boolean allowed = false;
-		if (subjectid != null && resourcePath != null && httpMethod != null &&
-				getResourcePermissions().containsKey(subjectid)) {
+		if (subjectid != null && resourcePath != null && httpMethod != null) {
 			httpMethod = httpMethod.toUpperCase();
 			String wildcard = ALLOW_ALL;
-			String exactPathToMatch = resourcePath;
 			if (fromString(httpMethod) == GUEST) {
 				// special case where we have wildcard permissions * but public access is not allowed
 				wildcard = httpMethod;
 			}
-			if (StringUtils.contains(resourcePath, '/')) {
-				// we assume that a full resource path is given like: 'users/something/123'
-				// so we check to see if 'users/something' is in the list of resources.
-				// we don't want 'users/someth' to match, but only the exact full path
-				String fragment = resourcePath.substring(0, resourcePath.lastIndexOf('/'));
-				for (String resource : getResourcePermissions().get(subjectid).keySet()) {
-					if (StringUtils.startsWith(fragment, resource) &&
-							pathMatches(subjectid, resource, httpMethod, wildcard)) {
-						allowed = true;
-						break;
-					}
-					// allow basic wildcard matching
-					if (StringUtils.endsWith(resource, "/*") &&
-							resourcePath.startsWith(resource.substring(0, resource.length() - 1))) {
-						exactPathToMatch = resource;
-						break;
-					}
-				}
-			}
-			if (!allowed && getResourcePermissions().get(subjectid).containsKey(exactPathToMatch)) {
-				// check exact resource path as it is
-				allowed = pathMatches(subjectid, exactPathToMatch, httpMethod, wildcard);
-			}
+			// for a full resource path like 'users/something/123' this also checks if 'users/something'
+			// or a wildcard like 'users/*' is in the list of resources
+			return getCompiledPermissions().isAllowed(subjectid, resourcePath, httpMethod, wildcard);
 		}
-		return allowed;
-	}
-
-
-	private boolean pathMatches(String subjectid, String path, String httpMethod, String wildcard) {
-		return (getResourcePermissions().get(subjectid).get(path).contains(httpMethod)
-						|| getResourcePermissions().get(subjectid).get(path).contains(wildcard));
+		return false;
 	}
 
 	/**
@@ -755,16 +754,17 @@ public class App implements ParaObject, Serializable {
 	 * @return true if access is explicitly denied
 	 */
 	final boolean isDeniedExplicitly(String subjectid, String resourcePath, String httpMethod) {
+		CompiledPermissions permissions = getCompiledPermissions();
 		if (StringUtils.isBlank(subjectid) || StringUtils.isBlank(resourcePath) ||
-				StringUtils.isBlank(httpMethod) || getResourcePermissions().isEmpty()) {
+				StringUtils.isBlank(httpMethod) || permissions.isEmpty()) {
 			return false;
 		}
 		// urlDecode resource path
 		resourcePath = Utils.urlDecode(resourcePath);
-		if (getResourcePermissions().containsKey(subjectid)) {
-			if (getResourcePermissions().get(subjectid).containsKey(resourcePath)) {
+		if (permissions.hasSubject(subjectid)) {
+			if (permissions.hasResource(subjectid, resourcePath)) {
 				return !isAllowed(subjectid, resourcePath, httpMethod);
-			} else if (getResourcePermissions().get(subjectid).containsKey(ALLOW_ALL)) {
+			} else if (permissions.hasResource(subjectid, ALLOW_ALL)) {
 				return !isAllowed(subjectid, ALLOW_ALL, httpMethod);
 			}
 		}
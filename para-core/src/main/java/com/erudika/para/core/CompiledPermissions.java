@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A compiled form of {@link App#getResourcePermissions()}. Each subject's resource paths are stored in a hash map,
+ * for exact lookups, and in a trie keyed by path segments, which answers the prefix and wildcard ({@code path/*})
+ * checks of {@link App#isAllowedTo(String, String, String)} in a single pass over the requested path, instead of
+ * scanning every resource path granted to the subject. Subjects are compiled on first use, so a check only pays
+ * for the subjects it looks at.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class CompiledPermissions {
+
+	private static final int[] NO_LENGTHS = new int[0];
+
+	private final Map<String, Map<String, List<String>>> permissions;
+	private final ConcurrentMap<String, Subject> subjects;
+	private final long version;
+	private final boolean empty;
+
+	private CompiledPermissions(Map<String, Map<String, List<String>>> permissions, long version) {
+		this.permissions = permissions;
+		this.subjects = new ConcurrentHashMap<>();
+		this.version = version;
+		boolean noSubjects = true;
+		for (Map.Entry<String, Map<String, List<String>>> entry : permissions.entrySet()) {
+			if (entry.getKey() != null && entry.getValue() != null) {
+				noSubjects = false;
+				break;
+			}
+		}
+		this.empty = noSubjects;
+	}
+
+	/**
+	 * Wraps a permissions map. The subjects in it are compiled lazily.
+	 * @param permissions subject_id -> resource_name -> [http_methods_allowed]
+	 * @param version the version of the permissions map
+	 * @return a new instance
+	 */
+	static CompiledPermissions compile(Map<String, Map<String, List<String>>> permissions, long version) {
+		return new CompiledPermissions(permissions, version);
+	}
+
+	long getVersion() {
+		return version;
+	}
+
+	boolean isEmpty() {
+		return empty;
+	}
+
+	boolean hasSubject(String subjectid) {
+		return subjectid != null && permissions.get(subjectid) != null;
+	}
+
+	boolean hasResource(String subjectid, String resourcePath) {
+		Subject subject = getSubject(subjectid);
+		return subject != null && subject.exact.containsKey(resourcePath);
+	}
+
+	/**
+	 * Checks if a method is allowed on a resource. For a full resource path like 'users/something/123',
+	 * any resource which is a prefix of 'users/something' matches, as does any wildcard resource
+	 * like 'users/*'. If both match, an allowing prefix wins, otherwise the longest wildcard decides.
+	 * Without a match, only the exact resource path is checked.
+	 * @param subjectid subject id
+	 * @param resourcePath a decoded resource path
+	 * @param httpMethod an upper case method name
+	 * @param wildcard the method name which allows all methods
+	 * @return true if allowed
+	 */
+	boolean isAllowed(String subjectid, String resourcePath, String httpMethod, String wildcard) {
+		Subject subject = getSubject(subjectid);
+		if (subject == null) {
+			return false;
+		}
+		if (resourcePath.indexOf('/') >= 0) {
+			String[] segments = StringUtils.splitPreserveAllTokens(resourcePath, '/');
+			// the last segment isn't part of the prefix, i.e. 'users/something' for 'users/something/123'
+			int last = segments.length - 1;
+			Set<String> wildcardMethods = null;
+			Node node = subject.root;
+			for (int depth = 0; node != null; depth++) {
+				if (depth > 0 && node.methods != null && matches(node.methods, httpMethod, wildcard)) {
+					return true;
+				}
+				if (node.wildcardMethods != null) {
+					wildcardMethods = node.wildcardMethods;
+				}
+				if (depth == last) {
+					break;
+				}
+				if (node.isAllowedByPartOf(segments[depth], httpMethod, wildcard)) {
+					return true;
+				}
+				node = node.child(segments[depth]);
+			}
+			if (wildcardMethods != null) {
+				return matches(wildcardMethods, httpMethod, wildcard);
+			}
+		}
+		Set<String> methods = subject.exact.get(resourcePath);
+		return methods != null && matches(methods, httpMethod, wildcard);
+	}
+
+	private Subject getSubject(String subjectid) {
+		if (subjectid == null) {
+			return null;
+		}
+		Subject subject = subjects.get(subjectid);
+		if (subject == null) {
+			Map<String, List<String>> resources = permissions.get(subjectid);
+			if (resources == null) {
+				return null;
+			}
+			subject = new Subject(resources);
+			Subject existing = subjects.putIfAbsent(subjectid, subject);
+			if (existing != null) {
+				subject = existing;
+			}
+		}
+		return subject;
+	}
+
+	private static boolean matches(Set<String> methods, String httpMethod, String wildcard) {
+		return methods.contains(httpMethod) || methods.contains(wildcard);
+	}
+
+	private static final class Subject {
+		private final Map<String, Set<String>> exact;
+		private final Node root = new Node();
+
+		Subject(Map<String, List<String>> resources) {
+			exact = new HashMap<>(resources.size());
+			for (Map.Entry<String, List<String>> entry : resources.entrySet()) {
+				String resource = entry.getKey();
+				if (resource == null) {
+					continue;
+				}
+				Set<String> methods = (entry.getValue() == null) ? Collections.<String>emptySet() :
+						Collections.unmodifiableSet(new HashSet<>(entry.getValue()));
+				exact.put(resource, methods);
+				if (resource.isEmpty()) {
+					continue;
+				}
+				String[] segments = StringUtils.splitPreserveAllTokens(resource, '/');
+				Node parent = root.insert(segments, segments.length - 1);
+				parent.insert(segments[segments.length - 1]).methods = methods;
+				parent.addPartLength(segments[segments.length - 1].length());
+				if (resource.endsWith("/*")) {
+					parent.wildcardMethods = methods;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A path segment. A resource matches a path as a plain string prefix, so its last segment may also be
+	 * the beginning of a longer segment of the path - the lengths of those segments are kept to find them.
+	 */
+	private static final class Node {
+		private Map<String, Node> children;
+		private Set<String> methods;
+		private Set<String> wildcardMethods;
+		private int[] partLengths = NO_LENGTHS;
+
+		Node child(String segment) {
+			return (children == null) ? null : children.get(segment);
+		}
+
+		Node insert(String segment) {
+			if (children == null) {
+				children = new HashMap<>(2);
+			}
+			Node child = children.get(segment);
+			if (child == null) {
+				child = new Node();
+				children.put(segment, child);
+			}
+			return child;
+		}
+
+		/**
+		 * @return the node for the first {@code count} segments
+		 */
+		Node insert(String[] segments, int count) {
+			Node node = this;
+			for (int i = 0; i < count; i++) {
+				node = node.insert(segments[i]);
+			}
+			return node;
+		}
+
+		void addPartLength(int length) {
+			if (Arrays.binarySearch(partLengths, length) < 0) {
+				int[] lengths = Arrays.copyOf(partLengths, partLengths.length + 1);
+				lengths[partLengths.length] = length;
+				Arrays.sort(lengths);
+				partLengths = lengths;
+			}
+		}
+
+		/**
+		 * @return true if a resource ending with the beginning of the given path segment allows the method
+		 */
+		boolean isAllowedByPartOf(String segment, String httpMethod, String wildcard) {
+			for (int length : partLengths) {
+				if (length >= segment.length()) {
+					break;
+				}
+				Node child = children.get(segment.substring(0, length));
+				if (child != null && child.methods != null && matches(child.methods, httpMethod, wildcard)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -245,7 +245,7 @@ public enum CoreUtils implements InitializeListener {
 			Map<String, Object> terms = new HashMap<>();
 			terms.put(Config._NAME, link.getName());
 			terms.put(idField, obj.getId());
-			return getSearch().findTerms(obj.getAppid(), link.getType(), terms, true, pager);
+			return findTerms(obj.getAppid(), link.getType(), terms, pager);
 		}
 
 		@Override
@@ -295,7 +295,17 @@ public enum CoreUtils implements InitializeListener {
 				terms.put(field, term);
 			}
 			terms.put(Config._PARENTID, obj.getId());
-			return getSearch().findTerms(obj.getAppid(), type2, terms, true, pager);
+			return findTerms(obj.getAppid(), type2, terms, pager);
+		}
+
+		/**
+		 * Queries the DAO directly if it can match the terms (e.g. they refer to indexed columns),
+		 * skipping the search index and the subsequent DB read. Falls back to the search index otherwise.
+		 */
+		private <P extends ParaObject> List<P> findTerms(String appid, String type, Map<String, ?> terms,
+				Pager... pager) {
+			List<P> results = getDao().findTerms(appid, type, terms, true, pager);
+			return (results != null) ? results : getSearch().<P>findTerms(appid, type, terms, true, pager);
 		}
 
 		@Override
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.core.utils;
+
+import com.erudika.para.annotations.Locked;
+import com.erudika.para.annotations.Stored;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.utils.Config;
+import com.erudika.para.utils.Utils;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The mapping metadata of a {@link ParaObject} class - its fields, their annotations and accessors.
+ * Built once per class and used by the object mapping methods in {@link ParaObjectUtils}.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class ParaObjectSchema {
+
+	private static final Logger logger = LoggerFactory.getLogger(ParaObjectSchema.class);
+	private static final ConcurrentMap<Class<?>, ParaObjectSchema> SCHEMAS = new ConcurrentHashMap<>();
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final List<Property> properties;
+	private final List<Property> storedPropertiesList;
+	private final Map<String, Property> propertiesByJsonName;
+	private final Map<String, Property> storedProperties;
+	private final Map<String, Field> fieldMap;
+
+	private ParaObjectSchema(Class<? extends ParaObject> clazz) {
+		Map<String, PropertyDescriptor> descriptors = new HashMap<>();
+		try {
+			BeanInfo info = Introspector.getBeanInfo(clazz);
+			for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+				descriptors.put(pd.getName(), pd);
+			}
+		} catch (Exception e) {
+			logger.warn("Failed to introspect class {}: {}", clazz.getName(), e.getMessage());
+		}
+		List<Field> fields = Utils.getAllDeclaredFields(clazz);
+		List<Property> props = new ArrayList<>(fields.size());
+		List<Property> storedList = new ArrayList<>(fields.size());
+		Map<String, Property> byJsonName = new HashMap<>();
+		Map<String, Property> stored = new HashMap<>();
+		Map<String, Field> fieldsByName = new HashMap<>();
+		for (Field field : fields) {
+			Property prop = new Property(field, descriptors.get(field.getName()));
+			props.add(prop);
+			byJsonName.put(prop.getJsonName(), prop);
+			if (prop.isStored()) {
+				// the type comes first so that readers can pick the class before reading the other fields
+				storedList.add(Config._TYPE.equals(prop.getJsonName()) ? 0 : storedList.size(), prop);
+				stored.put(prop.getName(), prop);
+				stored.put(prop.getJsonName(), prop);
+				fieldsByName.put(prop.getName(), field);
+				fieldsByName.put(prop.getJsonName(), field);
+			}
+		}
+		for (int i = 0; i < storedList.size(); i++) {
+			storedList.get(i).storedIndex = i;
+		}
+		this.properties = Collections.unmodifiableList(props);
+		this.storedPropertiesList = Collections.unmodifiableList(storedList);
+		this.propertiesByJsonName = Collections.unmodifiableMap(byJsonName);
+		this.storedProperties = Collections.unmodifiableMap(stored);
+		this.fieldMap = Collections.unmodifiableMap(fieldsByName);
+	}
+
+	/**
+	 * Returns the schema of a class.
+	 * @param clazz a class
+	 * @return the schema
+	 */
+	static ParaObjectSchema forClass(Class<? extends ParaObject> clazz) {
+		ParaObjectSchema schema = SCHEMAS.get(clazz);
+		if (schema == null) {
+			schema = new ParaObjectSchema(clazz);
+			ParaObjectSchema existing = SCHEMAS.putIfAbsent(clazz, schema);
+			if (existing != null) {
+				schema = existing;
+			}
+		}
+		return schema;
+	}
+
+	/**
+	 * @return all non-transient fields of the class and its superclasses
+	 */
+	List<Property> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return the {@link Stored} fields, with the type field first
+	 */
+	List<Property> getStoredProperties() {
+		return storedPropertiesList;
+	}
+
+	/**
+	 * @param jsonName the JSON name of a field
+	 * @return the property with that JSON name or null
+	 */
+	Property getProperty(String jsonName) {
+		return propertiesByJsonName.get(jsonName);
+	}
+
+	/**
+	 * @param name a field name or its JSON name
+	 * @return the {@link Stored} property with that name or null
+	 */
+	Property getStoredProperty(String name) {
+		return storedProperties.get(name);
+	}
+
+	/**
+	 * @return a map of {@link Stored} field names and JSON names to fields
+	 */
+	Map<String, Field> getFieldMap() {
+		return fieldMap;
+	}
+
+	/**
+	 * A field and its accessors.
+	 */
+	static final class Property {
+
+		private final Field field;
+		private final String name;
+		private final String jsonName;
+		private final boolean stored;
+		private final boolean locked;
+		private final boolean basicType;
+		private final Class<?> boxedType;
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		private int storedIndex = -1;
+
+		Property(Field field, PropertyDescriptor descriptor) {
+			JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+			this.field = field;
+			this.name = field.getName();
+			this.jsonName = (jsonProperty == null) ? name : jsonProperty.value();
+			this.stored = field.isAnnotationPresent(Stored.class);
+			this.locked = field.isAnnotationPresent(Locked.class);
+			this.basicType = Utils.isBasicType(field.getType());
+			this.boxedType = ClassUtils.primitiveToWrapper(field.getType());
+			this.getter = (descriptor == null) ? null : toHandle(descriptor.getReadMethod(), GETTER_TYPE);
+			this.setter = (descriptor == null) ? null : toHandle(descriptor.getWriteMethod(), SETTER_TYPE);
+		}
+
+		private static MethodHandle toHandle(Method method, MethodType type) {
+			if (method == null) {
+				return null;
+			}
+			try {
+				method.setAccessible(true);
+				return MethodHandles.lookup().unreflect(method).asType(type);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+
+		Field getField() {
+			return field;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		String getJsonName() {
+			return jsonName;
+		}
+
+		boolean isStored() {
+			return stored;
+		}
+
+		/**
+		 * @return the position of the property in {@link ParaObjectSchema#getStoredProperties()} or -1
+		 */
+		int getStoredIndex() {
+			return storedIndex;
+		}
+
+		boolean isBasicType() {
+			return basicType;
+		}
+
+		boolean isReadable() {
+			return getter != null;
+		}
+
+		/**
+		 * @param annotation an annotation type
+		 * @return true if the field is annotated with it
+		 */
+		boolean hasAnnotation(Class<? extends Annotation> annotation) {
+			if (annotation == null) {
+				return false;
+			}
+			return (annotation == Locked.class) ? locked : field.isAnnotationPresent(annotation);
+		}
+
+		/**
+		 * Reads the value of the property through its getter.
+		 * @param bean an object
+		 * @return the value
+		 * @throws Exception if the property is not readable
+		 */
+		Object get(Object bean) throws Exception {
+			if (getter == null) {
+				return PropertyUtils.getProperty(bean, name);
+			}
+			try {
+				return (Object) getter.invokeExact(bean);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+
+		/**
+		 * Sets the value of the property through its setter. Values which need to be converted to the type
+		 * of the property (including nulls) are handed over to {@link BeanUtils#setProperty}.
+		 * @param bean an object
+		 * @param value a value
+		 * @throws Exception if the value can't be set
+		 */
+		void set(Object bean, Object value) throws Exception {
+			if (setter == null || value == null || !boxedType.isInstance(value)) {
+				BeanUtils.setProperty(bean, name, value);
+				return;
+			}
+			try {
+				setter.invokeExact(bean, value);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+
+		/**
+		 * Sets the value of the property through its setter, without any type conversion.
+		 * @param bean an object
+		 * @param value a value of the same type as the property
+		 * @throws Exception if the value can't be set
+		 */
+		void setExact(Object bean, Object value) throws Exception {
+			if (setter == null || (value == null ? field.getType().isPrimitive() : !boxedType.isInstance(value))) {
+				PropertyUtils.setProperty(bean, name, value);
+				return;
+			}
+			try {
+				setter.invokeExact(bean, value);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+}
@@ -17,21 +17,24 @@
  */
 package com.erudika.para.core.utils;
 
-import com.erudika.para.annotations.Stored;
 import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.Sysprop;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Utils;
-import static com.erudika.para.utils.Utils.getAllDeclaredFields;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -39,8 +42,6 @@ import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
-import org.apache.commons.beanutils.BeanUtils;
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.collections.bidimap.DualHashBidiMap;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -63,7 +64,6 @@ public final class ParaObjectUtils {
 	// maps lowercase simple names to class objects
 	private static final Map<String, Class<? extends ParaObject>> CORE_CLASSES = new DualHashBidiMap();
 
-	private static final Map<String, Map<String, Field>> typeFieldMap = new HashMap<>();
 	private static final Timestamp epoch = new Timestamp(0L);
 	// private static final String searchDateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSSZ||yyyy-MM-dd'T'HH:mm:ssZ||yyyy-MM-dd'T'HH:mmZ||yyyy-MM-dd'T'HH:mm:ss.SSS||yyyy-MM-dd'T'HH:mm:ss||yyyy-MM-dd'T'HH:mm||yyyy-MM-dd HH:mm:ss.SSS||yyyy-MM-dd HH:mm:ss||yyyy-MM-dd HH:mm||yyyy-MM-dd||yyyy/MM/dd||yyyyMMdd||yyyyMM||yyyy-MM||yyyy/MM||yyyy||epoch_millis||epoch_second";
 	private static final String searchDateFormat = "yyyy-MM-dd HH:mm:ss.SSS||yyyy-MM-dd HH:mm:ss||yyyy-MM-dd HH:mm||yyyy-MM-dd||yyyy/MM/dd||yyyyMMdd||yyyyMM||yyyy-MM||yyyy/MM||yyyy||epoch_millis||epoch_second";
@@ -224,25 +224,19 @@ public final class ParaObjectUtils {
 			return map;
 		}
 		try {
-			List<Field> fields = getAllDeclaredFields(pojo.getClass());
+			ParaObjectSchema schema = ParaObjectSchema.forClass(pojo.getClass());
 			// filter transient fields and those without annotations
-			for (Field field : fields) {
-				boolean dontSkip = ((filter == null) ? true : !field.isAnnotationPresent(filter));
-				if (field.isAnnotationPresent(Stored.class) && dontSkip) {
-					String name = field.getName();
-					Object value = PropertyUtils.getProperty(pojo, name);
-					if ("properties".equals(name)) {
+			for (ParaObjectSchema.Property prop : schema.getProperties()) {
+				if (prop.isStored() && !prop.hasAnnotation(filter)) {
+					Object value = prop.get(pojo);
+					if ("properties".equals(prop.getName())) {
 						map.putAll((Map) value);
 					} else {
 						if (!(value == null || (value instanceof List && ((List) value).isEmpty()) || (value instanceof Map && ((Map) value).isEmpty()))) {
-							if (!Utils.isBasicType(field.getType()) && flattenNestedObjectsToString) {
+							if (!prop.isBasicType() && flattenNestedObjectsToString) {
 								value = getJsonWriterNoIdent().writeValueAsString(value);
 							}
-							JsonProperty annotation = field.getAnnotation(JsonProperty.class);
-							if(annotation!=null){
-								name = annotation.value();
-							}
-							map.put(name, value);
+							map.put(prop.getJsonName(), value);
 						}
 					}
 				}
@@ -271,6 +265,123 @@ public final class ParaObjectUtils {
 		return Collections.unmodifiableMap(map);
 	}
 
+	/**
+	 * Converts the annotated fields of a domain object to a JSON string. The result is the same as serializing
+	 * the map returned by {@code getAnnotatedFields(pojo, false)}, but the object is written in a single pass
+	 * without creating an intermediate map.
+	 *
+	 * @param <P> the object type
+	 * @param pojo the object to convert to JSON
+	 * @return a JSON object
+	 * @see #writeAnnotatedFields(com.fasterxml.jackson.core.JsonGenerator, com.erudika.para.core.ParaObject,
+	 * java.lang.Class)
+	 */
+	public static <P extends ParaObject> String getAnnotatedFieldsAsJSON(P pojo) {
+		StringWriter out = new StringWriter();
+		try (JsonGenerator gen = JSON_MAPPER.getFactory().createGenerator(out)) {
+			writeAnnotatedFields(gen, pojo, null);
+		} catch (Exception ex) {
+			logger.error(null, ex);
+			return "{}";
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Converts the annotated fields of a domain object to a JSON tree. The result is the same as converting
+	 * the map returned by {@code getAnnotatedFields(pojo, false)} to a tree.
+	 *
+	 * @param <P> the object type
+	 * @param pojo the object to convert
+	 * @return a JSON object node
+	 */
+	public static <P extends ParaObject> JsonNode getAnnotatedFieldsAsTree(P pojo) {
+		TokenBuffer buffer = new TokenBuffer(JSON_MAPPER, false);
+		try {
+			writeAnnotatedFields(buffer, pojo, null);
+			return JSON_MAPPER.readTree(buffer.asParser());
+		} catch (Exception ex) {
+			logger.error(null, ex);
+		}
+		return JSON_MAPPER.createObjectNode();
+	}
+
+	/**
+	 * Writes the annotated fields of a domain object as a JSON object, in a single pass. Nested objects are
+	 * preserved, except maps and lists of complex values which are written as JSON strings, exactly like
+	 * {@link #getAnnotatedFields(com.erudika.para.core.ParaObject, java.lang.Class, boolean)} does when
+	 * {@code flattenNestedObjectsToString} is false. The type field is always written first.
+	 *
+	 * @param <P> the object type
+	 * @param gen a JSON generator
+	 * @param pojo the object to write
+	 * @param filter a filter annotation. fields that have it will be skipped
+	 * @throws IOException if writing fails
+	 */
+	public static <P extends ParaObject> void writeAnnotatedFields(JsonGenerator gen, P pojo,
+			Class<? extends Annotation> filter) throws IOException {
+		gen.writeStartObject();
+		if (pojo != null) {
+			ParaObjectSchema schema = ParaObjectSchema.forClass(pojo.getClass());
+			for (ParaObjectSchema.Property prop : schema.getStoredProperties()) {
+				if (prop.hasAnnotation(filter)) {
+					continue;
+				}
+				Object value;
+				try {
+					value = prop.get(pojo);
+				} catch (IOException | RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e);
+				}
+				if ("properties".equals(prop.getName())) {
+					if (value instanceof Map) {
+						for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+							// declared fields take precedence over user-defined properties with the same name
+							if (entry.getKey() != null && schema.getStoredProperty(entry.getKey()) == null) {
+								gen.writeFieldName(entry.getKey());
+								writeFieldValue(gen, entry.getValue());
+							}
+						}
+					}
+				} else if (!(value == null || (value instanceof List && ((List) value).isEmpty()) ||
+						(value instanceof Map && ((Map) value).isEmpty()))) {
+					gen.writeFieldName(prop.getJsonName());
+					writeFieldValue(gen, value);
+				}
+			}
+		}
+		gen.writeEndObject();
+	}
+
+	private static void writeFieldValue(JsonGenerator gen, Object value) throws IOException {
+		if (value == null) {
+			gen.writeNull();
+		} else if (value instanceof String) {
+			gen.writeString((String) value);
+		} else if (value instanceof Long) {
+			gen.writeNumber((Long) value);
+		} else if (value instanceof Integer) {
+			gen.writeNumber((Integer) value);
+		} else if (value instanceof Boolean) {
+			gen.writeBoolean((Boolean) value);
+		} else if (value instanceof Map || (value instanceof List && hasComplexType((List) value))) {
+			gen.writeString(getJsonWriterNoIdent().writeValueAsString(value));
+		} else {
+			getJsonWriterNoIdent().writeValue(gen, value);
+		}
+	}
+
+	private static boolean hasComplexType(List list) {
+		for (Object object : list) {
+			if (object != null && (object instanceof Map || object instanceof List || !Utils.isBasicType(object.getClass()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * @see #setAnnotatedFields(com.erudika.para.core.ParaObject, java.util.Map, java.lang.Class)
 	 * @param <P> the object type
@@ -304,29 +415,22 @@ public final class ParaObjectUtils {
 				// try to find a declared class in the core package
 				pojo = (P) toClass((String) data.get(Config._TYPE)).getConstructor().newInstance();
 			}
-			List<Field> fields = getAllDeclaredFields(pojo.getClass());
+			ParaObjectSchema schema = ParaObjectSchema.forClass(pojo.getClass());
 			Map<String, Object> props = new HashMap<>(data);
-			for (Field field : fields) {
-				boolean dontSkip = ((filter == null) ? true : !field.isAnnotationPresent(filter));
-				String name = field.getName();
-				JsonProperty annotation = field.getAnnotation(JsonProperty.class);
-				String jsonName = name;
-				if(annotation!=null){
-					jsonName = annotation.value();
-				}
-				Object value = data.get(jsonName);
-				if (field.isAnnotationPresent(Stored.class) && dontSkip) {
+			for (ParaObjectSchema.Property prop : schema.getProperties()) {
+				String jsonName = prop.getJsonName();
+				if (prop.isStored() && !prop.hasAnnotation(filter)) {
+					Object value = data.get(jsonName);
 					// try to read a default value from the bean if any
-					if (value == null && PropertyUtils.isReadable(pojo, name)) {
-						value = PropertyUtils.getProperty(pojo, name);
+					if (value == null && prop.isReadable()) {
+						value = prop.get(pojo);
 					}
 					// handle complex JSON objects deserialized to Maps, Arrays, etc.
-					if (!Utils.isBasicType(field.getType()) && value instanceof String) {
+					if (!prop.isBasicType() && value instanceof String) {
 						// in this case the object is a flattened JSON string coming from the DB
-						value = getJsonReader(field.getType()).readValue(value.toString());
+						value = getJsonReader(prop.getField().getType()).readValue(value.toString());
 					}
-					field.setAccessible(true);
-					BeanUtils.setProperty(pojo, name, value);
+					prop.set(pojo, value);
 				}
 				props.remove(jsonName);
 			}
@@ -525,7 +629,11 @@ public final class ParaObjectUtils {
 		if (StringUtils.isBlank(json)) {
 			return null;
 		}
-		try {
+		try (JsonParser parser = JSON_MAPPER.getFactory().createParser(json)) {
+			P pojo = readAnnotatedFields(parser);
+			if (pojo != null) {
+				return pojo;
+			}
 			Map<String, Object> map = getJsonReader(Map.class).readValue(json);
 			return setAnnotatedFields(map);
 		} catch (Exception e) {
@@ -534,6 +642,86 @@ public final class ParaObjectUtils {
 		return null;
 	}
 
+	/**
+	 * Reads a domain object from a JSON object in a single pass, without creating an intermediate map.
+	 * This only works when the type is the first field, as written by
+	 * {@link #writeAnnotatedFields(com.fasterxml.jackson.core.JsonGenerator, com.erudika.para.core.ParaObject,
+	 * java.lang.Class)}. Fields are populated the same way as in
+	 * {@link #setAnnotatedFields(com.erudika.para.core.ParaObject, java.util.Map, java.lang.Class)}.
+	 * @param parser a JSON parser
+	 * @return the object or null if the type is not the first field of the JSON object
+	 */
+	private static <P extends ParaObject> P readAnnotatedFields(JsonParser parser) throws Exception {
+		if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME ||
+				!Config._TYPE.equals(parser.getCurrentName()) || parser.nextToken() != JsonToken.VALUE_STRING) {
+			return null;
+		}
+		String type = parser.getText();
+		P pojo = (P) toClass(type).getConstructor().newInstance();
+		ParaObjectSchema schema = ParaObjectSchema.forClass(pojo.getClass());
+		List<ParaObjectSchema.Property> stored = schema.getStoredProperties();
+		Object[] values = new Object[stored.size()];
+		Map<String, Object> props = new HashMap<>();
+		ParaObjectSchema.Property typeProp = schema.getProperty(Config._TYPE);
+		if (typeProp != null && typeProp.isStored()) {
+			values[typeProp.getStoredIndex()] = type;
+		} else {
+			props.put(Config._TYPE, type);
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			ParaObjectSchema.Property prop = schema.getProperty(name);
+			if (prop == null) {
+				props.put(name, readFieldValue(parser, token));
+			} else if (prop.isStored()) {
+				Object value;
+				if (!prop.isBasicType() && (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)) {
+					value = getJsonReader(prop.getField().getType()).readValue(parser);
+				} else {
+					value = readFieldValue(parser, token);
+					if (!prop.isBasicType() && value instanceof String) {
+						// in this case the object is a flattened JSON string coming from the DB
+						value = getJsonReader(prop.getField().getType()).readValue((String) value);
+					}
+				}
+				values[prop.getStoredIndex()] = value;
+			} else {
+				parser.skipChildren();
+			}
+		}
+		for (ParaObjectSchema.Property prop : stored) {
+			Object value = values[prop.getStoredIndex()];
+			// try to read a default value from the bean if any
+			if (value == null && prop.isReadable()) {
+				value = prop.get(pojo);
+			}
+			prop.set(pojo, value);
+		}
+		// handle unknown (user-defined) fields
+		setUserDefinedProperties(pojo, props);
+		return pojo;
+	}
+
+	private static Object readFieldValue(JsonParser parser, JsonToken token) throws IOException {
+		switch (token) {
+			case VALUE_STRING:
+				return parser.getText();
+			case VALUE_NUMBER_INT:
+				return parser.getNumberValue();
+			case VALUE_NUMBER_FLOAT:
+				return parser.getDoubleValue();
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return null;
+			default:
+				return parser.readValueAs(Object.class);
+		}
+	}
+
 	/**
 	 * Converts a domain object to JSON.
 	 *
@@ -566,24 +754,7 @@ public final class ParaObjectUtils {
 		if (StringUtils.isBlank(type)) {
 			type = "sysprop";
 		}
-		Map<String, Field> fieldMap = typeFieldMap.get(type);
-		if (fieldMap == null || fieldMap.isEmpty()) {
-			fieldMap = new HashMap<>();
-			List<Field> fieldList = Utils.getAllDeclaredFields(ParaObjectUtils.toClass(type));
-			for (Field field : fieldList) {
-				if (field.getAnnotation(Stored.class) != null) {
-					fieldMap.put(field.getName(), field);
-					JsonProperty jsonName = field.getAnnotation(JsonProperty.class);
-					if (jsonName != null) {
-						fieldMap.put(jsonName.value(), field);
-					}
-				}
-			}
-			synchronized (typeFieldMap) {
-				typeFieldMap.put(type, fieldMap);
-			}
-		}
-		return fieldMap;
+		return ParaObjectSchema.forClass(toClass(type)).getFieldMap();
 	}
 
 	public static Object getProperty(ParaObject po, String name) {
@@ -596,9 +767,8 @@ public final class ParaObjectUtils {
 		}
 
 		// access custom field
-		Map<String, Field> fieldMap = getFieldMap(po.getType());
-		Field field = fieldMap.get(name);
-		if (field == null) {
+		ParaObjectSchema.Property prop = ParaObjectSchema.forClass(po.getClass()).getStoredProperty(name);
+		if (prop == null) {
 			if (po instanceof Sysprop) {
 				Sysprop so = (Sysprop) po;
 				return so.getProperty(name);
@@ -608,13 +778,9 @@ public final class ParaObjectUtils {
 
 		try {
 			// access standard field
-			return PropertyUtils.getProperty(po, name);
+			return prop.get(po);
 		} catch (Exception e) {
-			try {
-				return PropertyUtils.getProperty(po, field.getName());
-			} catch (Exception e1) {
-				return null;
-			}
+			return null;
 		}
 	}
 
@@ -707,9 +873,8 @@ public final class ParaObjectUtils {
 		}
 
 		// access custom field
-		Map<String, Field> fieldMap = getFieldMap(po.getType());
-		Field field = fieldMap.get(name);
-		if (field == null) {
+		ParaObjectSchema.Property prop = ParaObjectSchema.forClass(po.getClass()).getStoredProperty(name);
+		if (prop == null) {
 			if (po instanceof Sysprop) {
 				Sysprop so = (Sysprop) po;
 				so.getProperties().put(name, value);
@@ -720,7 +885,7 @@ public final class ParaObjectUtils {
 
 		try {
 			// access standard field
-			PropertyUtils.setProperty(po, name, value);
+			prop.setExact(po, value);
 		} catch (Exception ignored) {
 			logger.error("setProperty failed, po:{}, name: {}, value: {}", po, name, value, ignored);
 		}
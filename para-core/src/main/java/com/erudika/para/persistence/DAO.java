@@ -199,7 +199,7 @@ public interface DAO {
 	 */
 	<P extends ParaObject> void deleteAll(List<P> objects);
 
-	// Copy from Search interface
+	// Copy from Search interface - implementations return null if the terms can't be matched by the data store
 	<P extends ParaObject> List<P> findTerms(String type, Map<String, ?> terms, boolean matchAll, Pager... pager);
 	<P extends ParaObject> List<P> findTerms(String appid, String type, Map<String, ?> terms, boolean matchAll, Pager... pager);
 	<P extends ParaObject> List<P> findTermInList(String type, String field, List<?> terms, Pager... pager);
@@ -19,8 +19,12 @@ package com.erudika.para.search;
 
 import com.erudika.para.utils.Pager;
 import com.erudika.para.core.ParaObject;
+import com.erudika.para.persistence.DAO;
+import com.erudika.para.utils.Config;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  * The core search interface. Does indexing and searching for all domain objects.
@@ -372,6 +376,45 @@ public interface Search {
 	 */
 	<P extends ParaObject> List<P> findWildcard(String appid, String type, String field, String wildcard, Pager... pager);
 
+	/**
+	 * Searches for objects that have a property with a value within a range, e.g. objects created in the last hour.
+	 * Numeric fields, like "timestamp", are compared as numbers, all other fields - as strings.
+	 * @param <P> type of the object
+	 * @param type the type of object to search for. See {@link com.erudika.para.core.ParaObject#getType()}
+	 * @param field the property name of an object
+	 * @param from the lower bound (inclusive) or null for no lower bound
+	 * @param to the upper bound (inclusive) or null for no upper bound
+	 * @param pager a {@link com.erudika.para.utils.Pager}
+	 * @return a list of objects found
+	 */
+	default <P extends ParaObject> List<P> findRange(String type, String field, String from, String to,
+			Pager... pager) {
+		return findRange(Config.getRootAppIdentifier(), type, field, from, to, pager);
+	}
+
+	/**
+	 * Searches for objects that have a property with a value within a range, e.g. objects created in the last hour.
+	 * Numeric fields, like "timestamp", are compared as numbers, all other fields - as strings.
+	 * The default implementation runs a range query string through {@link #findQuery(String, String, String, Pager...)}.
+	 * @param <P> type of the object
+	 * @param appid name of the {@link com.erudika.para.core.App}
+	 * @param type the type of object to search for. See {@link com.erudika.para.core.ParaObject#getType()}
+	 * @param field the property name of an object
+	 * @param from the lower bound (inclusive) or null for no lower bound
+	 * @param to the upper bound (inclusive) or null for no upper bound
+	 * @param pager a {@link com.erudika.para.utils.Pager}
+	 * @return a list of objects found
+	 */
+	default <P extends ParaObject> List<P> findRange(String appid, String type, String field, String from, String to,
+			Pager... pager) {
+		if (StringUtils.isBlank(field) || (StringUtils.isBlank(from) && StringUtils.isBlank(to))) {
+			return Collections.emptyList();
+		}
+		String lower = StringUtils.isBlank(from) ? "*" : "\"" + StringUtils.trim(from).replace("\"", "\\\"") + "\"";
+		String upper = StringUtils.isBlank(to) ? "*" : "\"" + StringUtils.trim(to).replace("\"", "\\\"") + "\"";
+		return findQuery(appid, type, field + ":[" + lower + " TO " + upper + "]", pager);
+	}
+
 	/////////////////////////////////////////////
 	//			  COUNTING METHODS
 	/////////////////////////////////////////////
@@ -408,6 +451,26 @@ public interface Search {
 	 */
 	Long getCount(String appid, String type, Map<String, ?> terms);
 
+	/**
+	 * Rebuilds the index of an app. Reads all objects from the data store and indexes them.
+	 * @param dao the data source
+	 * @param appid name of the {@link com.erudika.para.core.App}
+	 * @param pager a {@link com.erudika.para.utils.Pager}
+	 * @return true if successful, false if rebuilding is not supported
+	 */
+	default boolean rebuildIndex(DAO dao, String appid, Pager... pager) {
+		return false;
+	}
+
+	/**
+	 * Returns the progress of the last index rebuild - objects reindexed, objects per second, ETA, etc.
+	 * @param appid name of the {@link com.erudika.para.core.App}
+	 * @return a map of status information or an empty map
+	 */
+	default Map<String, Object> getRebuildIndexStatus(String appid) {
+		return Collections.emptyMap();
+	}
+
 	// 刷新默认索引
 	void flush();
 
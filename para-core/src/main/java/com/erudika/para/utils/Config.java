@@ -27,6 +27,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class loads configuration settings from a file and sets defaults.
@@ -35,7 +37,9 @@ import java.util.Map;
 public final class Config {
 
 	private static final Logger logger = LoggerFactory.getLogger(Config.class);
+	private static volatile ConcurrentMap<String, Param> params = new ConcurrentHashMap<>();
 	private static com.typesafe.config.Config config;
+	private static com.typesafe.config.Config overrides;
 	private static Map<String, String> configMap;
 
 	private Config() { }
@@ -303,22 +307,36 @@ public final class Config {
 	 */
 	public static void init(com.typesafe.config.Config conf) {
 		try {
-			config = ConfigFactory.load().getConfig(PARA);
+			overrides = conf;
+			com.typesafe.config.Config newConfig = ConfigFactory.load().getConfig(PARA);
 
 			if (conf != null) {
-				config = conf.withFallback(config);
+				newConfig = conf.withFallback(newConfig);
 			}
 
-			configMap = new HashMap<>();
-			for (Map.Entry<String, ConfigValue> con : config.entrySet()) {
+			Map<String, String> newConfigMap = new HashMap<>();
+			for (Map.Entry<String, ConfigValue> con : newConfig.entrySet()) {
 				if (con.getValue().valueType() != ConfigValueType.LIST) {
-					configMap.put(con.getKey(), config.getString(con.getKey()));
+					newConfigMap.put(con.getKey(), newConfig.getString(con.getKey()));
 				}
 			}
+			config = newConfig;
+			configMap = newConfigMap;
 		} catch (Exception ex) {
 			logger.warn("Para configuration file 'application.(conf|json|properties)' is missing from classpath.");
 			config = com.typesafe.config.ConfigFactory.empty();
 		}
+		// values resolved from the old config are discarded only after the new one is in place,
+		// params resolved in the meantime end up in the old map which is no longer read
+		params = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Reloads the configuration file and environment variables, keeping the overrides
+	 * passed to {@link #init(com.typesafe.config.Config)}. Values resolved before the reload are discarded.
+	 */
+	public static void reload() {
+		init(overrides);
 	}
 
 	/**
@@ -328,7 +346,9 @@ public final class Config {
 	 * @return the value of a param
 	 */
 	public static boolean getConfigBoolean(String key, boolean defaultValue) {
-		return Boolean.parseBoolean(getConfigParam(key, Boolean.toString(defaultValue)));
+		Param param = getParam(key);
+		String value = (param == null) ? null : param.value();
+		return (value == null) ? defaultValue : (Boolean) param.parsed(value, Param.BOOLEAN);
 	}
 
 	/**
@@ -338,7 +358,9 @@ public final class Config {
 	 * @return the value of a param
 	 */
 	public static int getConfigInt(String key, int defaultValue) {
-		return NumberUtils.toInt(getConfigParam(key, Integer.toString(defaultValue)));
+		Param param = getParam(key);
+		String value = (param == null) ? null : param.value();
+		return (value == null) ? defaultValue : (Integer) param.parsed(value, Param.INT);
 	}
 
 	/**
@@ -348,33 +370,43 @@ public final class Config {
 	 * @return the value of a param
 	 */
 	public static double getConfigDouble(String key, double defaultValue) {
-		return NumberUtils.toDouble(getConfigParam(key, Double.toString(defaultValue)));
+		Param param = getParam(key);
+		String value = (param == null) ? null : param.value();
+		return (value == null) ? defaultValue : (Double) param.parsed(value, Param.DOUBLE);
 	}
 
 	/**
 	 * Returns the value of a configuration parameter or its default value.
-	 * {@link System#getProperty(java.lang.String)} has precedence.
+	 * {@link System#getProperty(java.lang.String)} has precedence, followed by environment variables
+	 * and the configuration file. Environment variables and file values are resolved once per key
+	 * and kept until {@link #reload()} is called.
 	 * @param key the param key
 	 * @param defaultValue the default param value
 	 * @return the value of a param
 	 */
 	public static String getConfigParam(String key, String defaultValue) {
+		Param param = getParam(key);
+		String value = (param == null) ? null : param.value();
+		return (value == null) ? defaultValue : value;
+	}
+
+	private static Param getParam(String key) {
 		if (config == null) {
 			init(null);
 		}
 		if (StringUtils.isBlank(key)) {
-			return defaultValue;
+			return null;
 		}
-		String keyVar = key.replaceAll("\\.", "_");
-		String env = System.getenv(keyVar) == null ? System.getenv(PARA + "_" + keyVar) : System.getenv(keyVar);
-		String sys = System.getProperty(key, System.getProperty(PARA + "." + key));
-		if (!StringUtils.isBlank(sys)) {
-			return sys;
-		} else if (!StringUtils.isBlank(env)) {
-			return env;
-		} else {
-			return (!StringUtils.isBlank(key) && config.hasPath(key)) ? config.getString(key) : defaultValue;
+		ConcurrentMap<String, Param> resolved = params;
+		Param param = resolved.get(key);
+		if (param == null) {
+			param = new Param(key);
+			Param existing = resolved.putIfAbsent(key, param);
+			if (existing != null) {
+				param = existing;
+			}
 		}
+		return param;
 	}
 
 	/**
@@ -408,6 +440,81 @@ public final class Config {
 	 * @return The name of the default application without any spaces.
 	 */
 	public static String getRootAppIdentifier() {
-		return Utils.noSpaces(Config.getConfigParam("app_name", PARA), "-");
+		Param param = getParam("app_name");
+		String value = param.value();
+		return (String) param.parsed(value == null ? PARA : value, Param.NO_SPACES);
+	}
+
+	/**
+	 * A configuration parameter. The values from the environment and the configuration file are
+	 * resolved once, system properties are checked on every read because they can change at runtime.
+	 * The last parsed value is kept and reused for as long as the raw value stays the same.
+	 */
+	private static final class Param {
+
+		static final int BOOLEAN = 0;
+		static final int INT = 1;
+		static final int DOUBLE = 2;
+		static final int NO_SPACES = 3;
+
+		private final String key;
+		private final String paraKey;
+		private final String fallback;
+		private volatile Parsed parsed;
+
+		Param(String key) {
+			this.key = key;
+			this.paraKey = PARA + "." + key;
+			String keyVar = StringUtils.replaceChars(key, '.', '_');
+			String env = System.getenv(keyVar) == null ? System.getenv(PARA + "_" + keyVar) : System.getenv(keyVar);
+			if (!StringUtils.isBlank(env)) {
+				this.fallback = env;
+			} else {
+				this.fallback = config.hasPath(key) ? config.getString(key) : null;
+			}
+		}
+
+		String value() {
+			String sys = System.getProperty(key);
+			if (sys == null) {
+				sys = System.getProperty(paraKey);
+			}
+			return StringUtils.isBlank(sys) ? fallback : sys;
+		}
+
+		Object parsed(String value, int type) {
+			Parsed p = parsed;
+			if (p == null || p.type != type || !p.raw.equals(value)) {
+				p = new Parsed(value, type);
+				parsed = p;
+			}
+			return p.value;
+		}
+	}
+
+	private static final class Parsed {
+
+		private final String raw;
+		private final int type;
+		private final Object value;
+
+		Parsed(String raw, int type) {
+			this.raw = raw;
+			this.type = type;
+			switch (type) {
+				case Param.BOOLEAN:
+					this.value = Boolean.parseBoolean(raw);
+					break;
+				case Param.INT:
+					this.value = NumberUtils.toInt(raw);
+					break;
+				case Param.DOUBLE:
+					this.value = NumberUtils.toDouble(raw);
+					break;
+				default:
+					this.value = Utils.noSpaces(raw, "-");
+					break;
+			}
+		}
 	}
 }
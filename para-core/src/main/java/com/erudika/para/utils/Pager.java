@@ -31,6 +31,7 @@ public class Pager {
 	private int limit;
 	private String name;
 	private String lastKey;
+	private Integer trackTotalHits;
 
 	/**
 	 * No-args constructor.
@@ -185,9 +186,36 @@ public class Pager {
 		this.page = page;
 	}
 
+	/**
+	 * Controls how many results are counted. If null or negative, the total count is exact.
+	 * Otherwise results are counted up to this number and a count equal to it means
+	 * "at least this many" - 0 means that results are not counted at all. Searches which don't
+	 * need an exact count can stop early.
+	 * @return the max number of results to count, or null
+	 */
+	public Integer getTrackTotalHits() {
+		return trackTotalHits;
+	}
+
+	/**
+	 * Set the max number of results to count.
+	 * @param trackTotalHits max count, 0 to disable counting or null for an exact count
+	 */
+	public void setTrackTotalHits(Integer trackTotalHits) {
+		this.trackTotalHits = trackTotalHits;
+	}
+
+	/**
+	 * @return true if the count is exact, false if it may be capped by {@link #getTrackTotalHits()}
+	 */
+	public boolean isCountExact() {
+		return trackTotalHits == null || trackTotalHits < 0 || count < trackTotalHits;
+	}
+
 	@Override
 	public String toString() {
 		return "Pager{" + "page=" + page + ", count=" + count + ", sortby=" + sortby + ", desc=" + desc +
-				", limit=" + limit + ", name=" + name + ", lastKey=" + lastKey + '}';
+				", limit=" + limit + ", name=" + name + ", lastKey=" + lastKey +
+				", trackTotalHits=" + trackTotalHits + '}';
 	}
 }
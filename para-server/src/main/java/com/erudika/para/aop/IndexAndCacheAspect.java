@@ -25,6 +25,8 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
@@ -39,6 +41,7 @@ import com.erudika.para.Para;
 import com.erudika.para.annotations.Cached;
 import com.erudika.para.annotations.Indexed;
 import com.erudika.para.cache.Cache;
+import com.erudika.para.cache.CacheInvalidationBus;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.Sysprop;
 import com.erudika.para.core.User;
@@ -62,9 +65,12 @@ import com.erudika.para.validation.ValidationUtils;
 public class IndexAndCacheAspect implements MethodInterceptor {
 
 	private static final Logger logger = LoggerFactory.getLogger(IndexAndCacheAspect.class);
+	private static final ConcurrentMap<Method, Plan> PLANS = new ConcurrentHashMap<>();
+	private static final ReadCoalescer COALESCER = new ReadCoalescer();
 
 	private Search search;
 	private Cache cache;
+	private CacheInvalidationBus invalidationBus;
 
 	/**
 	 * @return {@link Search}
@@ -96,6 +102,30 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		this.cache = cache;
 	}
 
+	/**
+	 * @return {@link CacheInvalidationBus}
+	 */
+	public CacheInvalidationBus getInvalidationBus() {
+		return invalidationBus;
+	}
+
+	/**
+	 * @param invalidationBus {@link CacheInvalidationBus} - objects written or deleted through the DAO
+	 * are removed from the caches of other nodes through it
+	 */
+	@Inject
+	public void setInvalidationBus(CacheInvalidationBus invalidationBus) {
+		this.invalidationBus = invalidationBus;
+	}
+
+	/**
+	 * Returns statistics about the coalescing of concurrent reads which missed the cache.
+	 * @return a map of counters: "reads", "coalesced" and "inFlight"
+	 */
+	public static Map<String, Long> getReadCoalescingStats() {
+		return COALESCER.getStats();
+	}
+
 	/**
 	 * Executes code when a method is invoked. A big switch statement.
 	 * @param mi method invocation
@@ -106,22 +136,10 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		if (!Modifier.isPublic(mi.getMethod().getModifiers())) {
 			return mi.proceed();
 		}
-		Method m = mi.getMethod();
-		Method superMethod = null;
-		Indexed indexedAnno = null;
-		Cached cachedAnno = null;
-
-		try {
-			superMethod = DAO.class.getMethod(m.getName(), m.getParameterTypes());
-			indexedAnno = Config.isSearchEnabled() ? superMethod.getAnnotation(Indexed.class) : null;
-			cachedAnno = Config.isCacheEnabled() ? superMethod.getAnnotation(Cached.class) : null;
-		} catch (Exception e) {
-			if (! (e instanceof NoSuchMethodException)) {
-				logger.error(null, e);
-			} else {
-				logger.error("DAO class no method '{}'", m.getName());
-			}
-		}
+		Plan plan = getPlan(mi.getMethod());
+		Method superMethod = plan.superMethod;
+		Indexed indexedAnno = Config.isSearchEnabled() ? plan.indexedAnno : null;
+		Cached cachedAnno = Config.isCacheEnabled() ? plan.cachedAnno : null;
 
 		Object[] args = mi.getArguments();
 		String appid = AOPUtils.getFirstArgOfString(args);
@@ -153,6 +171,26 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
+	private static Plan getPlan(Method m) {
+		Plan plan = PLANS.get(m);
+		if (plan == null) {
+			Method superMethod = null;
+			try {
+				superMethod = DAO.class.getMethod(m.getName(), m.getParameterTypes());
+			} catch (NoSuchMethodException e) {
+				logger.error("DAO class no method '{}'", m.getName());
+			} catch (Exception e) {
+				logger.error(null, e);
+			}
+			plan = new Plan(superMethod);
+			Plan existing = PLANS.putIfAbsent(m, plan);
+			if (existing != null) {
+				plan = existing;
+			}
+		}
+		return plan;
+	}
+
 	private Object handleIndexing(Indexed indexedAnno, String appid, Object[] args, MethodInvocation mi)
 			throws Throwable {
 		Object result = null;
@@ -276,13 +314,24 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
-	private Object readFromCacheOperation(String appid, Object[] args, MethodInvocation mi) throws Throwable {
+	private Object readFromCacheOperation(String appid, Object[] args, final MethodInvocation mi) throws Throwable {
 		String getMeId = (args != null && args.length > 1) ? (String) args[1] : null;
         Object result = cache.get(appid, getMeId);
+		long negativeTtl = getNegativeCacheTtl();
+		if (result == null && getMeId != null && negativeTtl > 0 && cache.isMissing(appid, getMeId)) {
+			return null;
+		}
         if (result == null && getMeId != null) {
-			result = mi.proceed();
+			result = Config.getConfigBoolean("cache_coalesce_reads", true) ?
+					COALESCER.read(appid, getMeId, new ReadCoalescer.Loader() {
+						public Object load() throws Throwable {
+							return mi.proceed();
+						}
+					}) : mi.proceed();
 			if (result != null && ((ParaObject) result).getCached()) {
 				cache.put(appid, getMeId, result);
+			} else if (result == null && negativeTtl > 0) {
+				cache.putMissing(appid, getMeId, negativeTtl);
 			}
 		}
 		return result;
@@ -292,6 +341,11 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		ParaObject putMe = AOPUtils.getArgOfParaObject(args);
 		if (putMe != null && putMe.getCached()) {
 			cache.put(appid, putMe.getId(), putMe);
+		} else if (putMe != null && getNegativeCacheTtl() > 0) {
+			cache.remove(appid, putMe.getId()); // clear negative entries
+		}
+		if (putMe != null && invalidationBus != null) {
+			invalidationBus.invalidate(appid, putMe.getId());
 		}
 	}
 
@@ -299,47 +353,127 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		ParaObject deleteMe = AOPUtils.getArgOfParaObject(args);
 		if (deleteMe != null) { // clear from cache even if "isCached = false"
 			cache.remove(appid, deleteMe.getId());
+			if (invalidationBus != null) {
+				invalidationBus.invalidate(appid, deleteMe.getId());
+			}
 		}
 	}
 
-	private Object readFromCacheBatchOperation(String appid, Object[] args, MethodInvocation mi) throws Throwable {
+	private Object readFromCacheBatchOperation(String appid, Object[] args, final MethodInvocation mi)
+			throws Throwable {
 		Object result = Collections.emptyMap();
-		List<String> getUs = AOPUtils.getArgOfListOfType(args, String.class);
+		final List<String> getUs = AOPUtils.getArgOfListOfType(args, String.class);
 		if (getUs != null) {
 			Map<String, ParaObject> cached = cache.getAll(appid, getUs);
-			// hit the database if even a single object is missing from cache, then cache it
-			if (cached.size() < getUs.size()) {
-				result = mi.proceed();
-				if (result != null) {
-					for (String id : getUs) {
-						if (!cached.containsKey(id)) {
-							ParaObject obj = ((Map<String, ParaObject>) result).get(id);
-							if (obj != null && obj.getCached()) {
-								cache.put(appid, obj.getId(), obj);
-							}
+			long negativeTtl = getNegativeCacheTtl();
+			List<String> missing = new ArrayList<>(getUs.size() - cached.size());
+			for (String id : getUs) {
+				if (id != null && !cached.containsKey(id) && !(negativeTtl > 0 && cache.isMissing(appid, id))) {
+					missing.add(id);
+				}
+			}
+			// hit the database only for the objects which are missing from cache, then cache them
+			if (!missing.isEmpty()) {
+				Map<String, ?> fetched;
+				if (Config.getConfigBoolean("cache_coalesce_reads", true)) {
+					fetched = COALESCER.readAll(appid, missing, new ReadCoalescer.BatchLoader() {
+						public Map<String, ?> load(List<String> ids) throws Throwable {
+							return (Map<String, ?>) proceedWithList(mi, getUs, ids);
+						}
+					});
+				} else {
+					fetched = (Map<String, ?>) proceedWithList(mi, getUs, missing);
+				}
+				if (negativeTtl > 0 && fetched != null) {
+					for (String id : missing) {
+						if (fetched.get(id) == null) {
+							cache.putMissing(appid, id, negativeTtl);
 						}
 					}
 				}
-			}
-			if (result == null || ((Map) result).isEmpty()) {
+				if (fetched == null || fetched.isEmpty()) {
+					return cached;
+				}
+				Map<String, ParaObject> merged = new LinkedHashMap<>(getUs.size());
+				for (String id : getUs) {
+					ParaObject obj = cached.get(id);
+					if (obj != null) {
+						merged.put(id, obj);
+					} else if (fetched.containsKey(id)) {
+						obj = (ParaObject) fetched.get(id);
+						merged.put(id, obj);
+						if (obj != null && obj.getCached()) {
+							cache.put(appid, obj.getId(), obj);
+						}
+					}
+				}
+				result = merged;
+			} else {
 				result = cached;
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Negative caching of read misses is off unless "cache_negative_ttl_seconds" is set.
+	 * @return the time to live for negative cache entries, in seconds
+	 */
+	private long getNegativeCacheTtl() {
+		return Config.getConfigInt("cache_negative_ttl_seconds", 0);
+	}
+
+	/**
+	 * Proceeds with the method invocation, replacing a list argument with another list.
+	 * @param mi method invocation
+	 * @param list the original list argument
+	 * @param newList the list to pass instead
+	 * @return the result of the invocation
+	 * @throws Throwable error
+	 */
+	private Object proceedWithList(MethodInvocation mi, List<?> list, List<?> newList) throws Throwable {
+		Object[] args = mi.getArguments();
+		int index = -1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] == list) {
+				index = i;
+				break;
+			}
+		}
+		if (index < 0) {
+			return mi.proceed();
+		}
+		args[index] = newList;
+		try {
+			return mi.proceed();
+		} finally {
+			args[index] = list;
+		}
+	}
+
 	private void addToCacheBatchOperation(String appid, Object[] args) {
 		List<ParaObject> putUs = AOPUtils.getArgOfListOfType(args, ParaObject.class);
 		if (putUs != null && !putUs.isEmpty()) {
 			Map<String, ParaObject> map1 = new LinkedHashMap<>(putUs.size());
+			List<String> notCached = new ArrayList<>();
 			for (ParaObject obj : putUs) {
 				if (obj != null && obj.getCached()) {
 					map1.put(obj.getId(), obj);
+				} else if (obj != null) {
+					notCached.add(obj.getId());
 				}
 			}
 			if (!map1.isEmpty()) {
 				cache.putAll(appid, map1);
 			}
+			if (!notCached.isEmpty() && getNegativeCacheTtl() > 0) {
+				cache.removeAll(appid, notCached); // clear negative entries
+			}
+			if (invalidationBus != null) {
+				List<String> ids = new ArrayList<>(map1.keySet());
+				ids.addAll(notCached);
+				invalidationBus.invalidate(appid, ids);
+			}
 		}
 	}
 
@@ -352,6 +486,25 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 			}
 			// clear from cache even if "isCached = false"
 			cache.removeAll(appid, list);
+			if (invalidationBus != null) {
+				invalidationBus.invalidate(appid, list);
+			}
+		}
+	}
+
+	/**
+	 * The annotations of a {@link DAO} method, resolved once per intercepted method.
+	 */
+	private static final class Plan {
+
+		private final Method superMethod;
+		private final Indexed indexedAnno;
+		private final Cached cachedAnno;
+
+		Plan(Method superMethod) {
+			this.superMethod = superMethod;
+			this.indexedAnno = (superMethod == null) ? null : superMethod.getAnnotation(Indexed.class);
+			this.cachedAnno = (superMethod == null) ? null : superMethod.getAnnotation(Cached.class);
 		}
 	}
 
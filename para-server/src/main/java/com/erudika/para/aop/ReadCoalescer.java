@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.aop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent reads of the same object into a single read from the data store.
+ * The first thread to miss the cache for a given appid/id does the read, any other threads
+ * which miss it while that read is in flight wait for its result instead of reading it again.
+ * Batch reads take part too - only the ids which aren't already being read are passed on.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class ReadCoalescer {
+
+	private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * Reads a single object, sharing the result with concurrent reads of the same object.
+	 * @param appid appid
+	 * @param id object id
+	 * @param loader reads the object from the data store
+	 * @return the object or null
+	 * @throws Throwable error thrown by the loader
+	 */
+	Object read(String appid, String id, Loader loader) throws Throwable {
+		String key = key(appid, id);
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			coalesced.increment();
+			return await(existing);
+		}
+		reads.increment();
+		try {
+			Object result = loader.load();
+			future.complete(result);
+			return result;
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * Reads multiple objects. Ids which are already being read by other threads are not
+	 * passed to the loader - their results are awaited and merged with the rest.
+	 * @param appid appid
+	 * @param ids object ids
+	 * @param loader reads a list of objects from the data store
+	 * @return a map of ids to objects, without the ids which weren't found
+	 * @throws Throwable error thrown by the loader
+	 */
+	Map<String, Object> readAll(String appid, List<String> ids, BatchLoader loader) throws Throwable {
+		Map<String, CompletableFuture<Object>> owned = new LinkedHashMap<>(ids.size());
+		Map<String, CompletableFuture<Object>> waiting = new LinkedHashMap<>();
+		for (String id : ids) {
+			if (id == null || owned.containsKey(id) || waiting.containsKey(id)) {
+				continue;
+			}
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			CompletableFuture<Object> existing = inFlight.putIfAbsent(key(appid, id), future);
+			if (existing == null) {
+				owned.put(id, future);
+			} else {
+				waiting.put(id, existing);
+			}
+		}
+		Map<String, Object> results = new HashMap<>(ids.size());
+		if (!owned.isEmpty()) {
+			reads.increment();
+			try {
+				Map<String, ?> fetched = loader.load(new ArrayList<>(owned.keySet()));
+				for (Map.Entry<String, CompletableFuture<Object>> entry : owned.entrySet()) {
+					Object obj = (fetched == null) ? null : fetched.get(entry.getKey());
+					if (obj != null) {
+						results.put(entry.getKey(), obj);
+					}
+					entry.getValue().complete(obj);
+				}
+			} catch (Throwable e) {
+				for (CompletableFuture<Object> future : owned.values()) {
+					future.completeExceptionally(e);
+				}
+				throw e;
+			} finally {
+				for (Map.Entry<String, CompletableFuture<Object>> entry : owned.entrySet()) {
+					inFlight.remove(key(appid, entry.getKey()), entry.getValue());
+				}
+			}
+		}
+		// our own reads are complete before we wait for others, so threads can't wait on each other
+		for (Map.Entry<String, CompletableFuture<Object>> entry : waiting.entrySet()) {
+			coalesced.increment();
+			Object obj = await(entry.getValue());
+			if (obj != null) {
+				results.put(entry.getKey(), obj);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return the number of reads passed to the data store, the number of reads which were
+	 * served by another thread's read and the number of reads currently in flight
+	 */
+	Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>(3);
+		stats.put("reads", reads.sum());
+		stats.put("coalesced", coalesced.sum());
+		stats.put("inFlight", (long) inFlight.size());
+		return stats;
+	}
+
+	private Object await(CompletableFuture<Object> future) throws Throwable {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private String key(String appid, String id) {
+		return appid + "/" + id;
+	}
+
+	/**
+	 * Reads a single object.
+	 */
+	interface Loader {
+		Object load() throws Throwable;
+	}
+
+	/**
+	 * Reads a list of objects.
+	 */
+	interface BatchLoader {
+		Map<String, ?> load(List<String> ids) throws Throwable;
+	}
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.DestroyListener;
+import com.erudika.para.Para;
+import com.erudika.para.utils.Config;
+import com.erudika.para.utils.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the local caches of all nodes in a cluster consistent. Objects which are written or deleted
+ * on one node are removed from the caches of all other nodes, so that they are read again from the database.
+ * <br>
+ * Invalidations are collected for "invalidation.batch_ms" and sent together through an
+ * {@link InvalidationTransport} - "loopback", "multicast", "tcp" or the simple class name of a transport
+ * plugin, set with "invalidation.transport". The bus is disabled if no transport is set.
+ * <br>
+ * Messages are signed with HMAC-SHA256, using the secret set with "invalidation.secret" which must be the same
+ * on all nodes. Messages with a missing or invalid signature are dropped. Transports other than "loopback"
+ * are not started without a secret.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+@Singleton
+public class CacheInvalidationBus {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+	private static final int MAGIC = 0x50494E56;
+	/**
+	 * The maximum size of a signed message, in bytes.
+	 */
+	static final int MAX_MESSAGE_SIZE = 32 * 1024;
+	private static final int MAC_SIZE = 32;
+	private static final String ALL = "";
+	private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance("HmacSHA256");
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	private final Cache cache;
+	private final InvalidationTransport transport;
+	private final String nodeId = Utils.getNewId();
+	private final AtomicLong sequence = new AtomicLong();
+	private final ConcurrentLinkedQueue<String[]> pending = new ConcurrentLinkedQueue<>();
+	private final Map<String, NodeStats> nodeStats = new ConcurrentHashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final LongAdder sentMessages = new LongAdder();
+	private final LongAdder sentInvalidations = new LongAdder();
+	private final LongAdder sendErrors = new LongAdder();
+	private final LongAdder rejectedMessages = new LongAdder();
+	private final SecretKeySpec key;
+	private final long batchMillis;
+	private ScheduledFuture<?> flushTask;
+
+	/**
+	 * Default constructor.
+	 * @param cache the local cache
+	 */
+	@Inject
+	public CacheInvalidationBus(Cache cache) {
+		this(cache, loadTransport(Config.getConfigParam("invalidation.transport", "")),
+				Config.getConfigInt("invalidation.batch_ms", 50), Config.getConfigParam("invalidation.secret", ""));
+	}
+
+	CacheInvalidationBus(Cache cache, InvalidationTransport transport, long batchMillis, String secret) {
+		this.cache = cache;
+		this.batchMillis = batchMillis;
+		this.key = StringUtils.isBlank(secret) ? null :
+				new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+		InvalidationTransport t = transport;
+		if (t != null && key == null && !(t instanceof LoopbackTransport)) {
+			logger.error("Cache invalidation transport {} was not started - \"invalidation.secret\" is not set.",
+					t.getClass().getSimpleName());
+			t = null;
+		}
+		if (t != null) {
+			try {
+				t.start(new InvalidationTransport.Receiver() {
+					public void onMessage(byte[] message) {
+						receive(message);
+					}
+				});
+				if (batchMillis > 0) {
+					flushTask = Para.asyncExecutePeriodically(new Runnable() {
+						public void run() {
+							flush();
+						}
+					}, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+				}
+				Para.addDestroyListener(new DestroyListener() {
+					public void onDestroy() {
+						stop();
+					}
+				});
+			} catch (Exception e) {
+				logger.error("Failed to start cache invalidation transport {}: {}",
+						t.getClass().getSimpleName(), e.getMessage());
+				t = null;
+			}
+		}
+		this.transport = t;
+	}
+
+	/**
+	 * @return true if invalidations are sent to other nodes
+	 */
+	public boolean isEnabled() {
+		return transport != null;
+	}
+
+	/**
+	 * Removes an object from the caches of all other nodes.
+	 * @param appid the name of the application
+	 * @param id the object's id
+	 */
+	public void invalidate(String appid, String id) {
+		if (isEnabled() && !StringUtils.isBlank(appid) && !StringUtils.isBlank(id)) {
+			pending.add(new String[]{appid, id});
+			flushIfNotBatched();
+		}
+	}
+
+	/**
+	 * Removes a number of objects from the caches of all other nodes.
+	 * @param appid the name of the application
+	 * @param ids the ids of the objects
+	 */
+	public void invalidate(String appid, List<String> ids) {
+		if (isEnabled() && !StringUtils.isBlank(appid) && ids != null) {
+			for (String id : ids) {
+				if (!StringUtils.isBlank(id)) {
+					pending.add(new String[]{appid, id});
+				}
+			}
+			flushIfNotBatched();
+		}
+	}
+
+	/**
+	 * Clears the cached objects of an app on all other nodes.
+	 * @param appid the name of the application
+	 */
+	public void invalidateAll(String appid) {
+		if (isEnabled() && !StringUtils.isBlank(appid)) {
+			pending.add(new String[]{appid, ALL});
+			flushIfNotBatched();
+		}
+	}
+
+	/**
+	 * Registers a listener for the invalidations received from other nodes, for caches other than
+	 * the object cache.
+	 * @param listener a listener
+	 */
+	public void addListener(Listener listener) {
+		if (listener != null) {
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Sends all pending invalidations. Called periodically.
+	 */
+	public void flush() {
+		if (!isEnabled() || pending.isEmpty()) {
+			return;
+		}
+		List<String[]> batch = new ArrayList<>();
+		int size = 0;
+		String[] item;
+		while ((item = pending.poll()) != null) {
+			batch.add(item);
+			size += item[0].length() + item[1].length() + 4;
+			if (size >= MAX_MESSAGE_SIZE / 4) { // UTF-8 is at most 3 bytes per char
+				send(batch);
+				batch.clear();
+				size = 0;
+			}
+		}
+		if (!batch.isEmpty()) {
+			send(batch);
+		}
+	}
+
+	/**
+	 * Returns the number of messages sent by this node and, for each node we've received messages from,
+	 * the number of messages and invalidations received, the messages missed (detected by gaps in the
+	 * message sequence) and the lag between sending and receiving a message. Lag is measured using
+	 * the clocks of both nodes, so it's only meaningful if they are synchronized.
+	 * @return a map of stats
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("nodeId", nodeId);
+		stats.put("transport", isEnabled() ? transport.getClass().getSimpleName() : null);
+		stats.put("sentMessages", sentMessages.sum());
+		stats.put("sentInvalidations", sentInvalidations.sum());
+		stats.put("sendErrors", sendErrors.sum());
+		stats.put("rejectedMessages", rejectedMessages.sum());
+		Map<String, Object> nodes = new LinkedHashMap<>(nodeStats.size());
+		for (Map.Entry<String, NodeStats> entry : nodeStats.entrySet()) {
+			nodes.put(entry.getKey(), entry.getValue().toMap());
+		}
+		stats.put("nodes", nodes);
+		return stats;
+	}
+
+	/**
+	 * Sends the pending invalidations and stops the transport.
+	 */
+	void stop() {
+		if (flushTask != null) {
+			flushTask.cancel(false);
+		}
+		if (isEnabled()) {
+			flush();
+			transport.stop();
+		}
+	}
+
+	private void flushIfNotBatched() {
+		if (batchMillis <= 0) {
+			flush();
+		}
+	}
+
+	private void send(List<String[]> batch) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(MAX_MESSAGE_SIZE / 4);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeUTF(nodeId);
+			out.writeLong(sequence.incrementAndGet());
+			out.writeLong(System.currentTimeMillis());
+			out.writeInt(batch.size());
+			for (String[] item : batch) {
+				out.writeUTF(item[0]);
+				out.writeUTF(item[1]);
+			}
+			if (key != null) {
+				out.write(sign(bytes.toByteArray(), bytes.size()));
+			}
+			out.flush();
+			if (bytes.size() > MAX_MESSAGE_SIZE) {
+				throw new IOException("Message too large: " + bytes.size() + " bytes.");
+			}
+			transport.send(bytes.toByteArray());
+			sentMessages.increment();
+			sentInvalidations.add(batch.size());
+		} catch (Exception e) {
+			sendErrors.increment();
+			logger.warn("Failed to send {} cache invalidations: {}", batch.size(), e.getMessage());
+		}
+	}
+
+	private void receive(byte[] message) {
+		int length = message.length;
+		if (key != null) {
+			length -= MAC_SIZE;
+			if (length < 0 || !MessageDigest.isEqual(sign(message, length),
+					Arrays.copyOfRange(message, length, message.length))) {
+				rejectedMessages.increment();
+				logger.warn("Dropped a cache invalidation message with an invalid signature.");
+				return;
+			}
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(message, 0, length));
+			if (in.readInt() != MAGIC) {
+				logger.debug("Ignoring unknown message of {} bytes.", message.length);
+				return;
+			}
+			String sender = in.readUTF();
+			if (nodeId.equals(sender)) {
+				return;
+			}
+			long seq = in.readLong();
+			long sentAt = in.readLong();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String appid = in.readUTF();
+				String id = in.readUTF();
+				if (ALL.equals(id)) {
+					cache.removeAll(appid);
+				} else {
+					cache.remove(appid, id);
+				}
+				for (Listener listener : listeners) {
+					listener.onInvalidate(appid, ALL.equals(id) ? null : id);
+				}
+			}
+			getNodeStats(sender).record(seq, count, System.currentTimeMillis() - sentAt);
+			logger.debug("Received {} cache invalidations from node {}.", count, sender);
+		} catch (IOException e) {
+			logger.warn("Failed to read cache invalidation message: {}", e.getMessage());
+		}
+	}
+
+	private byte[] sign(byte[] message, int length) {
+		Mac mac = MAC.get();
+		try {
+			mac.init(key);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+		mac.update(message, 0, length);
+		return mac.doFinal();
+	}
+
+	private NodeStats getNodeStats(String node) {
+		NodeStats stats = nodeStats.get(node);
+		if (stats == null) {
+			stats = new NodeStats();
+			NodeStats existing = nodeStats.putIfAbsent(node, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		return stats;
+	}
+
+	private static InvalidationTransport loadTransport(String name) {
+		if (StringUtils.isBlank(name)) {
+			return null;
+		} else if ("loopback".equalsIgnoreCase(name)) {
+			return new LoopbackTransport();
+		} else if ("multicast".equalsIgnoreCase(name)) {
+			return new MulticastTransport();
+		} else if ("tcp".equalsIgnoreCase(name)) {
+			return new TcpTransport();
+		}
+		for (InvalidationTransport transport : ServiceLoader.load(InvalidationTransport.class,
+				Para.getParaClassLoader())) {
+			if (transport != null && name.equalsIgnoreCase(transport.getClass().getSimpleName())) {
+				return transport;
+			}
+		}
+		logger.warn("Cache invalidation transport '{}' not found - invalidations won't be sent.", name);
+		return null;
+	}
+
+	/**
+	 * Receives the invalidations sent by other nodes.
+	 */
+	public interface Listener {
+		/**
+		 * Called after an object was removed from the local cache.
+		 * @param appid the name of the application
+		 * @param id the object's id or null if all objects of the app were invalidated
+		 */
+		void onInvalidate(String appid, String id);
+	}
+
+	/**
+	 * Counters for the messages received from another node.
+	 */
+	private static final class NodeStats {
+
+		private long messages;
+		private long invalidations;
+		private long missed;
+		private long lastSequence;
+		private long lastLag;
+		private long maxLag;
+		private long totalLag;
+
+		synchronized void record(long seq, int count, long lag) {
+			if (lastSequence > 0 && seq > lastSequence + 1) {
+				missed += seq - lastSequence - 1;
+			}
+			lastSequence = Math.max(lastSequence, seq);
+			messages++;
+			invalidations += count;
+			lastLag = lag;
+			maxLag = Math.max(maxLag, lag);
+			totalLag += lag;
+		}
+
+		synchronized Map<String, Long> toMap() {
+			Map<String, Long> map = new LinkedHashMap<>(6);
+			map.put("messages", messages);
+			map.put("invalidations", invalidations);
+			map.put("missed", missed);
+			map.put("lastLagMs", lastLag);
+			map.put("maxLagMs", maxLag);
+			map.put("avgLagMs", messages > 0 ? totalLag / messages : 0L);
+			return map;
+		}
+	}
+}
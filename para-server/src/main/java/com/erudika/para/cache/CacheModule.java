@@ -30,9 +30,12 @@ import org.apache.commons.lang3.StringUtils;
 public class CacheModule extends AbstractModule {
 
 	protected void configure() {
+		bind(CacheInvalidationBus.class).asEagerSingleton();
 		String selectedCache = Config.getConfigParam("cache", "");
 		if (StringUtils.isBlank(selectedCache) || "inmemory".equalsIgnoreCase(selectedCache)) {
 			bindToDefault();
+		} else if ("tiered".equalsIgnoreCase(selectedCache)) {
+			bind(Cache.class).to(TieredCache.class).asEagerSingleton();
 		} else {
 			Cache cachePlugin = loadExternalCache(selectedCache);
 			if (cachePlugin != null) {
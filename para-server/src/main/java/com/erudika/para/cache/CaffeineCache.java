@@ -17,15 +17,24 @@
  */
 package com.erudika.para.cache;
 
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
 import com.erudika.para.utils.Config;
-import com.erudika.para.utils.Utils;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import javax.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -33,24 +42,97 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Default implementation of the {@link Cache} interface using Caffeine.
- * Multitenancy is achieved by caching objects from each app using composite keys: {@code prefix_objectId}.
+ * Multitenancy is achieved by caching objects from each app using composite keys: {@code (appid, objectId)}.
+ * Entries expire after "caffeine.evict_after_minutes" unless they were put with a TTL of their own.
+ * <br>
+ * The cache is bounded by the estimated memory taken by its entries ("caffeine.cache_max_mb"). ParaObjects are
+ * weighed by the length of their fields, without serializing them. If "caffeine.app_quota_mb" is set, each app
+ * gets its own cache bounded by that quota, so that a single app can't evict the objects of all others.
+ * All app caches together are still bounded by "caffeine.cache_max_mb" - when they exceed it, the entries
+ * of the app which takes up the most space are evicted first. Without quotas, the keys of each app are tracked
+ * so that {@link #removeAll(java.lang.String)} doesn't scan the cache.
+ * <br>
+ * The deprecated "caffeine.cache_size" still limits the number of entries if "caffeine.cache_max_mb" isn't set.
  * @author Alex Bogdanovski [alex@erudika.com]
  */
 @Singleton
 public class CaffeineCache implements Cache {
 
 	private static final Logger logger = LoggerFactory.getLogger(CaffeineCache.class);
-	private static final Map<String, String> KEY_PREFIXES = new ConcurrentHashMap<>();
+	private static final Object MISSING = new Object();
+	private static final int ENTRY_OVERHEAD = 96;
+	private static final int OBJECT_SIZE = 64;
+	private static final int PARA_OBJECT_SIZE = 256;
 
-	private final com.github.benmanes.caffeine.cache.Cache<String, Object> cache;
+	private final com.github.benmanes.caffeine.cache.Cache<Key, Entry> cache;
+	private final Map<String, com.github.benmanes.caffeine.cache.Cache<Key, Entry>> appCaches;
+	private final Map<String, AppStats> appStats;
+	private final Map<String, Set<Key>> appKeys;
+	private final long defaultTtl;
+	private final long appQuota;
+	private final long maxWeight;
+	private final AtomicLong totalWeight = new AtomicLong();
 
 	/**
 	 * Default constructor.
 	 */
 	public CaffeineCache() {
-		cache = Caffeine.newBuilder()
-			.maximumSize(Config.getConfigInt("caffeine.cache_size", 10000))
-			.expireAfterWrite(Config.getConfigInt("caffeine.evict_after_minutes", 10), TimeUnit.MINUTES)
+		long maxMb = Config.getConfigInt("caffeine.cache_max_mb",
+				(int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 10 / 1024 / 1024));
+		long maxEntries = 0;
+		if (StringUtils.isBlank(Config.getConfigParam("caffeine.cache_max_mb", null))) {
+			maxEntries = Config.getConfigInt("caffeine.cache_size", 0);
+			if (maxEntries > 0) {
+				logger.warn("\"caffeine.cache_size\" is deprecated, use \"caffeine.cache_max_mb\" instead - "
+						+ "the cache is limited to {} entries.", maxEntries);
+			}
+		}
+		defaultTtl = TimeUnit.MINUTES.toNanos(Config.getConfigInt("caffeine.evict_after_minutes", 10));
+		appQuota = Config.getConfigInt("caffeine.app_quota_mb", 0) * 1024L * 1024L;
+		maxWeight = Math.max(1, maxMb) * 1024L * 1024L;
+		appCaches = new ConcurrentHashMap<>();
+		appStats = new ConcurrentHashMap<>();
+		appKeys = new ConcurrentHashMap<>();
+		cache = newCache(maxWeight, maxEntries);
+	}
+
+	private com.github.benmanes.caffeine.cache.Cache<Key, Entry> newCache(long maxWeight, long maxEntries) {
+		Caffeine<Object, Object> builder = Caffeine.newBuilder();
+		if (maxEntries > 0) {
+			builder.maximumSize(maxEntries);
+		} else {
+			builder.maximumWeight(maxWeight).weigher((Key key, Entry entry) -> entry.weight);
+		}
+		return builder
+			.expireAfter(new Expiry<Key, Entry>() {
+				public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+					return (entry.ttlNanos > 0) ? entry.ttlNanos : defaultTtl;
+				}
+
+				public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+					return expireAfterCreate(key, entry, currentTime);
+				}
+
+				public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+					return currentDuration;
+				}
+			})
+			// run removal notifications on the calling thread so that the stats are up to date
+			.executor(Runnable::run)
+			.removalListener((Key key, Entry entry, RemovalCause cause) -> {
+				if (key != null && entry != null) {
+					AppStats stats = getStats(key.appid);
+					stats.weight.add(-entry.weight);
+					totalWeight.addAndGet(-entry.weight);
+					stats.entries.decrement();
+					if (cause.wasEvicted()) {
+						stats.evictions.increment();
+					}
+					if (cause != RemovalCause.REPLACED) {
+						unindexKey(key);
+					}
+				}
+			})
 			.build();
 	}
 
@@ -67,7 +149,7 @@ public class CaffeineCache implements Cache {
 	@Override
 	public <T> void put(String appid, String id, T object) {
 		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
-			cache.put(key(appid, id), object);
+			putEntry(appid, id, object, 0);
 			logger.debug("Cache.put() {} {}", appid, id);
 		}
 	}
@@ -79,9 +161,7 @@ public class CaffeineCache implements Cache {
 			return;
 		}
 		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
-			String key = key(appid, id);
-			cache.put(key, object);
-			cache.put(key + ":ttl", Utils.timestamp() + ttlSeconds * 1000);
+			putEntry(appid, id, object, TimeUnit.SECONDS.toNanos(ttlSeconds));
 			logger.debug("Cache.put() {} {} ttl {}", appid, id, ttlSeconds);
 		}
 	}
@@ -89,13 +169,11 @@ public class CaffeineCache implements Cache {
 	@Override
 	public <T> void putAll(String appid, Map<String, T> objects) {
 		if (objects != null && !objects.isEmpty() && !StringUtils.isBlank(appid)) {
-			Map<String, T> cleanMap = new LinkedHashMap<>(objects.size());
 			for (Map.Entry<String, T> entry : objects.entrySet()) {
 				if (!StringUtils.isBlank(entry.getKey()) && entry.getValue() != null) {
-					cleanMap.put(key(appid, entry.getKey()), entry.getValue());
+					putEntry(appid, entry.getKey(), entry.getValue(), 0);
 				}
 			}
-			cache.putAll(cleanMap);
 			logger.debug("Cache.putAll() {} {}", appid, objects.size());
 		}
 	}
@@ -106,16 +184,11 @@ public class CaffeineCache implements Cache {
 		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
 			return null;
 		}
-		String key = key(appid, id);
-		if (isExpired((Long) cache.getIfPresent(key + ":ttl"))) {
-			remove(appid, key);
-			remove(appid, key + ":ttl");
-			logger.debug("Cache.get() {} {}", appid, null);
-			return null;
-		} else {
-			logger.debug("Cache.get() {} {}", appid, id);
-			return (T) cache.getIfPresent(key);
-		}
+		Entry entry = getCache(appid).getIfPresent(new Key(appid, id));
+		Object value = (entry == null || entry.value == MISSING) ? null : entry.value;
+		getStats(appid).record(value != null);
+		logger.debug("Cache.get() {} {}", appid, id);
+		return (T) value;
 	}
 
 	@Override
@@ -124,14 +197,23 @@ public class CaffeineCache implements Cache {
 		if (ids == null || StringUtils.isBlank(appid)) {
 			return Collections.emptyMap();
 		}
-		Map<String, T> map1 = new LinkedHashMap<>(ids.size());
-		ids.remove(null);
+		List<Key> keys = new ArrayList<>(ids.size());
 		for (String id : ids) {
-			T t = get(appid, id);
-			if (t != null) {
-				map1.put(id, t);
+			if (!StringUtils.isBlank(id)) {
+				keys.add(new Key(appid, id));
+			}
+		}
+		Map<Key, Entry> present = getCache(appid).getAllPresent(keys);
+		Map<String, T> map1 = new LinkedHashMap<>(present.size());
+		for (Key key : keys) {
+			Entry entry = present.get(key);
+			if (entry != null && entry.value != MISSING) {
+				map1.put(key.id, (T) entry.value);
 			}
 		}
+		AppStats stats = getStats(appid);
+		stats.hits.add(map1.size());
+		stats.misses.add(keys.size() - map1.size());
 		logger.debug("Cache.getAll() {} {}", appid, ids.size());
 		return map1;
 	}
@@ -140,7 +222,7 @@ public class CaffeineCache implements Cache {
 	public void remove(String appid, String id) {
 		if (!StringUtils.isBlank(id) && !StringUtils.isBlank(appid)) {
 			logger.debug("Cache.remove() {} {}", appid, id);
-			cache.invalidate(key(appid, id));
+			getCache(appid).invalidate(new Key(appid, id));
 		}
 	}
 
@@ -148,31 +230,306 @@ public class CaffeineCache implements Cache {
 	public void removeAll(String appid) {
 		if (!StringUtils.isBlank(appid)) {
 			logger.debug("Cache.removeAll() {}", appid);
-			KEY_PREFIXES.remove(appid);
+			com.github.benmanes.caffeine.cache.Cache<Key, Entry> appCache = getCache(appid);
+			if (appCache == cache) {
+				Set<Key> keys = appKeys.get(appid);
+				if (keys != null) {
+					cache.invalidateAll(new ArrayList<>(keys));
+				}
+			} else {
+				appCache.invalidateAll();
+			}
 		}
 	}
 
 	@Override
 	public void removeAll(String appid, List<String> ids) {
 		if (ids != null && !StringUtils.isBlank(appid)) {
+			List<Key> keys = new ArrayList<>(ids.size());
 			for (String id : ids) {
 				if (!StringUtils.isBlank(id)) {
-					remove(appid, id);
+					keys.add(new Key(appid, id));
 				}
 			}
+			getCache(appid).invalidateAll(keys);
 			logger.debug("Cache.removeAll() {} {}", appid, ids.size());
 		}
 	}
 
-	private boolean isExpired(Long ttl) {
-		if (ttl == null) {
+	@Override
+	public void putMissing(String appid, String id, Long ttlSeconds) {
+		if (!StringUtils.isBlank(id) && !StringUtils.isBlank(appid) && ttlSeconds != null && ttlSeconds > 0L) {
+			putEntry(appid, id, MISSING, TimeUnit.SECONDS.toNanos(ttlSeconds));
+			logger.debug("Cache.putMissing() {} {} ttl {}", appid, id, ttlSeconds);
+		}
+	}
+
+	@Override
+	public boolean isMissing(String appid, String id) {
+		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
 			return false;
 		}
-		return Utils.timestamp() > ttl;
+		Entry entry = getCache(appid).getIfPresent(new Key(appid, id));
+		return entry != null && entry.value == MISSING;
+	}
+
+	/**
+	 * Returns the cache statistics for an app.
+	 * @param appid the name of the application
+	 * @return a map of counters - "hits", "misses", "evictions", "entries", the estimated "bytes" used by
+	 * the app's entries and its "quota" in bytes (0 if the app shares the cache with others)
+	 */
+	public Map<String, Long> getStats(String appid) {
+		AppStats stats = StringUtils.isBlank(appid) ? null : appStats.get(appid);
+		Map<String, Long> map = new LinkedHashMap<>(6);
+		map.put("hits", stats == null ? 0L : stats.hits.sum());
+		map.put("misses", stats == null ? 0L : stats.misses.sum());
+		map.put("evictions", stats == null ? 0L : stats.evictions.sum());
+		map.put("entries", stats == null ? 0L : stats.entries.sum());
+		map.put("bytes", stats == null ? 0L : stats.weight.sum());
+		map.put("quota", appQuota);
+		return map;
+	}
+
+	/**
+	 * Returns the cache statistics for all apps which have used the cache.
+	 * @return a map of appid to stats
+	 * @see #getStats(java.lang.String)
+	 */
+	public Map<String, Map<String, Long>> getStats() {
+		Map<String, Map<String, Long>> map = new LinkedHashMap<>(appStats.size());
+		for (String appid : appStats.keySet()) {
+			map.put(appid, getStats(appid));
+		}
+		return map;
+	}
+
+	/**
+	 * Puts an object whose serialized size is already known, so that it isn't weighed again.
+	 * @param appid the name of the application
+	 * @param id the id
+	 * @param object the object
+	 * @param ttlSeconds time to live, null or 0 for the default
+	 * @param size the size of the object in bytes
+	 */
+	void put(String appid, String id, Object object, Long ttlSeconds, int size) {
+		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
+			long ttlNanos = (ttlSeconds == null || ttlSeconds <= 0L) ? 0 : TimeUnit.SECONDS.toNanos(ttlSeconds);
+			putEntry(appid, id, new Entry(object, weigh(id, size), ttlNanos));
+			logger.debug("Cache.put() {} {}", appid, id);
+		}
+	}
+
+	private void putEntry(String appid, String id, Object value, long ttlNanos) {
+		putEntry(appid, id, new Entry(value, weigh(id, value), ttlNanos));
+	}
+
+	private void putEntry(String appid, String id, Entry entry) {
+		AppStats stats = getStats(appid);
+		// counted before the put, the replaced entry is subtracted by the removal listener
+		stats.weight.add(entry.weight);
+		stats.entries.increment();
+		totalWeight.addAndGet(entry.weight);
+		Key key = new Key(appid, id);
+		com.github.benmanes.caffeine.cache.Cache<Key, Entry> appCache = getCache(appid);
+		appCache.put(key, entry);
+		if (appCache != cache) {
+			if (totalWeight.get() > maxWeight) {
+				evictOverBudget();
+			}
+		} else {
+			Set<Key> keys = appKeys.get(appid);
+			if (keys == null) {
+				keys = ConcurrentHashMap.newKeySet();
+				Set<Key> existing = appKeys.putIfAbsent(appid, keys);
+				if (existing != null) {
+					keys = existing;
+				}
+			}
+			keys.add(key);
+		}
+	}
+
+	/**
+	 * Evicts entries from the largest app caches until all of them fit in the overall limit.
+	 */
+	private synchronized void evictOverBudget() {
+		long excess = totalWeight.get() - maxWeight;
+		while (excess > 0) {
+			String largest = null;
+			long largestWeight = 0;
+			for (String appid : appCaches.keySet()) {
+				long weight = getStats(appid).weight.sum();
+				if (weight > largestWeight) {
+					largest = appid;
+					largestWeight = weight;
+				}
+			}
+			Policy.Eviction<Key, Entry> eviction = (largest == null) ? null :
+					appCaches.get(largest).policy().eviction().orElse(null);
+			if (eviction == null) {
+				return;
+			}
+			// lowering the maximum evicts the entries over it right away
+			eviction.setMaximum(Math.max(0, largestWeight - excess));
+			eviction.setMaximum(appQuota);
+			long remaining = totalWeight.get() - maxWeight;
+			if (remaining >= excess) {
+				return;
+			}
+			excess = remaining;
+		}
+	}
+
+	private void unindexKey(Key key) {
+		Set<Key> keys = appKeys.get(key.appid);
+		// the key may have been put again in the meantime
+		if (keys != null && !cache.asMap().containsKey(key)) {
+			keys.remove(key);
+		}
+	}
+
+	private com.github.benmanes.caffeine.cache.Cache<Key, Entry> getCache(String appid) {
+		if (appQuota <= 0) {
+			return cache;
+		}
+		com.github.benmanes.caffeine.cache.Cache<Key, Entry> appCache = appCaches.get(appid);
+		if (appCache == null) {
+			appCache = newCache(appQuota, 0);
+			com.github.benmanes.caffeine.cache.Cache<Key, Entry> existing = appCaches.putIfAbsent(appid, appCache);
+			if (existing != null) {
+				appCache = existing;
+			}
+		}
+		return appCache;
+	}
+
+	private AppStats getStats(String appid) {
+		AppStats stats = appStats.get(appid);
+		if (stats == null) {
+			stats = new AppStats();
+			AppStats existing = appStats.putIfAbsent(appid, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Estimates the number of bytes taken by a cache entry. ParaObjects are weighed by the length of their
+	 * fields and the properties of a {@link Sysprop}, which is much cheaper than serializing them.
+	 * @param id the key
+	 * @param value the value
+	 * @return the weight of the entry
+	 */
+	private static int weigh(String id, Object value) {
+		long size = 0;
+		if (value instanceof ParaObject) {
+			size = estimateSize((ParaObject) value);
+		} else if (value instanceof CharSequence) {
+			size = 2L * ((CharSequence) value).length();
+		} else if (value instanceof byte[]) {
+			size = ((byte[]) value).length;
+		} else if (value != MISSING) {
+			size = OBJECT_SIZE;
+		}
+		return weigh(id, size);
+	}
+
+	private static int weigh(String id, long size) {
+		return (int) Math.min(ENTRY_OVERHEAD + 2L * id.length() + size, Integer.MAX_VALUE);
+	}
+
+	private static long estimateSize(ParaObject po) {
+		long size = PARA_OBJECT_SIZE + length(po.getId()) + length(po.getName()) + length(po.getAppid()) +
+				length(po.getParentid()) + length(po.getType()) + length(po.getCreatorid());
+		if (po.getTags() != null) {
+			for (String tag : po.getTags()) {
+				size += length(tag) + OBJECT_SIZE;
+			}
+		}
+		if (po instanceof Sysprop && ((Sysprop) po).getProperties() != null) {
+			for (Map.Entry<String, Object> prop : ((Sysprop) po).getProperties().entrySet()) {
+				Object value = prop.getValue();
+				size += length(prop.getKey()) + OBJECT_SIZE;
+				size += (value instanceof CharSequence) ? 2L * ((CharSequence) value).length() : OBJECT_SIZE;
+			}
+		}
+		return size;
 	}
 
-	private String key(String appid, String id) {
-		return KEY_PREFIXES.computeIfAbsent(appid, (k) -> Utils.getNewId()) + "_" + id;
+	private static long length(String str) {
+		return (str == null) ? 0 : 2L * str.length();
+	}
+
+	/**
+	 * A cache key - an appid and an object id.
+	 */
+	private static final class Key {
+
+		private final String appid;
+		private final String id;
+		private final int hash;
+
+		Key(String appid, String id) {
+			this.appid = appid;
+			this.id = id;
+			this.hash = 31 * appid.hashCode() + id.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && Objects.equals(id, other.id) && Objects.equals(appid, other.appid);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * A cached value with its estimated size and time-to-live (0 for the default).
+	 */
+	private static final class Entry {
+
+		private final Object value;
+		private final int weight;
+		private final long ttlNanos;
+
+		Entry(Object value, int weight, long ttlNanos) {
+			this.value = value;
+			this.weight = weight;
+			this.ttlNanos = ttlNanos;
+		}
+	}
+
+	/**
+	 * Cache usage counters for an app.
+	 */
+	private static final class AppStats {
+
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+		private final LongAdder entries = new LongAdder();
+		private final LongAdder weight = new LongAdder();
+
+		void record(boolean hit) {
+			if (hit) {
+				hits.increment();
+			} else {
+				misses.increment();
+			}
+		}
 	}
 
 	////////////////////////////////////////////////////
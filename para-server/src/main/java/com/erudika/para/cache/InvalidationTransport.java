@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import java.io.IOException;
+
+/**
+ * Carries cache invalidation messages between the nodes of a cluster.
+ * Implementations deliver each message to the other nodes at most once - lost messages are tolerated,
+ * because cache entries still expire on their own. A node may or may not receive its own messages.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ * @see CacheInvalidationBus
+ */
+public interface InvalidationTransport {
+
+	/**
+	 * Starts listening for messages from other nodes.
+	 * @param receiver called for each message received
+	 * @throws IOException if the transport can't be started
+	 */
+	void start(Receiver receiver) throws IOException;
+
+	/**
+	 * Sends a message to the other nodes.
+	 * @param message the message
+	 * @throws IOException if the message couldn't be sent
+	 */
+	void send(byte[] message) throws IOException;
+
+	/**
+	 * Stops the transport and releases its resources.
+	 */
+	void stop();
+
+	/**
+	 * Handles incoming messages.
+	 */
+	interface Receiver {
+		/**
+		 * @param message a message sent by another node
+		 */
+		void onMessage(byte[] message);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An {@link InvalidationTransport} which delivers messages to all other loopback transports in the same JVM,
+ * synchronously. Useful for testing and for running several nodes in one process.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+	private static final List<LoopbackTransport> TRANSPORTS = new CopyOnWriteArrayList<>();
+
+	private volatile Receiver receiver;
+
+	@Override
+	public void start(Receiver receiver) {
+		this.receiver = receiver;
+		TRANSPORTS.add(this);
+	}
+
+	@Override
+	public void send(byte[] message) {
+		for (LoopbackTransport transport : TRANSPORTS) {
+			Receiver r = transport.receiver;
+			if (transport != this && r != null) {
+				r.onMessage(message.clone());
+			}
+		}
+	}
+
+	@Override
+	public void stop() {
+		TRANSPORTS.remove(this);
+		receiver = null;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.utils.Config;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InvalidationTransport} based on UDP multicast. All nodes join the same group
+ * ("invalidation.multicast_group") and port ("invalidation.multicast_port") - no peer list is needed,
+ * but the network must allow multicast traffic between the nodes.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class MulticastTransport implements InvalidationTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(MulticastTransport.class);
+	private static final int MAX_PACKET_SIZE = 65507;
+
+	private MulticastSocket socket;
+	private InetAddress group;
+	private int port;
+	private Thread listener;
+
+	@Override
+	public synchronized void start(final Receiver receiver) throws IOException {
+		group = InetAddress.getByName(Config.getConfigParam("invalidation.multicast_group", "239.255.27.1"));
+		port = Config.getConfigInt("invalidation.multicast_port", 45600);
+		socket = new MulticastSocket(port);
+		socket.setTimeToLive(Config.getConfigInt("invalidation.multicast_ttl", 1));
+		socket.joinGroup(group);
+		final MulticastSocket s = socket;
+		listener = new Thread(new Runnable() {
+			public void run() {
+				byte[] buffer = new byte[MAX_PACKET_SIZE];
+				while (!s.isClosed()) {
+					try {
+						DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+						s.receive(packet);
+						receiver.onMessage(Arrays.copyOfRange(packet.getData(), packet.getOffset(),
+								packet.getOffset() + packet.getLength()));
+					} catch (IOException e) {
+						if (!s.isClosed()) {
+							logger.warn("Failed to receive invalidation message: {}", e.getMessage());
+						}
+					} catch (Exception e) {
+						logger.error(null, e);
+					}
+				}
+			}
+		}, "para-invalidation-multicast");
+		listener.setDaemon(true);
+		listener.start();
+		logger.info("Listening for cache invalidations on {}:{}.", group.getHostAddress(), port);
+	}
+
+	@Override
+	public void send(byte[] message) throws IOException {
+		if (message.length > MAX_PACKET_SIZE) {
+			throw new IOException("Message too large for a UDP packet: " + message.length);
+		}
+		MulticastSocket s = socket;
+		if (s != null) {
+			s.send(new DatagramPacket(message, message.length, group, port));
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (socket != null) {
+			try {
+				socket.leaveGroup(group);
+			} catch (IOException e) {
+				logger.debug(null, e);
+			}
+			socket.close();
+			socket = null;
+		}
+		if (listener != null) {
+			listener.interrupt();
+			listener = null;
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A byte store kept outside of the Java heap, in direct {@link ByteBuffer}s.
+ * The memory is split into segments, each with its own lock, index and LRU eviction order.
+ * Values are written into fixed-size blocks of a segment, so entries of any size can reuse the space
+ * freed by others without compaction. Only the index (keys and block numbers) is kept on the heap.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class OffHeapStore {
+
+	private final Segment[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param capacity total capacity in bytes
+	 * @param blockSize size of a block in bytes
+	 * @param concurrency number of segments
+	 */
+	OffHeapStore(long capacity, int blockSize, int concurrency) {
+		int count = Math.max(1, concurrency);
+		if (blockSize <= 0 || capacity < (long) blockSize * count) {
+			throw new IllegalArgumentException("Off-heap store capacity " + capacity + " is too small for " +
+					count + " segments of blocks of " + blockSize + " bytes.");
+		}
+		long segmentCapacity = capacity / count;
+		// a direct buffer can't be larger than 2GB
+		long segmentBlocks = Math.min(segmentCapacity, Integer.MAX_VALUE) / blockSize;
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment((int) segmentBlocks, blockSize, segmentCapacity);
+		}
+	}
+
+	/**
+	 * Stores a value. Least recently used values are evicted to make room for it.
+	 * @param appid appid
+	 * @param id id
+	 * @param value the bytes to store
+	 * @param expiresAt the time when the value expires, in millis
+	 * @return false if the value is too large to be stored
+	 */
+	boolean put(String appid, String id, byte[] value, long expiresAt) {
+		Key key = new Key(appid, id);
+		return segmentFor(key).put(key, value, expiresAt);
+	}
+
+	/**
+	 * @param appid appid
+	 * @param id id
+	 * @return a copy of the stored bytes or null
+	 */
+	byte[] get(String appid, String id) {
+		Key key = new Key(appid, id);
+		byte[] value = segmentFor(key).get(key);
+		if (value == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * Reads multiple values, locking each segment once.
+	 * @param appid appid
+	 * @param ids ids
+	 * @return a map of id to a copy of the stored bytes, for the values which were found
+	 */
+	Map<String, byte[]> getAll(String appid, Collection<String> ids) {
+		Map<Segment, List<Key>> keysBySegment = new HashMap<>(segments.length);
+		for (String id : ids) {
+			Key key = new Key(appid, id);
+			Segment segment = segmentFor(key);
+			List<Key> keys = keysBySegment.get(segment);
+			if (keys == null) {
+				keys = new ArrayList<>();
+				keysBySegment.put(segment, keys);
+			}
+			keys.add(key);
+		}
+		Map<String, byte[]> values = new HashMap<>(ids.size());
+		for (Map.Entry<Segment, List<Key>> entry : keysBySegment.entrySet()) {
+			entry.getKey().getAll(entry.getValue(), values);
+		}
+		hits.add(values.size());
+		misses.add(ids.size() - values.size());
+		return values;
+	}
+
+	void remove(String appid, String id) {
+		Key key = new Key(appid, id);
+		segmentFor(key).remove(key);
+	}
+
+	void removeAll(String appid) {
+		for (Segment segment : segments) {
+			segment.removeAll(appid);
+		}
+	}
+
+	/**
+	 * @return counters - "hits", "misses", "evictions", "entries", "bytesUsed" and "bytesTotal"
+	 */
+	Map<String, Long> getStats() {
+		long entries = 0;
+		long used = 0;
+		long total = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				entries += segment.index.size();
+				used += (long) (segment.blocks - segment.freeCount) * segment.blockSize;
+				total += (long) segment.blocks * segment.blockSize;
+			}
+		}
+		Map<String, Long> stats = new LinkedHashMap<>(6);
+		stats.put("hits", hits.sum());
+		stats.put("misses", misses.sum());
+		stats.put("evictions", evictions.sum());
+		stats.put("entries", entries);
+		stats.put("bytesUsed", used);
+		stats.put("bytesTotal", total);
+		return stats;
+	}
+
+	private Segment segmentFor(Key key) {
+		int h = key.hash ^ (key.hash >>> 16);
+		return segments[(h & Integer.MAX_VALUE) % segments.length];
+	}
+
+	/**
+	 * A part of the store with its own buffer and lock.
+	 */
+	private final class Segment {
+
+		private final ByteBuffer buffer;
+		private final int blocks;
+		private final int blockSize;
+		private final int[] freeBlocks;
+		private int freeCount;
+		private final LinkedHashMap<Key, Slot> index = new LinkedHashMap<>(1024, 0.75f, true);
+
+		Segment(int blocks, int blockSize, long limit) {
+			long size = (long) blocks * blockSize;
+			if (blocks <= 0 || size > limit || size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Invalid segment size " + blocks + " x " + blockSize +
+						" bytes, the limit is " + limit + " bytes.");
+			}
+			this.blocks = blocks;
+			this.blockSize = blockSize;
+			this.buffer = ByteBuffer.allocateDirect((int) size);
+			this.freeBlocks = new int[blocks];
+			for (int i = 0; i < blocks; i++) {
+				freeBlocks[i] = blocks - 1 - i;
+			}
+			this.freeCount = blocks;
+		}
+
+		synchronized boolean put(Key key, byte[] value, long expiresAt) {
+			release(index.remove(key));
+			int needed = Math.max(1, (value.length + blockSize - 1) / blockSize);
+			if (needed > blocks) {
+				return false;
+			}
+			Iterator<Map.Entry<Key, Slot>> eldest = index.entrySet().iterator();
+			while (freeCount < needed && eldest.hasNext()) {
+				Slot evicted = eldest.next().getValue();
+				eldest.remove();
+				release(evicted);
+				evictions.increment();
+			}
+			int[] slotBlocks = new int[needed];
+			for (int i = 0; i < needed; i++) {
+				int block = freeBlocks[--freeCount];
+				slotBlocks[i] = block;
+				int offset = i * blockSize;
+				buffer.position(block * blockSize);
+				buffer.put(value, offset, Math.min(blockSize, value.length - offset));
+			}
+			index.put(key, new Slot(slotBlocks, value.length, expiresAt));
+			return true;
+		}
+
+		synchronized void getAll(List<Key> keys, Map<String, byte[]> values) {
+			for (Key key : keys) {
+				byte[] value = get(key);
+				if (value != null) {
+					values.put(key.id, value);
+				}
+			}
+		}
+
+		synchronized byte[] get(Key key) {
+			Slot slot = index.get(key);
+			if (slot == null) {
+				return null;
+			}
+			if (slot.expiresAt > 0 && slot.expiresAt < System.currentTimeMillis()) {
+				release(index.remove(key));
+				return null;
+			}
+			byte[] value = new byte[slot.length];
+			for (int i = 0; i < slot.blocks.length; i++) {
+				int offset = i * blockSize;
+				buffer.position(slot.blocks[i] * blockSize);
+				buffer.get(value, offset, Math.min(blockSize, value.length - offset));
+			}
+			return value;
+		}
+
+		synchronized void remove(Key key) {
+			release(index.remove(key));
+		}
+
+		synchronized void removeAll(String appid) {
+			Iterator<Map.Entry<Key, Slot>> it = index.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Key, Slot> entry = it.next();
+				if (appid.equals(entry.getKey().appid)) {
+					it.remove();
+					release(entry.getValue());
+				}
+			}
+		}
+
+		private void release(Slot slot) {
+			if (slot != null) {
+				for (int block : slot.blocks) {
+					freeBlocks[freeCount++] = block;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The location of a value in a segment.
+	 */
+	private static final class Slot {
+
+		private final int[] blocks;
+		private final int length;
+		private final long expiresAt;
+
+		Slot(int[] blocks, int length, long expiresAt) {
+			this.blocks = blocks;
+			this.length = length;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * An appid and an object id.
+	 */
+	private static final class Key {
+
+		private final String appid;
+		private final String id;
+		private final int hash;
+
+		Key(String appid, String id) {
+			this.appid = appid;
+			this.id = id;
+			this.hash = 31 * appid.hashCode() + id.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && Objects.equals(id, other.id) && Objects.equals(appid, other.appid);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.utils.Config;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InvalidationTransport} which sends messages over TCP to a fixed list of peers.
+ * Each node listens on "invalidation.tcp_port" and sends to the nodes listed in "invalidation.tcp_peers"
+ * as comma-separated {@code host:port} pairs. Connections to peers are opened lazily and reopened
+ * on the next message if they fail. Messages are framed with a 4-byte length prefix.
+ * <br>
+ * The listening socket is bound to "invalidation.tcp_bind_address" (all interfaces if not set) and only
+ * accepts connections from the hosts in the peer list. Incoming connections are served by a bounded pool
+ * of "invalidation.tcp_max_connections" threads, further connections are closed right away.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class TcpTransport implements InvalidationTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(TcpTransport.class);
+	private static final int CONNECT_TIMEOUT_MS = 2000;
+
+	private final List<Peer> peers = new CopyOnWriteArrayList<>();
+	private final Set<InetAddress> allowed = ConcurrentHashMap.newKeySet();
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+	private ServerSocket server;
+	private Thread acceptor;
+	private ThreadPoolExecutor readers;
+
+	@Override
+	public synchronized void start(final Receiver receiver) throws IOException {
+		for (String peer : Config.getConfigParam("invalidation.tcp_peers", "").split("\\s*,\\s*")) {
+			int sep = peer.lastIndexOf(':');
+			if (sep > 0) {
+				peers.add(new Peer(peer.substring(0, sep), NumberUtils.toInt(peer.substring(sep + 1))));
+			} else if (!StringUtils.isBlank(peer)) {
+				logger.warn("Invalid peer address '{}', expected host:port.", peer);
+			}
+		}
+		for (Peer peer : peers) {
+			try {
+				allowed.addAll(Arrays.asList(InetAddress.getAllByName(peer.host)));
+			} catch (UnknownHostException e) {
+				logger.warn("Unknown peer host '{}' - connections from it will be refused.", peer.host);
+			}
+		}
+		String bindAddress = Config.getConfigParam("invalidation.tcp_bind_address", "");
+		server = new ServerSocket(Config.getConfigInt("invalidation.tcp_port", 45601), 50,
+				StringUtils.isBlank(bindAddress) ? null : InetAddress.getByName(bindAddress));
+		readers = new ThreadPoolExecutor(0, Config.getConfigInt("invalidation.tcp_max_connections",
+				Math.max(4, 2 * peers.size())), 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "para-invalidation-tcp-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		final ServerSocket ss = server;
+		final ThreadPoolExecutor pool = readers;
+		acceptor = new Thread(new Runnable() {
+			public void run() {
+				while (!ss.isClosed()) {
+					try {
+						accept(ss.accept(), pool, receiver);
+					} catch (IOException e) {
+						if (!ss.isClosed()) {
+							logger.warn("Failed to accept connection: {}", e.getMessage());
+						}
+					}
+				}
+			}
+		}, "para-invalidation-tcp");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		logger.info("Listening for cache invalidations on {}, peers: {}.", server.getLocalSocketAddress(), peers);
+	}
+
+	@Override
+	public void send(byte[] message) throws IOException {
+		IOException error = null;
+		for (Peer peer : peers) {
+			try {
+				peer.send(message);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		for (Peer peer : peers) {
+			peer.stop();
+		}
+		peers.clear();
+		allowed.clear();
+		if (server != null) {
+			try {
+				server.close();
+			} catch (IOException e) {
+				logger.debug(null, e);
+			}
+			server = null;
+		}
+		acceptor = null;
+		if (readers != null) {
+			readers.shutdownNow();
+			readers = null;
+		}
+		for (Socket socket : connections) {
+			close(socket);
+		}
+	}
+
+	private void accept(Socket socket, ThreadPoolExecutor pool, Receiver receiver) {
+		if (!allowed.contains(socket.getInetAddress())) {
+			logger.warn("Refused connection from {} - not a peer.", socket.getRemoteSocketAddress());
+			close(socket);
+			return;
+		}
+		connections.add(socket);
+		try {
+			pool.execute(reader(socket, receiver));
+		} catch (RejectedExecutionException e) {
+			logger.warn("Refused connection from {} - too many connections.", socket.getRemoteSocketAddress());
+			connections.remove(socket);
+			close(socket);
+		}
+	}
+
+	private Runnable reader(final Socket socket, final Receiver receiver) {
+		return new Runnable() {
+			public void run() {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+					while (!socket.isClosed()) {
+						int length = in.readInt();
+						if (length < 0 || length > CacheInvalidationBus.MAX_MESSAGE_SIZE) {
+							throw new IOException("Invalid message length " + length);
+						}
+						byte[] message = new byte[length];
+						in.readFully(message);
+						receiver.onMessage(message);
+					}
+				} catch (EOFException e) {
+					logger.debug("Peer {} disconnected.", socket.getRemoteSocketAddress());
+				} catch (Exception e) {
+					logger.warn("Connection from {} failed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+				} finally {
+					connections.remove(socket);
+					close(socket);
+				}
+			}
+		};
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			logger.debug(null, e);
+		}
+	}
+
+	/**
+	 * An outgoing connection to another node.
+	 */
+	private static final class Peer {
+
+		private final String host;
+		private final int port;
+		private Socket socket;
+		private DataOutputStream out;
+		private boolean stopped;
+
+		Peer(String host, int port) {
+			this.host = host;
+			this.port = port;
+		}
+
+		synchronized void send(byte[] message) throws IOException {
+			if (stopped) {
+				throw new IOException("Transport stopped.");
+			}
+			try {
+				if (out == null) {
+					socket = new Socket();
+					socket.setTcpNoDelay(true);
+					socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+					out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				}
+				out.writeInt(message.length);
+				out.write(message);
+				out.flush();
+			} catch (IOException e) {
+				close();
+				throw new IOException("Failed to send invalidation message to " + this + ": " + e.getMessage(), e);
+			}
+		}
+
+		synchronized void stop() {
+			stopped = true;
+			close();
+		}
+
+		synchronized void close() {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					logger.debug(null, e);
+				}
+			}
+			socket = null;
+			out = null;
+		}
+
+		@Override
+		public String toString() {
+			return host + ":" + port;
+		}
+	}
+}
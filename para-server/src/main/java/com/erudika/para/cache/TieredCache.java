@@ -0,0 +1,330 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.utils.ParaObjectUtils;
+import com.erudika.para.utils.Config;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A two-level implementation of the {@link Cache} interface. Objects are kept on the heap in a
+ * {@link CaffeineCache} (L1) and are also written, as JSON, to an off-heap store (L2) which is much larger
+ * and isn't scanned by the garbage collector. Objects evicted from L1 are read back from L2 on the next hit.
+ * Only ParaObjects, strings and negative entries are stored in L2, other values are kept in L1 only.
+ * <br>
+ * The size of L2 is set with "offheap.max_mb" and is allocated up front - the JVM option
+ * {@code -XX:MaxDirectMemorySize} may need to be raised accordingly. Enable with {@code para.cache = "tiered"}.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+@Singleton
+public class TieredCache implements Cache {
+
+	private static final Logger logger = LoggerFactory.getLogger(TieredCache.class);
+	private static final byte TYPE_OBJECT = 'P';
+	private static final byte TYPE_STRING = 'S';
+	private static final byte TYPE_MISSING = 'M';
+	private static final int HEADER_SIZE = 9;
+
+	private final CaffeineCache l1;
+	private final OffHeapStore l2;
+
+	/**
+	 * Default constructor.
+	 */
+	public TieredCache() {
+		this(new CaffeineCache(), new OffHeapStore(Config.getConfigInt("offheap.max_mb", 256) * 1024L * 1024L,
+				Config.getConfigInt("offheap.block_size", 256),
+				Config.getConfigInt("offheap.segments", 16)));
+	}
+
+	TieredCache(CaffeineCache l1, OffHeapStore l2) {
+		this.l1 = l1;
+		this.l2 = l2;
+	}
+
+	@Override
+	public boolean contains(String appid, String id) {
+		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
+			return false;
+		}
+		return get(appid, id) != null;
+	}
+
+	@Override
+	public <T> void put(String appid, String id, T object) {
+		put(appid, id, object, null);
+	}
+
+	@Override
+	public <T> void put(String appid, String id, T object, Long ttlSeconds) {
+		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
+			putBoth(appid, id, object, ttlSeconds);
+		}
+	}
+
+	@Override
+	public <T> void putAll(String appid, Map<String, T> objects) {
+		if (objects != null && !objects.isEmpty() && !StringUtils.isBlank(appid)) {
+			for (Map.Entry<String, T> entry : objects.entrySet()) {
+				if (!StringUtils.isBlank(entry.getKey()) && entry.getValue() != null) {
+					putBoth(appid, entry.getKey(), entry.getValue(), null);
+				}
+			}
+		}
+	}
+
+	@Override
+	public <T> T get(String appid, String id) {
+		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
+			return null;
+		}
+		T value = l1.get(appid, id);
+		if (value == null) {
+			value = getL2(appid, id);
+		}
+		return value;
+	}
+
+	@Override
+	public <T> Map<String, T> getAll(String appid, List<String> ids) {
+		if (ids == null || StringUtils.isBlank(appid)) {
+			return Collections.emptyMap();
+		}
+		Map<String, T> fromL1 = l1.getAll(appid, ids);
+		if (fromL1.size() == ids.size()) {
+			return fromL1;
+		}
+		List<String> missing = new ArrayList<>(ids.size() - fromL1.size());
+		for (String id : ids) {
+			if (!StringUtils.isBlank(id) && !fromL1.containsKey(id)) {
+				missing.add(id);
+			}
+		}
+		Map<String, byte[]> fromL2 = missing.isEmpty() ? Collections.emptyMap() : l2.getAll(appid, missing);
+		Map<String, T> results = new LinkedHashMap<>(ids.size());
+		for (String id : ids) {
+			if (StringUtils.isBlank(id)) {
+				continue;
+			}
+			T value = fromL1.get(id);
+			if (value == null) {
+				value = promote(appid, id, fromL2.get(id));
+			}
+			if (value != null) {
+				results.put(id, value);
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public void remove(String appid, String id) {
+		if (!StringUtils.isBlank(id) && !StringUtils.isBlank(appid)) {
+			l1.remove(appid, id);
+			l2.remove(appid, id);
+		}
+	}
+
+	@Override
+	public void removeAll(String appid) {
+		if (!StringUtils.isBlank(appid)) {
+			l1.removeAll(appid);
+			l2.removeAll(appid);
+		}
+	}
+
+	@Override
+	public void removeAll(String appid, List<String> ids) {
+		if (ids != null && !StringUtils.isBlank(appid)) {
+			l1.removeAll(appid, ids);
+			for (String id : ids) {
+				if (!StringUtils.isBlank(id)) {
+					l2.remove(appid, id);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void putMissing(String appid, String id, Long ttlSeconds) {
+		if (!StringUtils.isBlank(id) && !StringUtils.isBlank(appid) && ttlSeconds != null && ttlSeconds > 0L) {
+			l1.putMissing(appid, id, ttlSeconds);
+			long expiresAt = System.currentTimeMillis() + ttlSeconds * 1000;
+			byte[] marker = ByteBuffer.allocate(HEADER_SIZE).put(TYPE_MISSING).putLong(expiresAt).array();
+			if (!l2.put(appid, id, marker, expiresAt)) {
+				l2.remove(appid, id);
+			}
+		}
+	}
+
+	@Override
+	public boolean isMissing(String appid, String id) {
+		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
+			return false;
+		}
+		if (l1.isMissing(appid, id)) {
+			return true;
+		}
+		// the negative entry may have been evicted from L1 only
+		byte[] bytes = l2.get(appid, id);
+		if (bytes == null || bytes.length < HEADER_SIZE || bytes[0] != TYPE_MISSING) {
+			return false;
+		}
+		Long ttlSeconds = getRemainingTtl(ByteBuffer.wrap(bytes, 1, 8).getLong());
+		if (ttlSeconds == null || ttlSeconds <= 0) {
+			return false;
+		}
+		l1.putMissing(appid, id, ttlSeconds);
+		return true;
+	}
+
+	/**
+	 * Returns the statistics of both cache levels for an app.
+	 * @param appid the name of the application
+	 * @return a map with "l1" - the stats of the app in L1 and "l2" - the stats of the whole off-heap store
+	 */
+	public Map<String, Map<String, Long>> getStats(String appid) {
+		Map<String, Map<String, Long>> stats = new LinkedHashMap<>(2);
+		stats.put("l1", l1.getStats(appid));
+		stats.put("l2", l2.getStats());
+		return stats;
+	}
+
+	/**
+	 * Serializes the value once - the bytes are written to L2 and their size is the weight of the value in L1.
+	 */
+	private void putBoth(String appid, String id, Object value, Long ttlSeconds) {
+		long expiresAt = (ttlSeconds == null || ttlSeconds <= 0) ? 0 : System.currentTimeMillis() + ttlSeconds * 1000;
+		byte[] bytes = serialize(value, expiresAt);
+		if (bytes == null) {
+			l1.put(appid, id, value, ttlSeconds);
+		} else {
+			l1.put(appid, id, value, ttlSeconds, bytes.length - HEADER_SIZE);
+		}
+		if (bytes == null || !l2.put(appid, id, bytes, expiresAt)) {
+			// don't leave an older version of the value behind
+			l2.remove(appid, id);
+		}
+	}
+
+	private <T> T getL2(String appid, String id) {
+		return promote(appid, id, l2.get(appid, id));
+	}
+
+	/**
+	 * Deserializes a value read from L2 and puts it back in L1.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T promote(String appid, String id, byte[] bytes) {
+		if (bytes == null || bytes.length < HEADER_SIZE) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		byte type = buffer.get();
+		long expiresAt = buffer.getLong();
+		if (type == TYPE_MISSING) {
+			return null;
+		}
+		// keep the remaining TTL when the value is promoted to L1
+		Long ttlSeconds = getRemainingTtl(expiresAt);
+		if (ttlSeconds != null && ttlSeconds <= 0) {
+			return null;
+		}
+		String str = new String(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE, StandardCharsets.UTF_8);
+		Object value = (type == TYPE_OBJECT) ? ParaObjectUtils.fromJSON(str) : str;
+		if (value != null) {
+			l1.put(appid, id, value, ttlSeconds, bytes.length - HEADER_SIZE); // promote
+			logger.debug("Cache.get() {} {} from L2", appid, id);
+		}
+		return (T) value;
+	}
+
+	private static Long getRemainingTtl(long expiresAt) {
+		return (expiresAt > 0) ? (expiresAt - System.currentTimeMillis() + 999) / 1000 : null;
+	}
+
+	private static byte[] serialize(Object value, long expiresAt) {
+		String str;
+		byte type;
+		if (value instanceof ParaObject) {
+			str = ParaObjectUtils.getAnnotatedFieldsAsJSON((ParaObject) value);
+			type = TYPE_OBJECT;
+		} else if (value instanceof String) {
+			str = (String) value;
+			type = TYPE_STRING;
+		} else {
+			return null;
+		}
+		byte[] data = str.getBytes(StandardCharsets.UTF_8);
+		return ByteBuffer.allocate(HEADER_SIZE + data.length).put(type).putLong(expiresAt).put(data).array();
+	}
+
+	////////////////////////////////////////////////////
+
+	@Override
+	public boolean contains(String id) {
+		return contains(Config.getRootAppIdentifier(), id);
+	}
+
+	@Override
+	public <T> void put(String id, T object) {
+		put(Config.getRootAppIdentifier(), id, object);
+	}
+
+	@Override
+	public <T> void putAll(Map<String, T> objects) {
+		putAll(Config.getRootAppIdentifier(), objects);
+	}
+
+	@Override
+	public <T> T get(String id) {
+		return get(Config.getRootAppIdentifier(), id);
+	}
+
+	@Override
+	public <T> Map<String, T> getAll(List<String> ids) {
+		return getAll(Config.getRootAppIdentifier(), ids);
+	}
+
+	@Override
+	public void remove(String id) {
+		remove(Config.getRootAppIdentifier(), id);
+	}
+
+	@Override
+	public void removeAll() {
+		removeAll(Config.getRootAppIdentifier());
+	}
+
+	@Override
+	public void removeAll(List<String> ids) {
+		removeAll(Config.getRootAppIdentifier(), ids);
+	}
+
+}
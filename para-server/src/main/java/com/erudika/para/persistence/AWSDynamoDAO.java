@@ -21,6 +21,8 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.erudika.para.annotations.Locked;
 import com.amazonaws.services.dynamodbv2.model.AttributeAction;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemResult;
 import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
@@ -29,6 +31,7 @@ import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
 import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.erudika.para.AppCreatedListener;
@@ -36,9 +39,12 @@ import com.erudika.para.AppDeletedListener;
 import com.erudika.para.Para;
 import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
-import static com.erudika.para.persistence.AWSDynamoUtils.batchGet;
 import static com.erudika.para.persistence.AWSDynamoUtils.batchWrite;
+import static com.erudika.para.persistence.AWSDynamoUtils.executeWithBackoff;
+import static com.erudika.para.persistence.AWSDynamoUtils.getBackoffDelay;
+import static com.erudika.para.persistence.AWSDynamoUtils.getMaxRetries;
 import static com.erudika.para.persistence.AWSDynamoUtils.fromRow;
+import static com.erudika.para.persistence.AWSDynamoUtils.getBatchExecutor;
 import static com.erudika.para.persistence.AWSDynamoUtils.getKeyForAppid;
 import static com.erudika.para.persistence.AWSDynamoUtils.getTableNameForAppid;
 import static com.erudika.para.persistence.AWSDynamoUtils.isSharedAppid;
@@ -52,12 +58,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -183,19 +193,22 @@ public class AWSDynamoDAO implements DAO {
 		if (StringUtils.isBlank(key) || StringUtils.isBlank(appid) || row == null || row.isEmpty()) {
 			return;
 		}
-		Map<String, AttributeValueUpdate> rou = new HashMap<>();
 		try {
-			for (Entry<String, AttributeValue> attr : row.entrySet()) {
-				rou.put(attr.getKey(), new AttributeValueUpdate(attr.getValue(), AttributeAction.PUT));
-			}
-			UpdateItemRequest updateItemRequest = new UpdateItemRequest(getTableNameForAppid(appid),
-					Collections.singletonMap(Config._KEY, new AttributeValue(getKeyForAppid(key, appid))), rou);
-			client().updateItem(updateItemRequest);
+			client().updateItem(getUpdateItemRequest(key, appid, row));
 		} catch (Exception e) {
 			logger.error("Could not update row in DB - appid={}, key={}", appid, key, e);
 		}
 	}
 
+	private UpdateItemRequest getUpdateItemRequest(String key, String appid, Map<String, AttributeValue> row) {
+		Map<String, AttributeValueUpdate> rou = new HashMap<>();
+		for (Entry<String, AttributeValue> attr : row.entrySet()) {
+			rou.put(attr.getKey(), new AttributeValueUpdate(attr.getValue(), AttributeAction.PUT));
+		}
+		return new UpdateItemRequest(getTableNameForAppid(appid),
+				Collections.singletonMap(Config._KEY, new AttributeValue(getKeyForAppid(key, appid))), rou);
+	}
+
 	private Map<String, AttributeValue> readRow(String key, String appid) {
 		if (StringUtils.isBlank(key) || StringUtils.isBlank(appid)) {
 			return null;
@@ -284,35 +297,57 @@ public class AWSDynamoDAO implements DAO {
 		}
 
 		Map<String, P> results = new LinkedHashMap<>(keySet.size(), 0.75f, true);
+		List<KeysAndAttributes> batches = new ArrayList<>(keySet.size() / MAX_KEYS_PER_READ + 1);
 		ArrayList<Map<String, AttributeValue>> keyz = new ArrayList<>(MAX_KEYS_PER_READ);
 
 		try {
-			int batchSteps = 1;
-			if ((keySet.size() > MAX_KEYS_PER_READ)) {
-				batchSteps = (keySet.size() / MAX_KEYS_PER_READ)
-						+ ((keySet.size() % MAX_KEYS_PER_READ > 0) ? 1 : 0);
+			for (String key : keySet) {
+				results.put(key, null);
+				keyz.add(Collections.singletonMap(Config._KEY, new AttributeValue(getKeyForAppid(key, appid))));
+				if (keyz.size() == MAX_KEYS_PER_READ) {
+					batches.add(getKeysAndAttributes(keyz, getAllColumns));
+					keyz = new ArrayList<>(MAX_KEYS_PER_READ);
+				}
+			}
+			if (!keyz.isEmpty()) {
+				batches.add(getKeysAndAttributes(keyz, getAllColumns));
 			}
 
-			Iterator<String> it = keySet.iterator();
-			String tableName = getTableNameForAppid(appid);
-			int j = 0;
-
-			for (int i = 0; i < batchSteps; i++) {
-				while (it.hasNext() && j < MAX_KEYS_PER_READ) {
-					String key = it.next();
-					results.put(key, null);
-					keyz.add(Collections.singletonMap(Config._KEY, new AttributeValue(getKeyForAppid(key, appid))));
-					j++;
+			final String tableName = getTableNameForAppid(appid);
+			if (batches.size() == 1) {
+				readBatch(tableName, batches.get(0), results);
+			} else {
+				// keys over the BatchGetItem limit are fetched in parallel, in batches of 100
+				List<Future<Map<String, P>>> futures = new ArrayList<>(batches.size());
+				for (final KeysAndAttributes kna : batches) {
+					futures.add(getBatchExecutor().submit(new Callable<Map<String, P>>() {
+						public Map<String, P> call() throws Exception {
+							Map<String, P> batchResults = new HashMap<>(MAX_KEYS_PER_READ);
+							readBatch(tableName, kna, batchResults);
+							return batchResults;
+						}
+					}));
 				}
-
-				KeysAndAttributes kna = new KeysAndAttributes().withKeys(keyz);
-				if (!getAllColumns) {
-					kna.setAttributesToGet(Arrays.asList(Config._ID, Config._KEY, Config._TYPE));
+				// a failed batch leaves its keys mapped to null, the other batches are still returned
+				int failed = 0;
+				int failedKeys = 0;
+				for (int i = 0; i < futures.size(); i++) {
+					try {
+						results.putAll(futures.get(i).get());
+					} catch (ExecutionException e) {
+						failed++;
+						failedKeys += batches.get(i).getKeys().size();
+						logger.warn("Could not read batch {} of {} from DB - appid={}", i + 1, futures.size(), appid, e.getCause());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						failed++;
+						failedKeys += batches.get(i).getKeys().size();
+					}
+				}
+				if (failed > 0) {
+					logger.error("DAO.readAll() failed to read {} of {} batches ({} of {} keys) from '{}'.",
+							failed, futures.size(), failedKeys, keySet.size(), appid);
 				}
-
-				batchGet(Collections.singletonMap(tableName, kna), results);
-				keyz.clear();
-				j = 0;
 			}
 			logger.debug("DAO.readAll({}) {}", keySet, results.size());
 		} catch (Exception e) {
@@ -321,6 +356,59 @@ public class AWSDynamoDAO implements DAO {
 		return results;
 	}
 
+	/**
+	 * Reads one batch of up to 100 keys, retrying throttled requests and unprocessed keys. Unprocessed keys
+	 * are retried up to "dynamodb.max_retries" times, with the same backoff as throttled requests.
+	 * @param <P> type of object
+	 * @param tableName the table name
+	 * @param kna the keys to read
+	 * @param results a map of ID->ParaObject
+	 * @throws Exception if the batch can't be read or some keys are still unprocessed after the last retry
+	 */
+	<P extends ParaObject> void readBatch(String tableName, KeysAndAttributes kna, Map<String, P> results)
+			throws Exception {
+		Map<String, KeysAndAttributes> items = Collections.singletonMap(tableName, kna);
+		for (int attempt = 0; items != null && !items.isEmpty(); attempt++) {
+			final BatchGetItemRequest request = new BatchGetItemRequest().
+					withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL).withRequestItems(items);
+			BatchGetItemResult result = executeWithBackoff(new Callable<BatchGetItemResult>() {
+				public BatchGetItemResult call() throws Exception {
+					return client().batchGetItem(request);
+				}
+			});
+			if (result == null) {
+				return;
+			}
+			List<Map<String, AttributeValue>> res = (result.getResponses() == null) ? null :
+					result.getResponses().get(tableName);
+			if (res != null) {
+				for (Map<String, AttributeValue> item : res) {
+					P obj = fromRow(item);
+					if (obj != null) {
+						results.put(obj.getId(), obj);
+					}
+				}
+			}
+			items = result.getUnprocessedKeys();
+			if (items != null && !items.isEmpty()) {
+				int unprocessed = items.get(tableName) == null ? 0 : items.get(tableName).getKeys().size();
+				if (attempt >= getMaxRetries()) {
+					throw new IllegalStateException(unprocessed + " keys still unprocessed after " + attempt + " retries.");
+				}
+				logger.warn("{} UNPROCESSED read requests!", unprocessed);
+				Thread.sleep(getBackoffDelay(attempt));
+			}
+		}
+	}
+
+	private KeysAndAttributes getKeysAndAttributes(List<Map<String, AttributeValue>> keyz, boolean getAllColumns) {
+		KeysAndAttributes kna = new KeysAndAttributes().withKeys(keyz);
+		if (!getAllColumns) {
+			kna.setAttributesToGet(Arrays.asList(Config._ID, Config._KEY, Config._TYPE));
+		}
+		return kna;
+	}
+
 	@Override
 	public <P extends ParaObject> List<P> readPage(String appid, Pager pager) {
 		if (StringUtils.isBlank(appid)) {
@@ -346,14 +434,76 @@ public class AWSDynamoDAO implements DAO {
 	@Override
 	public <P extends ParaObject> void updateAll(String appid, List<P> objects) {
 		// DynamoDB doesn't have a BatchUpdate API yet so we have to do one of the following:
-		// 1. update items one by one (chosen for simplicity)
+		// 1. update items one by one, in parallel (chosen for simplicity)
 		// 2. readAll() first, then call writeAll() with updated objects (2 ops)
-		if (objects != null) {
+		if (objects == null || objects.isEmpty() || StringUtils.isBlank(appid)) {
+			return;
+		}
+		if (objects.size() == 1) {
+			update(appid, objects.get(0));
+			return;
+		}
+		List<String> failed = updateItems(appid, objects);
+		if (!failed.isEmpty()) {
+			// failures other than throttling, which was already retried, may be transient too - retry them once
+			Set<String> ids = new HashSet<>(failed);
+			List<P> retries = new ArrayList<>(failed.size());
 			for (P object : objects) {
-				update(appid, object);
+				if (object != null && ids.contains(object.getId())) {
+					retries.add(object);
+				}
+			}
+			failed = updateItems(appid, retries);
+			if (!failed.isEmpty()) {
+				logger.error("DAO.updateAll() gave up on {} of {} objects in '{}': {}",
+						failed.size(), objects.size(), appid, failed);
 			}
 		}
-		logger.debug("DAO.updateAll() {}", (objects == null) ? 0 : objects.size());
+	}
+
+	/**
+	 * Updates each object with a separate request, in parallel. Failures are logged and don't stop
+	 * the other updates.
+	 * @param <P> type of object
+	 * @param appid the app id
+	 * @param objects the objects to update
+	 * @return the ids of the objects which could not be updated
+	 */
+	<P extends ParaObject> List<String> updateItems(final String appid, List<P> objects) {
+		Map<String, Future<?>> futures = new LinkedHashMap<>(objects.size());
+		for (P object : objects) {
+			if (object != null && object.getId() != null) {
+				object.setUpdated(Utils.timestamp());
+				final UpdateItemRequest request = getUpdateItemRequest(object.getId(), appid, toRow(object, Locked.class));
+				futures.put(object.getId(), getBatchExecutor().submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						return executeWithBackoff(new Callable<Object>() {
+							public Object call() throws Exception {
+								return client().updateItem(request);
+							}
+						});
+					}
+				}));
+			}
+		}
+		List<String> failed = new LinkedList<>();
+		for (Entry<String, Future<?>> entry : futures.entrySet()) {
+			try {
+				entry.getValue().get();
+			} catch (ExecutionException e) {
+				failed.add(entry.getKey());
+				logger.warn("Could not update row in DB - appid={}, key={}", appid, entry.getKey(), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failed.add(entry.getKey());
+			}
+		}
+		if (!failed.isEmpty()) {
+			logger.warn("DAO.updateAll() failed to update {} of {} objects in '{}': {}",
+					failed.size(), futures.size(), appid, failed);
+		}
+		logger.debug("DAO.updateAll() {}->{}", appid, futures.size() - failed.size());
+		return failed;
 	}
 
 	@Override
@@ -17,6 +17,7 @@
  */
 package com.erudika.para.persistence;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
@@ -33,8 +34,6 @@ import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
-import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
@@ -44,11 +43,11 @@ import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
 import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
-import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.ListTablesResult;
 import com.amazonaws.services.dynamodbv2.model.Projection;
 import com.amazonaws.services.dynamodbv2.model.ProjectionType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
@@ -70,6 +69,10 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +85,7 @@ public final class AWSDynamoUtils {
 
 	private static AmazonDynamoDB ddbClient;
 	private static DynamoDB ddb;
+	private static ExecutorService batchExecutor;
 	private static final String LOCAL_ENDPOINT = "http://localhost:8000";
 	private static final Logger logger = LoggerFactory.getLogger(AWSDynamoUtils.class);
 
@@ -137,6 +141,77 @@ public final class AWSDynamoUtils {
 			ddb.shutdown();
 			ddb = null;
 		}
+		synchronized (AWSDynamoUtils.class) {
+			if (batchExecutor != null) {
+				batchExecutor.shutdownNow();
+				batchExecutor = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the thread pool used for executing batch requests in parallel.
+	 * Its size is set with "dynamodb.batch_concurrency" and it's separate from the main
+	 * executor so that DAO calls made from within Para's own worker threads can't deadlock.
+	 * @return an executor service
+	 */
+	protected static synchronized ExecutorService getBatchExecutor() {
+		if (batchExecutor == null) {
+			batchExecutor = Executors.newFixedThreadPool(Math.max(1,
+					Config.getConfigInt("dynamodb.batch_concurrency", 10)));
+		}
+		return batchExecutor;
+	}
+
+	/**
+	 * Executes a request, retrying it with exponential backoff and jitter when it's throttled.
+	 * The maximum number of retries is set with "dynamodb.max_retries" and the base delay
+	 * in milliseconds with "dynamodb.retry_backoff_ms".
+	 * @param <T> result type
+	 * @param request the request to execute
+	 * @return the result of the request
+	 * @throws Exception if the request fails or is still throttled after the last retry
+	 */
+	protected static <T> T executeWithBackoff(Callable<T> request) throws Exception {
+		int maxRetries = getMaxRetries();
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return request.call();
+			} catch (AmazonServiceException e) {
+				if (attempt >= maxRetries || !isThrottlingException(e)) {
+					throw e;
+				}
+				long delay = getBackoffDelay(attempt);
+				logger.debug("Request throttled, retrying in {}ms ({}/{})", delay, attempt + 1, maxRetries);
+				Thread.sleep(delay);
+			}
+		}
+	}
+
+	/**
+	 * @return the maximum number of times a throttled request is retried - "dynamodb.max_retries"
+	 */
+	protected static int getMaxRetries() {
+		return Config.getConfigInt("dynamodb.max_retries", 5);
+	}
+
+	/**
+	 * Returns the delay before retrying a request - exponential backoff with jitter, starting from
+	 * "dynamodb.retry_backoff_ms".
+	 * @param attempt the number of the failed attempt, starting from 0
+	 * @return the delay in milliseconds
+	 */
+	protected static long getBackoffDelay(int attempt) {
+		long baseDelay = Math.max(1, Config.getConfigInt("dynamodb.retry_backoff_ms", 100));
+		long maxDelay = Math.min(baseDelay << Math.min(attempt, 16), 20000L);
+		return ThreadLocalRandom.current().nextLong(maxDelay / 2, maxDelay + 1);
+	}
+
+	private static boolean isThrottlingException(AmazonServiceException e) {
+		return e instanceof ProvisionedThroughputExceededException ||
+				"ThrottlingException".equals(e.getErrorCode()) ||
+				"RequestLimitExceeded".equals(e.getErrorCode()) ||
+				e.getStatusCode() == 429;
 	}
 
 	/**
@@ -396,43 +471,6 @@ public final class AWSDynamoUtils {
 		return ParaObjectUtils.setAnnotatedFields(props);
 	}
 
-	/**
-	 * Reads multiple items from DynamoDB, in batch.
-	 * @param <P> type of object
-	 * @param kna a map of row key->data
-	 * @param results a map of ID->ParaObject
-	 */
-	protected static <P extends ParaObject> void batchGet(Map<String, KeysAndAttributes> kna, Map<String, P> results) {
-		if (kna == null || kna.isEmpty() || results == null) {
-			return;
-		}
-		try {
-			BatchGetItemResult result = getClient().batchGetItem(new BatchGetItemRequest().
-					withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL).withRequestItems(kna));
-			if (result == null) {
-				return;
-			}
-
-			List<Map<String, AttributeValue>> res = result.getResponses().get(kna.keySet().iterator().next());
-
-			for (Map<String, AttributeValue> item : res) {
-				P obj = fromRow(item);
-				if (obj != null) {
-					results.put(obj.getId(), obj);
-				}
-			}
-			logger.debug("batchGet(): total {}, cc {}", res.size(), result.getConsumedCapacity());
-
-			if (result.getUnprocessedKeys() != null && !result.getUnprocessedKeys().isEmpty()) {
-				Thread.sleep(1000);
-				logger.warn("{} UNPROCESSED read requests!", result.getUnprocessedKeys().size());
-				batchGet(result.getUnprocessedKeys(), results);
-			}
-		} catch (Exception e) {
-			logger.error(null, e);
-		}
-	}
-
 	/**
 	 * Writes multiple items in batch.
 	 * @param items a map of tables->write requests
@@ -190,22 +190,22 @@ public class H2DAO implements DAO {
 
 	@Override
 	public <P extends ParaObject> List<P> findTerms(String type, Map<String, ?> terms, boolean matchAll, Pager... pager) {
-		return null;
+		return findTerms(Config.getRootAppIdentifier(), type, terms, matchAll, pager);
 	}
 
 	@Override
 	public <P extends ParaObject> List<P> findTerms(String appid, String type, Map<String, ?> terms, boolean matchAll, Pager... pager) {
-		return null;
+		return H2Utils.findRows(appid, type, terms, matchAll, (pager != null && pager.length > 0) ? pager[0] : null);
 	}
 
 	@Override
 	public <P extends ParaObject> List<P> findTermInList(String type, String field, List<?> terms, Pager... pager) {
-		return null;
+		return findTermInList(Config.getRootAppIdentifier(), type, field, terms, pager);
 	}
 
 	@Override
 	public <P extends ParaObject> List<P> findTermInList(String appid, String type, String field, List<?> terms, Pager... pager) {
-		return null;
+		return H2Utils.findRowsInList(appid, type, field, terms, (pager != null && pager.length > 0) ? pager[0] : null);
 	}
 
 }
@@ -35,12 +35,19 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.h2.jdbcx.JdbcConnectionPool;
 import org.h2.tools.Server;
 import org.slf4j.Logger;
@@ -54,6 +61,12 @@ public final class H2Utils {
 
 	private static final Logger logger = LoggerFactory.getLogger(H2Utils.class);
 
+	private static final Set<String> COLUMNS = new HashSet<>(Arrays.asList(Config._ID, Config._TYPE,
+			Config._NAME, Config._PARENTID, Config._CREATORID, Config._TIMESTAMP, Config._UPDATED));
+	private static final Set<String> TIME_COLUMNS = new HashSet<>(Arrays.asList(Config._TIMESTAMP, Config._UPDATED));
+	private static final Set<String> INDEXED_TABLES = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private static final Pattern RANGE_KEY = Pattern.compile("^(.+?)\\s*(<=|>=|<|>)$");
+
 	private static JdbcConnectionPool pool;
 	private static Server server;
 
@@ -175,6 +188,7 @@ public final class H2Utils {
 					table, Config._ID, Config._TYPE, Config._NAME, Config._PARENTID, Config._CREATORID,
 					Config._TIMESTAMP, Config._UPDATED);
 			s.execute(sql);
+			createIndexes(conn, table);
 			logger.info("Created H2 table '{}'.", table);
 			return true;
 		} catch (Exception e) {
@@ -186,6 +200,23 @@ public final class H2Utils {
 		return false;
 	}
 
+	/**
+	 * Creates secondary indexes on the typed columns of a table, unless they already exist.
+	 */
+	private static void createIndexes(Connection conn, String table) throws SQLException {
+		if (INDEXED_TABLES.contains(table)) {
+			return;
+		}
+		try (Statement s = conn.createStatement()) {
+			for (String column : COLUMNS) {
+				if (!Config._ID.equals(column)) {
+					s.execute(Utils.formatMessage("CREATE INDEX IF NOT EXISTS {0}_{1}_idx ON {0}({1})", table, column));
+				}
+			}
+		}
+		INDEXED_TABLES.add(table);
+	}
+
 	/**
 	 * Deletes a table.
 	 * @param appid id of the {@link com.erudika.para.core.App}
@@ -202,6 +233,7 @@ public final class H2Utils {
 			String table = getTableNameForAppid(appid);
 			s = conn.createStatement();
 			s.execute("DROP TABLE IF EXISTS " + table);
+			INDEXED_TABLES.remove(table);
 			logger.info("Deleted H2 table '{}'.", table);
 		} catch (Exception e) {
 			logger.error(null, e);
@@ -306,8 +338,7 @@ public final class H2Utils {
 				} else {
 					p.setTimestamp(7, new Timestamp(object.getUpdated()));
 				}
-				p.setString(8, ParaObjectUtils.getJsonWriterNoIdent().
-						writeValueAsString(ParaObjectUtils.getAnnotatedFields(object, false)));
+				p.setString(8, ParaObjectUtils.getAnnotatedFieldsAsJSON(object));
 				p.addBatch();
 			}
 			p.executeBatch();
@@ -365,8 +396,7 @@ public final class H2Utils {
 						p.setTimestamp(5, new Timestamp(updated.getTimestamp()));
 					}
 					p.setTimestamp(6, new Timestamp(updated.getUpdated()));
-					p.setString(7, ParaObjectUtils.getJsonWriterNoIdent().
-							writeValueAsString(ParaObjectUtils.getAnnotatedFields(updated, false)));
+					p.setString(7, ParaObjectUtils.getAnnotatedFieldsAsJSON(updated));
 					p.setString(8, updated.getId());
 					p.addBatch();
 				}
@@ -410,7 +440,8 @@ public final class H2Utils {
 	}
 
 	/**
-	 * Scans the DB one page at a time.
+	 * Scans the DB one page at a time, in primary key order. If the pager contains the last key
+	 * of the previous page, the next page is read with a key seek, otherwise the page number is used.
 	 * @param <P> type of object
 	 * @param appid app id
 	 * @param pager a {@link Pager}
@@ -430,18 +461,29 @@ public final class H2Utils {
 			conn = getConnection();
 			List<P> results = new ArrayList<>(pager.getLimit());
 			String table = getTableNameForAppid(appid);
-			int start = pager.getPage() <= 1 ? 0 : (int) (pager.getPage() - 1) * pager.getLimit();
-			p = conn.prepareStatement("SELECT ROWNUM(), json FROM (SELECT json FROM " + table + ")" +
-					"WHERE ROWNUM() > ? LIMIT ?");
-			p.setInt(1, start);
-			p.setInt(2, pager.getLimit());
+			if (!StringUtils.isBlank(pager.getLastKey())) {
+				// seek past the last row of the previous page using the primary key index
+				p = conn.prepareStatement("SELECT id, json FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?");
+				p.setString(1, pager.getLastKey());
+				p.setInt(2, pager.getLimit());
+			} else if (pager.getPage() > 1) {
+				// page numbers without a last key - fall back to offset paging
+				int start = (int) (pager.getPage() - 1) * pager.getLimit();
+				p = conn.prepareStatement("SELECT id, json FROM " + table + " ORDER BY id LIMIT ? OFFSET ?");
+				p.setInt(1, pager.getLimit());
+				p.setInt(2, start);
+			} else {
+				p = conn.prepareStatement("SELECT id, json FROM " + table + " ORDER BY id LIMIT ?");
+				p.setInt(1, pager.getLimit());
+			}
 			res = p.executeQuery();
 			int i = 0;
 			while (res.next()) {
+				// the last key is the last row read, even if its JSON couldn't be parsed
+				pager.setLastKey(res.getString(1));
 				P obj = ParaObjectUtils.fromJSON(res.getString(2));
 				if (obj != null) {
 					results.add(obj);
-					pager.setLastKey(obj.getId());
 					i++;
 				}
 			}
@@ -462,6 +504,183 @@ public final class H2Utils {
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Finds rows by matching terms against the typed columns of a table. Keys may end with one of
+	 * the operators {@code <, >, <=, >=} which are applied to numeric values.
+	 * @param <P> type of object
+	 * @param appid app id
+	 * @param type the type of object to search for (optional)
+	 * @param terms a map of column names to values
+	 * @param matchAll if true all terms must match (AND), otherwise any term (OR)
+	 * @param pager a {@link Pager}
+	 * @return a list of ParaObjects or null if some of the terms don't refer to a column
+	 */
+	protected static <P extends ParaObject> List<P> findRows(String appid, String type, Map<String, ?> terms,
+			boolean matchAll, Pager pager) {
+		if (StringUtils.isBlank(appid) || terms == null || terms.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<String> conditions = new ArrayList<>(terms.size());
+		List<Object> params = new ArrayList<>(terms.size() + 1);
+		for (Map.Entry<String, ?> term : terms.entrySet()) {
+			if (StringUtils.isBlank(term.getKey()) || term.getValue() == null) {
+				continue;
+			}
+			String column = term.getKey().trim();
+			String operator = "=";
+			Matcher matcher = RANGE_KEY.matcher(column);
+			if (matcher.matches() && term.getValue() instanceof Number) {
+				column = matcher.group(1);
+				operator = matcher.group(2);
+			}
+			if (!COLUMNS.contains(column)) {
+				return null;
+			}
+			conditions.add(column + " " + operator + " ?");
+			params.add(getColumnValue(column, term.getValue()));
+		}
+		if (conditions.isEmpty()) {
+			return Collections.emptyList();
+		}
+		String where = "(" + StringUtils.join(conditions, matchAll ? " AND " : " OR ") + ")";
+		return queryRows(appid, type, where, params, pager);
+	}
+
+	/**
+	 * Finds rows where a column matches any of the given values.
+	 * @param <P> type of object
+	 * @param appid app id
+	 * @param type the type of object to search for (optional)
+	 * @param column the column name
+	 * @param values a list of values
+	 * @param pager a {@link Pager}
+	 * @return a list of ParaObjects or null if the field is not a column
+	 */
+	protected static <P extends ParaObject> List<P> findRowsInList(String appid, String type, String column,
+			List<?> values, Pager pager) {
+		if (StringUtils.isBlank(appid) || StringUtils.isBlank(column) || values == null || values.isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (!COLUMNS.contains(column)) {
+			return null;
+		}
+		List<Object> params = new ArrayList<>(values.size() + 1);
+		for (Object value : values) {
+			params.add(getColumnValue(column, value));
+		}
+		String where = column + " IN (" + StringUtils.repeat("?", ",", params.size()) + ")";
+		return queryRows(appid, type, where, params, pager);
+	}
+
+	/**
+	 * Reads a page of rows matching a condition, sorted by a column and then by id. If the pager contains
+	 * the last key of the previous page, the next page is read with a key seek, otherwise the page number
+	 * is used. The count in the pager is the total number of rows matching the condition.
+	 * @return a list of ParaObjects or null if the rows couldn't be read
+	 */
+	private static <P extends ParaObject> List<P> queryRows(String appid, String type, String where,
+			List<Object> params, Pager pager) {
+		if (pager == null) {
+			pager = new Pager();
+		}
+		if (!StringUtils.isBlank(type)) {
+			where = Config._TYPE + " = ? AND " + where;
+			params.add(0, type);
+		}
+		String sortby = COLUMNS.contains(pager.getSortby()) ? pager.getSortby() : Config._TIMESTAMP;
+		String order = pager.isDesc() ? "DESC NULLS LAST" : "ASC NULLS FIRST";
+		int start = pager.getPage() <= 1 ? 0 : (int) (pager.getPage() - 1) * pager.getLimit();
+		Connection conn = null;
+		PreparedStatement p = null;
+		PreparedStatement c = null;
+		ResultSet res = null;
+		try {
+			conn = getConnection();
+			String table = getTableNameForAppid(appid);
+			createIndexes(conn, table);
+			// the rows are counted without the seek condition and its parameters
+			c = conn.prepareStatement(Utils.formatMessage("SELECT COUNT(*) FROM {0} WHERE {1}", table, where));
+			int i = 1;
+			for (Object param : params) {
+				c.setObject(i++, param);
+			}
+			res = c.executeQuery();
+			if (res.next()) {
+				pager.setCount(res.getLong(1));
+			}
+			closeResultSet(res);
+			String seek = StringUtils.isBlank(pager.getLastKey()) ? null :
+					getSeekCondition(conn, table, sortby, pager.isDesc(), pager.getLastKey(), params);
+			if (seek != null) {
+				where = where + " AND " + seek;
+				start = 0;
+			}
+			p = conn.prepareStatement(Utils.formatMessage("SELECT id, json FROM {0} WHERE {1} "
+					+ "ORDER BY {2} {3}, id {4} LIMIT ? OFFSET ?", table, where, sortby, order,
+					pager.isDesc() ? "DESC" : "ASC"));
+			i = 1;
+			for (Object param : params) {
+				p.setObject(i++, param);
+			}
+			p.setInt(i++, pager.getLimit());
+			p.setInt(i, start);
+			res = p.executeQuery();
+			List<P> results = new ArrayList<>();
+			while (res.next()) {
+				pager.setLastKey(res.getString(1));
+				P obj = ParaObjectUtils.fromJSON(res.getString(2));
+				if (obj != null) {
+					results.add(obj);
+				}
+			}
+			return results;
+		} catch (Exception e) {
+			logger.error(null, e);
+		} finally {
+			closeConnection(conn);
+			closeStatement(p);
+			closeStatement(c);
+			closeResultSet(res);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a condition which matches the rows after the last row of the previous page, in the order
+	 * of the sort column and id, or null if that row no longer exists. Null values come first in
+	 * ascending order and last in descending order.
+	 */
+	private static String getSeekCondition(Connection conn, String table, String sortby, boolean desc,
+			String lastKey, List<Object> params) throws SQLException {
+		try (PreparedStatement s = conn.prepareStatement("SELECT " + sortby + " FROM " + table + " WHERE id = ?")) {
+			s.setString(1, lastKey);
+			try (ResultSet res = s.executeQuery()) {
+				if (!res.next()) {
+					return null;
+				}
+				Object last = res.getObject(1);
+				String op = desc ? "<" : ">";
+				if (last == null) {
+					params.add(lastKey);
+					return desc ? "(" + sortby + " IS NULL AND id < ?)" :
+							"((" + sortby + " IS NULL AND id > ?) OR " + sortby + " IS NOT NULL)";
+				}
+				params.add(last);
+				params.add(last);
+				params.add(lastKey);
+				return "(" + sortby + " " + op + " ? OR (" + sortby + " = ? AND id " + op + " ?)" +
+						(desc ? " OR " + sortby + " IS NULL)" : ")");
+			}
+		}
+	}
+
+	private static Object getColumnValue(String column, Object value) {
+		if (TIME_COLUMNS.contains(column)) {
+			return new Timestamp(NumberUtils.toLong(value.toString(), 0));
+		}
+		return value.toString();
+	}
+
 	private static void closeResultSet(ResultSet res) {
 		if (res != null) {
 			try {
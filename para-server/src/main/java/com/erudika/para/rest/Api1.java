@@ -17,14 +17,17 @@
  */
 package com.erudika.para.rest;
 
+import com.erudika.para.Para;
 import static com.erudika.para.Para.getCustomResourceHandlers;
 import static com.erudika.para.Para.getDAO;
+import static com.erudika.para.Para.getSearch;
 import static com.erudika.para.Para.getVersion;
 import com.erudika.para.core.App;
 import com.erudika.para.core.utils.CoreUtils;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.utils.ParaObjectUtils;
 import com.erudika.para.core.User;
+import com.erudika.para.persistence.DAO;
 import static com.erudika.para.rest.RestUtils.getBatchCreateResponse;
 import static com.erudika.para.rest.RestUtils.getBatchDeleteResponse;
 import static com.erudika.para.rest.RestUtils.getBatchReadResponse;
@@ -40,6 +43,7 @@ import static com.erudika.para.rest.RestUtils.getUpdateResponse;
 import static com.erudika.para.rest.RestUtils.pathParam;
 import static com.erudika.para.rest.RestUtils.queryParam;
 import static com.erudika.para.rest.RestUtils.queryParams;
+import com.erudika.para.search.Search;
 import com.erudika.para.security.SecurityUtils;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.HumanTime;
@@ -130,6 +134,12 @@ public final class Api1 extends ResourceConfig {
 		keysRes.addMethod(POST).produces(JSON).handledBy(keysHandler());
 		registerResources(keysRes.build());
 
+		// rebuild the search index
+		Resource.Builder reindexRes = Resource.builder("_reindex");
+		reindexRes.addMethod(POST).produces(JSON).handledBy(reindexHandler());
+		reindexRes.addMethod(GET).produces(JSON).handledBy(reindexHandler());
+		registerResources(reindexRes.build());
+
 		// user-defined types
 		Resource.Builder typesRes = Resource.builder("_types");
 		typesRes.addMethod(GET).produces(JSON).handledBy(listTypesHandler());
@@ -688,6 +698,47 @@ public final class Api1 extends ResourceConfig {
 		};
 	}
 
+	private Inflector<ContainerRequestContext, Response> reindexHandler() {
+		return new Inflector<ContainerRequestContext, Response>() {
+			public Response apply(ContainerRequestContext ctx) {
+				App app = SecurityUtils.getAuthenticatedApp();
+				if (app != null) {
+					final String appid = app.getAppIdentifier();
+					if (POST.equals(ctx.getMethod())) {
+						if (!isRebuildIndexSupported(getSearch())) {
+							return getStatusResponse(Response.Status.NOT_IMPLEMENTED,
+									"Rebuilding the index is not supported by " + getSearch().getClass().getSimpleName() + ".");
+						}
+						if ("running".equals(getSearch().getRebuildIndexStatus(appid).get("status"))) {
+							return getStatusResponse(Response.Status.CONFLICT, "The index is already being rebuilt.");
+						}
+						// runs in the background - progress is reported by GET /_reindex
+						Para.asyncExecute(new Runnable() {
+							public void run() {
+								getSearch().rebuildIndex(getDAO(), appid);
+							}
+						});
+						return Response.ok(Collections.singletonMap("message", "Rebuilding index...")).build();
+					}
+					return Response.ok(getSearch().getRebuildIndexStatus(appid)).build();
+				}
+				return getStatusResponse(Response.Status.UNAUTHORIZED, "Not an app.");
+			}
+		};
+	}
+
+	/**
+	 * Search implementations which don't override {@link Search#rebuildIndex(com.erudika.para.persistence.DAO,
+	 * java.lang.String, com.erudika.para.utils.Pager...)} can't rebuild their index.
+	 */
+	private static boolean isRebuildIndexSupported(Search search) {
+		try {
+			return !search.getClass().getMethod("rebuildIndex", DAO.class, String.class, Pager[].class).isDefault();
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
 	private Inflector<ContainerRequestContext, Response> setupHandler() {
 		return new Inflector<ContainerRequestContext, Response>() {
 			public Response apply(ContainerRequestContext ctx) {
@@ -818,6 +818,9 @@ public final class RestUtils {
 			items = findTermsQuery(params, pager, appid, type);
 		} else if ("wildcard".equals(queryType)) {
 			items = Para.getSearch().findWildcard(appid, type, params.getFirst("field"), query, pager);
+		} else if ("range".equals(queryType)) {
+			items = Para.getSearch().findRange(appid, type, params.getFirst("field"), params.getFirst("from"),
+					params.getFirst("to"), pager);
 		} else if ("count".equals(queryType)) {
 			pager.setCount(Para.getSearch().getCount(appid, type));
 		} else {
@@ -915,6 +918,9 @@ public final class RestUtils {
 		result.put("items", checkedItems);
 		result.put("page", pager.getPage());
 		result.put("totalHits", pager.getCount());
+		if (pager.getTrackTotalHits() != null) {
+			result.put("totalHitsRelation", pager.isCountExact() ? "eq" : "gte");
+		}
 		if (!StringUtils.isBlank(pager.getLastKey())) {
 			result.put("lastKey", pager.getLastKey());
 		}
@@ -958,6 +964,12 @@ public final class RestUtils {
 		pager.setSortby(paramOrDefault(params, "sort", pager.getSortby()));
 		pager.setDesc(Boolean.parseBoolean(paramOrDefault(params, "desc", "true")));
 		pager.setLastKey(paramOrDefault(params, "lastKey", null));
+		String trackTotalHits = paramOrDefault(params, "trackTotalHits", null);
+		if ("false".equalsIgnoreCase(trackTotalHits)) {
+			pager.setTrackTotalHits(0);
+		} else if (NumberUtils.isDigits(trackTotalHits)) {
+			pager.setTrackTotalHits(NumberUtils.toInt(trackTotalHits, -1));
+		}
 		return pager;
 	}
 
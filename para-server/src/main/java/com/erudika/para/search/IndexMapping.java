@@ -0,0 +1,216 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.search;
+
+import com.erudika.para.core.App;
+import com.erudika.para.utils.Config;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Declares how the fields of an app's objects are indexed. The mapping is stored in the app settings under
+ * {@code "indexMapping"} - a map of object types to maps of field names and mapping specs, e.g.:
+ * <pre>
+ * { "*": { "description": "text" },
+ *   "product": { "price": "double,sortable", "sku": "keyword,sortable", "*": "none" } }
+ * </pre>
+ * A spec is a comma-separated list of a kind - {@code text} (full-text), {@code keyword}, {@code long},
+ * {@code double} (or {@code numeric}), {@code geo} ("lat,lng" values) or {@code none} (not indexed, only kept
+ * in "_source") - and optionally {@code sortable}. A spec without a kind keeps the default kind of the field,
+ * a spec without {@code sortable} means the field can't be sorted on. The type {@code "*"} applies to all types
+ * and the field {@code "*"} applies to all other fields of a type, except the core fields of {@code ParaObject}.
+ * Explicitly mapped fields take precedence over wildcards. Nested objects can be left out as a whole by mapping
+ * them to {@code none} explicitly.
+ * Fields without a mapping are indexed as before - analyzed or not, depending on the field, and sortable.
+ * <br>
+ * The fields "id", "type" and "appid" are always indexed. Changing the mapping doesn't affect objects which
+ * are already indexed - the index has to be rebuilt for that.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class IndexMapping {
+
+	/**
+	 * The name of the app setting which holds the mapping.
+	 */
+	static final String SETTING = "indexMapping";
+
+	/**
+	 * The default mapping - all fields are indexed and sortable.
+	 */
+	static final IndexMapping DEFAULT = new IndexMapping(Collections.emptyMap());
+
+	private static final String ANY = "*";
+	private static final Set<String> RESERVED_FIELDS = new HashSet<>(Arrays.asList(Config._ID, Config._TYPE,
+			Config._APPID));
+	private static final Set<String> CORE_FIELDS = new HashSet<>(Arrays.asList(Config._ID, Config._TYPE,
+			Config._APPID, Config._PARENTID, Config._CREATORID, Config._TIMESTAMP, Config._UPDATED, Config._NAME,
+			Config._TAGS));
+
+	/**
+	 * How a field is indexed.
+	 */
+	enum Kind {
+		TEXT, KEYWORD, LONG, DOUBLE, GEO, NONE
+	}
+
+	private final Map<String, Map<String, FieldMapping>> types;
+
+	private IndexMapping(Map<String, Map<String, FieldMapping>> types) {
+		this.types = types;
+	}
+
+	/**
+	 * Reads the mapping from the settings of an app. Invalid specs are ignored.
+	 * @param app an app
+	 * @return the mapping of the app or {@link #DEFAULT}
+	 */
+	static IndexMapping fromApp(App app) {
+		Object setting = (app == null) ? null : app.getSetting(SETTING);
+		if (!(setting instanceof Map) || ((Map<?, ?>) setting).isEmpty()) {
+			return DEFAULT;
+		}
+		Map<String, Map<String, FieldMapping>> types = new HashMap<>();
+		for (Map.Entry<?, ?> type : ((Map<?, ?>) setting).entrySet()) {
+			if (type.getKey() == null || !(type.getValue() instanceof Map)) {
+				continue;
+			}
+			Map<String, FieldMapping> fields = new HashMap<>();
+			for (Map.Entry<?, ?> field : ((Map<?, ?>) type.getValue()).entrySet()) {
+				String name = (field.getKey() == null) ? null : field.getKey().toString();
+				FieldMapping mapping = (field.getValue() == null) ? null : FieldMapping.parse(field.getValue().toString());
+				if (!StringUtils.isBlank(name) && mapping != null && !RESERVED_FIELDS.contains(name)) {
+					fields.put(name, mapping);
+				}
+			}
+			if (!fields.isEmpty()) {
+				types.put(type.getKey().toString(), fields);
+			}
+		}
+		return types.isEmpty() ? DEFAULT : new IndexMapping(types);
+	}
+
+	/**
+	 * Returns the mapping of a field.
+	 * @param type the type of the object or null for the mapping which applies to all types
+	 * @param field the field name, nested fields are separated by dots
+	 * @return the mapping or null if the field should be indexed as it is by default
+	 */
+	FieldMapping get(String type, String field) {
+		return get(type, field, true);
+	}
+
+	/**
+	 * Returns the mapping of an object field, which can be used to leave out a whole object.
+	 * Wildcards only apply to the fields of the object, not to the object itself.
+	 * @param type the type of the object or null for the mapping which applies to all types
+	 * @param field the field name, nested fields are separated by dots
+	 * @return the mapping or null if the field isn't mapped explicitly
+	 */
+	FieldMapping getObjectMapping(String type, String field) {
+		return get(type, field, false);
+	}
+
+	private FieldMapping get(String type, String field, boolean wildcards) {
+		if (types.isEmpty() || field == null || RESERVED_FIELDS.contains(field)) {
+			return null;
+		}
+		Map<String, FieldMapping> typeFields = (type == null || ANY.equals(type)) ? null : types.get(type);
+		Map<String, FieldMapping> anyFields = types.get(ANY);
+		// explicit mappings first, then the wildcards
+		FieldMapping mapping = get(typeFields, field);
+		if (mapping == null) {
+			mapping = get(anyFields, field);
+		}
+		if (mapping == null && wildcards && !CORE_FIELDS.contains(field)) {
+			mapping = get(typeFields, ANY);
+			if (mapping == null) {
+				mapping = get(anyFields, ANY);
+			}
+		}
+		return mapping;
+	}
+
+	private static FieldMapping get(Map<String, FieldMapping> fields, String field) {
+		return (fields == null) ? null : fields.get(field);
+	}
+
+	/**
+	 * The kind of a field and whether it can be sorted on.
+	 */
+	static final class FieldMapping {
+		private final Kind kind;
+		private final boolean sortable;
+
+		FieldMapping(Kind kind, boolean sortable) {
+			this.kind = kind;
+			this.sortable = sortable;
+		}
+
+		/**
+		 * @return the kind of the field or null for the default kind
+		 */
+		Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return true if the field has doc values
+		 */
+		boolean isSortable() {
+			return sortable && kind != Kind.NONE && kind != Kind.GEO;
+		}
+
+		/**
+		 * @return true if the field is indexed as a number
+		 */
+		boolean isNumeric() {
+			return kind == Kind.LONG || kind == Kind.DOUBLE;
+		}
+
+		/**
+		 * Parses a spec like "keyword,sortable".
+		 * @param spec spec
+		 * @return a mapping or null if the spec is invalid
+		 */
+		static FieldMapping parse(String spec) {
+			Kind kind = null;
+			boolean sortable = false;
+			for (String token : StringUtils.split(StringUtils.trimToEmpty(spec).toLowerCase(), ", ")) {
+				if ("sortable".equals(token)) {
+					sortable = true;
+				} else if (kind != null) {
+					return null;
+				} else if ("numeric".equals(token)) {
+					kind = Kind.DOUBLE;
+				} else {
+					try {
+						kind = Kind.valueOf(token.toUpperCase());
+					} catch (IllegalArgumentException e) {
+						return null;
+					}
+				}
+			}
+			return (kind == null && !sortable) ? null : new FieldMapping(kind, sortable);
+		}
+	}
+}
@@ -18,6 +18,7 @@
 package com.erudika.para.search;
 
 import com.erudika.para.AppDeletedListener;
+import com.erudika.para.IOListener;
 import com.erudika.para.Para;
 import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
@@ -25,6 +26,7 @@ import com.erudika.para.core.Tag;
 import com.erudika.para.core.utils.ParaObjectUtils;
 import com.erudika.para.persistence.DAO;
 import static com.erudika.para.search.LuceneUtils.count;
+import static com.erudika.para.search.LuceneUtils.getRangeQuery;
 import static com.erudika.para.search.LuceneUtils.getTermsQuery;
 import static com.erudika.para.search.LuceneUtils.indexDocuments;
 import static com.erudika.para.search.LuceneUtils.paraObjectToDocument;
@@ -33,6 +35,7 @@ import static com.erudika.para.search.LuceneUtils.unindexDocuments;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Pager;
 import com.erudika.para.utils.Utils;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -85,6 +88,27 @@ public class LuceneSearch implements Search {
 			public void onAppDeleted(App app) {
 				if (app != null) {
 					LuceneUtils.deleteIndex(app.getAppIdentifier());
+					LuceneUtils.invalidateIndexMapping(app.getAppIdentifier());
+				}
+			}
+		});
+		// the index mapping is part of the app settings - pick up changes to it right away
+		Para.addIOListener(new IOListener() {
+			public void onPreInvoke(Method method, Object[] args) { }
+			public void onPostInvoke(Method method, Object[] args, Object result) {
+				if (method == null || args == null || method.getName().startsWith("read")) {
+					return;
+				}
+				for (Object arg : args) {
+					if (arg instanceof App) {
+						LuceneUtils.invalidateIndexMapping(((App) arg).getAppIdentifier());
+					} else if (arg instanceof List) {
+						for (Object obj : (List<?>) arg) {
+							if (obj instanceof App) {
+								LuceneUtils.invalidateIndexMapping(((App) obj).getAppIdentifier());
+							}
+						}
+					}
 				}
 			}
 		});
@@ -95,8 +119,8 @@ public class LuceneSearch implements Search {
 		if (po == null || StringUtils.isBlank(appid)) {
 			return;
 		}
-		Map<String, Object> data = ParaObjectUtils.getAnnotatedFields(po, null, false);
-		indexDocuments(appid, Collections.singletonList(paraObjectToDocument(appid, data)));
+		indexDocuments(appid, Collections.singletonList(paraObjectToDocument(appid,
+				ParaObjectUtils.getAnnotatedFieldsAsTree(po))));
 	}
 
 	@Override
@@ -114,9 +138,8 @@ public class LuceneSearch implements Search {
 		}
 		ArrayList<Document> docs = new ArrayList<>(objects.size());
 		for (P po : objects) {
-			Map<String, Object> data = ParaObjectUtils.getAnnotatedFields(po, null, false);
-			if (!data.isEmpty()) {
-				docs.add(paraObjectToDocument(appid, data));
+			if (po != null) {
+				docs.add(paraObjectToDocument(appid, ParaObjectUtils.getAnnotatedFieldsAsTree(po)));
 			}
 		}
 		indexDocuments(appid, docs);
@@ -141,7 +164,7 @@ public class LuceneSearch implements Search {
 		if (StringUtils.isBlank(appid)) {
 			return;
 		}
-		Query q = (terms == null || terms.isEmpty()) ? new MatchAllDocsQuery() : getTermsQuery(terms, matchAll);
+		Query q = (terms == null || terms.isEmpty()) ? new MatchAllDocsQuery() : getTermsQuery(appid, null, terms, matchAll);
 		unindexDocuments(appid, q);
 	}
 
@@ -278,7 +301,7 @@ public class LuceneSearch implements Search {
 		if (terms == null || terms.isEmpty()) {
 			return Collections.emptyList();
 		}
-		Query query = getTermsQuery(terms, mustMatchAll);
+		Query query = getTermsQuery(appid, type, terms, mustMatchAll);
 
 		if (query == null) {
 			return Collections.emptyList();
@@ -297,6 +320,15 @@ public class LuceneSearch implements Search {
 		return searchQuery(dao, appid, type, query, pager);
 	}
 
+	@Override
+	public <P extends ParaObject> List<P> findRange(String appid, String type, String field, String from, String to,
+			Pager... pager) {
+		if (StringUtils.isBlank(field) || (StringUtils.isBlank(from) && StringUtils.isBlank(to))) {
+			return Collections.emptyList();
+		}
+		return searchQuery(dao, appid, type, getRangeQuery(appid, type, field, from, to), pager);
+	}
+
 	@Override
 	public Long getCount(String appid, String type) {
 		if (StringUtils.isBlank(appid)) {
@@ -316,7 +348,7 @@ public class LuceneSearch implements Search {
 		if (StringUtils.isBlank(appid) || terms == null || terms.isEmpty()) {
 			return 0L;
 		}
-		Query query = getTermsQuery(terms, true);
+		Query query = getTermsQuery(appid, type, terms, true);
 		if (query != null && !StringUtils.isBlank(type)) {
 			query = new BooleanQuery.Builder().
 					add(query, BooleanClause.Occur.MUST).
@@ -326,6 +358,16 @@ public class LuceneSearch implements Search {
 		return (long) count(appid, query);
 	}
 
+	@Override
+	public boolean rebuildIndex(DAO dao, String appid, Pager... pager) {
+		return LuceneUtils.rebuildIndex(dao, appid, pager);
+	}
+
+	@Override
+	public Map<String, Object> getRebuildIndexStatus(String appid) {
+		return LuceneUtils.getRebuildIndexStatus(appid);
+	}
+
 	@Override
 	public void flush() {
 		throw new UnsupportedOperationException("Not implemented.");
@@ -428,6 +470,12 @@ public class LuceneSearch implements Search {
 		return findWildcard(Config.getRootAppIdentifier(), type, field, wildcard, pager);
 	}
 
+	@Override
+	public <P extends ParaObject> List<P> findRange(String type, String field, String from, String to,
+			Pager... pager) {
+		return findRange(Config.getRootAppIdentifier(), type, field, from, to, pager);
+	}
+
 	@Override
 	public Long getCount(String type) {
 		return getCount(Config.getRootAppIdentifier(), type);
@@ -20,6 +20,7 @@ package com.erudika.para.search;
 import com.erudika.para.DestroyListener;
 import com.erudika.para.Para;
 import com.erudika.para.core.Address;
+import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.utils.ParaObjectUtils;
 import com.erudika.para.persistence.DAO;
@@ -28,24 +29,42 @@ import com.erudika.para.utils.Pager;
 import com.erudika.para.utils.Utils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.lucene.analysis.Analyzer;
@@ -79,29 +98,46 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.sv.SwedishAnalyzer;
 import org.apache.lucene.analysis.tr.TurkishAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.LatLonPoint;
+import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BooleanQuery.Builder;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EarlyTerminatingSortingCollector;
 import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
+import static org.apache.lucene.search.SortField.Type.DOUBLE;
 import static org.apache.lucene.search.SortField.Type.LONG;
 import static org.apache.lucene.search.SortField.Type.STRING;
 import org.apache.lucene.search.SortedNumericSortField;
@@ -109,8 +145,11 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NumericUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -124,16 +163,35 @@ public final class LuceneUtils {
 	private static final String SOURCE_FIELD_NAME = "_source";
 	private static final String DOC_ID_FIELD_NAME = "_docid";
 	private static final String NESTED_FIELD_NAME = "nstd";
+	private static final String INDEX_ORDER = "_doc";
+	// the default sort order - newest first
+	private static final Sort INDEX_SORT = new Sort(new SortedNumericSortField(Config._TIMESTAMP, LONG, true),
+			new SortedNumericSortField(DOC_ID_FIELD_NAME, LONG, true));
 	private static final FieldType ID_FIELD;
 	private static final FieldType DOC_ID_FIELD;
 	private static final FieldType SOURCE_FIELD;
 	private static final FieldType DEFAULT_FIELD;
 	private static final FieldType DEFAULT_NOT_ANALYZED_FIELD;
 	private static final Set<String> NOT_ANALYZED_FIELDS;
+	private static final Set<String> NUMERIC_FIELDS;
+	private static final IndexMapping.FieldMapping NUMERIC_FIELD = new IndexMapping.FieldMapping(IndexMapping.Kind.LONG, true);
 	private static final CharArraySet STOPWORDS;
 	private static final String[] IGNORED_FIELDS;
 
 	private static final Map<String, IndexWriter> WRITERS = new ConcurrentHashMap<String, IndexWriter>();
+	private static final Map<String, SearcherManager> SEARCHERS = new ConcurrentHashMap<String, SearcherManager>();
+	private static final Map<String, Long> STALE_SINCE = new ConcurrentHashMap<String, Long>();
+	private static final Map<String, AtomicInteger> UNCOMMITTED = new ConcurrentHashMap<String, AtomicInteger>();
+	private static final Map<String, RebuildProgress> REBUILDS = new ConcurrentHashMap<String, RebuildProgress>();
+	private static final Map<String, Map<String, DocValuesType>> DOC_VALUES_TYPES =
+			new ConcurrentHashMap<String, Map<String, DocValuesType>>();
+	private static final AtomicLong SEARCHER_GENERATION = new AtomicLong();
+	private static final Cache<String, IndexMapping> MAPPINGS = Caffeine.newBuilder().
+			expireAfterWrite(Config.getConfigInt("lucene.mapping_cache_seconds", 60), TimeUnit.SECONDS).build();
+	private static final SearchResultCache RESULTS =
+			new SearchResultCache(Config.getConfigInt("lucene.result_cache_mb", 32) * 1024L * 1024L);
+	private static ScheduledFuture<?> refreshTask;
+	private static ScheduledFuture<?> commitTask;
 
 	/**
 	 * Default analyzer.
@@ -227,6 +285,12 @@ public final class LuceneUtils {
 		NOT_ANALYZED_FIELDS.add("identifier");
 		NOT_ANALYZED_FIELDS.add("token");
 
+		// core fields which are indexed as numbers - points for range queries and numeric doc values for sorting
+		NUMERIC_FIELDS = new HashSet<>();
+		NUMERIC_FIELDS.add(Config._TIMESTAMP);
+		NUMERIC_FIELDS.add(Config._UPDATED);
+		NUMERIC_FIELDS.add("votes");
+
 		// these fields are not indexed
 		IGNORED_FIELDS = new String[]{"validationConstraints", "resourcePermissions"};
 	}
@@ -242,20 +306,16 @@ public final class LuceneUtils {
 		if (docs.isEmpty()) {
 			return;
 		}
-		IndexWriter iwriter = null;
-		try {
-			iwriter = getIndexWriter(appid);
-			if (iwriter != null) {
-				for (Document doc : docs) {
-					if (doc.get(Config._ID) != null) {
-						iwriter.updateDocument(new Term(Config._ID, doc.get(Config._ID)), doc);
-					}
+		write(appid, (IndexWriter iwriter) -> {
+			for (Document doc : docs) {
+				if (doc.get(Config._ID) != null) {
+					iwriter.updateDocument(new Term(Config._ID, doc.get(Config._ID)), doc);
 				}
-				iwriter.commit();
 			}
-		} catch (Exception ex) {
-			logger.error(null, ex);
-		}
+			commit(appid, iwriter, docs.size());
+		}, (IndexWriter iwriter, IndexMapping mapping, Map<String, DocValuesType> docValuesTypes) -> {
+			replayDocuments(iwriter, docs, mapping, docValuesTypes);
+		});
 	}
 
 	/**
@@ -267,22 +327,19 @@ public final class LuceneUtils {
 		if (ids.isEmpty()) {
 			return;
 		}
-		IndexWriter iwriter = null;
-		try {
-			iwriter = getIndexWriter(appid);
-			if (iwriter != null) {
-				ArrayList<Term> keys = new ArrayList<>();
-				for (String id : ids) {
-					if (id != null) {
-						keys.add(new Term(Config._ID, id));
-					}
-				}
-				iwriter.deleteDocuments(keys.toArray(new Term[0]));
-				iwriter.commit();
+		ArrayList<Term> keys = new ArrayList<>();
+		for (String id : ids) {
+			if (id != null) {
+				keys.add(new Term(Config._ID, id));
 			}
-		} catch (Exception ex) {
-			logger.error(null, ex);
 		}
+		Term[] terms = keys.toArray(new Term[0]);
+		write(appid, (IndexWriter iwriter) -> {
+			iwriter.deleteDocuments(terms);
+			commit(appid, iwriter, terms.length);
+		}, (IndexWriter iwriter, IndexMapping mapping, Map<String, DocValuesType> docValuesTypes) -> {
+			iwriter.deleteDocuments(terms);
+		});
 	}
 
 	/**
@@ -294,16 +351,12 @@ public final class LuceneUtils {
 		if (query == null) {
 			return;
 		}
-		IndexWriter iwriter = null;
-		try {
-			iwriter = getIndexWriter(appid);
-			if (iwriter != null) {
-				iwriter.deleteDocuments(query);
-				iwriter.commit();
-			}
-		} catch (Exception ex) {
-			logger.error(null, ex);
-		}
+		write(appid, (IndexWriter iwriter) -> {
+			iwriter.deleteDocuments(query);
+			commit(appid, iwriter, 1);
+		}, (IndexWriter iwriter, IndexMapping mapping, Map<String, DocValuesType> docValuesTypes) -> {
+			iwriter.deleteDocuments(query);
+		});
 	}
 
 	/**
@@ -311,20 +364,70 @@ public final class LuceneUtils {
 	 * @param appid appid
 	 */
 	public static void deleteIndex(String appid) {
-		IndexWriter iwriter = null;
+		write(appid, (IndexWriter iwriter) -> {
+			iwriter.deleteAll();
+			commit(appid, iwriter, 1);
+		}, (IndexWriter iwriter, IndexMapping mapping, Map<String, DocValuesType> docValuesTypes) -> {
+			iwriter.deleteAll();
+		});
+	}
+
+	/**
+	 * Writes to the index of an app. While the index is being rebuilt, the write is also logged and replayed
+	 * on the new index before it replaces the current one - the rebuild might have already read the objects
+	 * which were changed, so their changes would otherwise be lost.
+	 * @param appid appid
+	 * @param liveWrite writes to the current index
+	 * @param rebuildWrite writes the same changes to the new index
+	 */
+	private static void write(String appid, IndexWrite liveWrite, RebuildWrite rebuildWrite) {
 		try {
-			iwriter = getIndexWriter(appid);
-			if (iwriter != null) {
-				iwriter.deleteAll();
-				iwriter.commit();
+			RebuildProgress rebuild = StringUtils.isBlank(appid) ? null : REBUILDS.get(appid.trim());
+			if (rebuild != null && rebuild.isRunning()) {
+				// the new index can't replace the current one while a write is in progress
+				synchronized (rebuild) {
+					IndexWriter iwriter = getIndexWriter(appid);
+					if (iwriter != null) {
+						liveWrite.write(iwriter);
+						rebuild.log(rebuildWrite);
+					}
+				}
+			} else {
+				IndexWriter iwriter = getIndexWriter(appid);
+				if (iwriter != null) {
+					liveWrite.write(iwriter);
+				}
 			}
 		} catch (Exception ex) {
 			logger.error(null, ex);
 		}
 	}
 
+	private static void replayDocuments(IndexWriter iwriter, List<Document> docs, IndexMapping mapping,
+			Map<String, DocValuesType> docValuesTypes) throws IOException {
+		for (Document doc : docs) {
+			String id = doc.get(Config._ID);
+			if (id == null) {
+				continue;
+			}
+			// documents are converted again so that they follow the mapping of the new index, except for
+			// nested documents - their source is the source of their parent
+			Document newDoc = doc;
+			String json = doc.get(SOURCE_FIELD_NAME);
+			JsonNode source = (json == null) ? null : ParaObjectUtils.getJsonMapper().readTree(json);
+			if (source != null && id.equals(source.path(Config._ID).asText())) {
+				newDoc = paraObjectToDocument(source, mapping, docValuesTypes, new LinkedList<>());
+			}
+			iwriter.updateDocument(new Term(Config._ID, id), newDoc);
+		}
+	}
+
 	/**
 	 * Rebuilds an index. Reads objects from the data store and indexes them. Works on one DB table and index only.
+	 * Pages of objects are read from the DAO on the calling thread, converted to documents by a pool of
+	 * "lucene.reindex_threads" workers and written to a new index which replaces the current one when done.
+	 * Changes made to the current index during the rebuild are replayed on the new index before that.
+	 * The current index is left intact if the rebuild fails.
 	 *
 	 * @param dao DAO for connecting to the DB - the primary data source
 	 * @param appid the index name (alias)
@@ -335,39 +438,253 @@ public final class LuceneUtils {
 		if (StringUtils.isBlank(appid) || dao == null) {
 			return false;
 		}
+		String indexName = appid.trim();
+		RebuildProgress progress = new RebuildProgress(count(indexName, new MatchAllDocsQuery()));
+		synchronized (REBUILDS) {
+			RebuildProgress running = REBUILDS.get(indexName);
+			if (running != null && running.isRunning()) {
+				logger.warn("rebuildIndex(): Index '{}' is already being rebuilt.", indexName);
+				return false;
+			}
+			REBUILDS.put(indexName, progress);
+		}
+		Path newIndexPath = getIndexPath(indexName).resolveSibling(getIndexName(indexName) + "-rebuild");
+		int threads = Math.max(1, Config.getConfigInt("lucene.reindex_threads",
+				Runtime.getRuntime().availableProcessors()));
+		ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+		boolean success = false;
 		try {
-			String indexName = appid.trim();
-			logger.info("Deleting '{}' index before rebuilding it...", indexName);
-			deleteIndex(indexName);
-			logger.debug("rebuildIndex(): {}", indexName);
-			int count = 0;
-			Pager p = getPager(pager);
-			p.setLimit(100);
-
-			List<ParaObject> list;
-			do {
-				list = dao.readPage(appid, p); // use appid!
-				ArrayList<Document> docs = new ArrayList<Document>(list.size());
-				logger.debug("rebuildIndex(): Read {} objects from table {}.", list.size(), indexName);
-				for (ParaObject obj : list) {
+			FileUtils.deleteDirectory(newIndexPath.toFile());
+			IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+			config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+			config.setRAMBufferSizeMB(Config.getConfigDouble("lucene.reindex_ram_buffer_mb", 256));
+			FSDirectory newIndexDir = FSDirectory.open(newIndexPath);
+			config.setIndexSort(getIndexSort(newIndexDir));
+			IndexWriter newIndexWriter = null;
+			try {
+				newIndexWriter = new IndexWriter(newIndexDir, config);
+				logger.info("rebuildIndex(): Rebuilding index '{}' using {} threads...", indexName, threads);
+				// the mapping might have just been changed, read it again
+				IndexMapping mapping = IndexMapping.fromApp(readApp(dao, indexName));
+				MAPPINGS.put(indexName, mapping);
+				Map<String, DocValuesType> docValuesTypes = newDocValuesTypes(config.getIndexSort());
+				Pager p = getPager(pager);
+				p.setLimit(Config.getConfigInt("lucene.reindex_batch_size", 1000));
+				List<ParaObject> list;
+				do {
+					list = dao.readPage(appid, p); // use appid!
+					logger.debug("rebuildIndex(): Read {} objects from table {}.", list.size(), indexName);
+					if (!list.isEmpty()) {
+						workers.execute(new DocumentBuilderTask(list, newIndexWriter, mapping, docValuesTypes, progress));
+					}
+				} while (!list.isEmpty() && progress.getError() == null);
+				workers.shutdown();
+				workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				if (progress.getError() != null) {
+					throw progress.getError();
+				}
+				// writes to the current index are blocked until it is replaced
+				synchronized (progress) {
+					List<RebuildWrite> writes = progress.closeLog();
+					logger.debug("rebuildIndex(): Replaying {} writes made during the rebuild.", writes.size());
+					for (RebuildWrite write : writes) {
+						write.write(newIndexWriter, mapping, docValuesTypes);
+					}
+					newIndexWriter.commit();
+					newIndexWriter.close();
+					newIndexDir.close();
+					replaceIndex(indexName, newIndexPath);
+				}
+			} finally {
+				IOUtils.closeWhileHandlingException(newIndexWriter, newIndexDir);
+			}
+			logger.info("rebuildIndex(): Done. {} objects reindexed.", progress.getCount());
+			success = true;
+		} catch (Throwable e) {
+			logger.warn(null, e);
+			workers.shutdownNow();
+			FileUtils.deleteQuietly(newIndexPath.toFile());
+		} finally {
+			progress.finish(success);
+		}
+		return success;
+	}
+
+	/**
+	 * Returns the progress of the last index rebuild for a given app.
+	 * @param appid appid
+	 * @return a map of status information or an empty map if the index was never rebuilt
+	 */
+	public static Map<String, Object> getRebuildIndexStatus(String appid) {
+		RebuildProgress progress = StringUtils.isBlank(appid) ? null : REBUILDS.get(appid.trim());
+		return progress == null ? Collections.<String, Object>emptyMap() : progress.toMap();
+	}
+
+	private static void replaceIndex(String appid, Path newIndexPath) throws IOException {
+		synchronized (WRITERS) {
+			synchronized (SEARCHERS) {
+				// searchers in use keep their files open until released
+				SearcherManager manager = SEARCHERS.remove(appid);
+				if (manager != null) {
+					manager.close();
+				}
+				IndexWriter iwriter = WRITERS.remove(appid);
+				if (iwriter != null) {
+					iwriter.close();
+					iwriter.getDirectory().close();
+				}
+				STALE_SINCE.remove(appid);
+				UNCOMMITTED.remove(appid);
+				DOC_VALUES_TYPES.remove(appid);
+				Path indexPath = getIndexPath(appid);
+				Path oldIndexPath = indexPath.resolveSibling(getIndexName(appid) + "-old");
+				FileUtils.deleteDirectory(oldIndexPath.toFile());
+				if (Files.exists(indexPath)) {
+					Files.move(indexPath, oldIndexPath, StandardCopyOption.ATOMIC_MOVE);
+				}
+				Files.move(newIndexPath, indexPath, StandardCopyOption.ATOMIC_MOVE);
+				FileUtils.deleteQuietly(oldIndexPath.toFile());
+			}
+		}
+	}
+
+	/**
+	 * A write to the current index.
+	 */
+	private interface IndexWrite {
+		void write(IndexWriter iwriter) throws IOException;
+	}
+
+	/**
+	 * A write to an index which is being rebuilt.
+	 */
+	private interface RebuildWrite {
+		void write(IndexWriter iwriter, IndexMapping mapping, Map<String, DocValuesType> docValuesTypes)
+				throws IOException;
+	}
+
+	/**
+	 * Converts a page of objects to documents and adds them to an index.
+	 */
+	private static final class DocumentBuilderTask implements Runnable {
+
+		private final List<ParaObject> objects;
+		private final IndexWriter iwriter;
+		private final IndexMapping mapping;
+		private final Map<String, DocValuesType> docValuesTypes;
+		private final RebuildProgress progress;
+
+		DocumentBuilderTask(List<ParaObject> objects, IndexWriter iwriter, IndexMapping mapping,
+				Map<String, DocValuesType> docValuesTypes, RebuildProgress progress) {
+			this.objects = objects;
+			this.iwriter = iwriter;
+			this.mapping = mapping;
+			this.docValuesTypes = docValuesTypes;
+			this.progress = progress;
+		}
+
+		public void run() {
+			if (progress.getError() != null) {
+				return;
+			}
+			try {
+				List<Document> docs = new ArrayList<Document>(objects.size());
+				int count = 0;
+				for (ParaObject obj : objects) {
 					if (obj != null) {
-						// put objects from DB into the newly created index
-						Map<String, Object> data = ParaObjectUtils.getAnnotatedFields(obj, null, false);
-						docs.add(paraObjectToDocument(indexName, data));
+						docs.add(paraObjectToDocument(ParaObjectUtils.getAnnotatedFieldsAsTree(obj), mapping,
+								docValuesTypes, docs));
 						count++;
 					}
 				}
-				indexDocuments(indexName, docs);
-			} while (!list.isEmpty());
-			logger.info("rebuildIndex(): Done. {} objects reindexed.", count);
-		} catch (Exception e) {
-			logger.warn(null, e);
-			return false;
+				iwriter.addDocuments(docs);
+				progress.addCount(count);
+			} catch (Throwable e) {
+				progress.setError(e);
+			}
+		}
+	}
+
+	/**
+	 * Keeps track of the progress of an index rebuild.
+	 */
+	private static final class RebuildProgress {
+
+		private final long startedAt = System.currentTimeMillis();
+		private final long estimatedTotal;
+		private final AtomicLong count = new AtomicLong();
+		private volatile long finishedAt;
+		private volatile boolean success;
+		private volatile Throwable error;
+		private List<RebuildWrite> writes = new ArrayList<>();
+
+		RebuildProgress(long estimatedTotal) {
+			this.estimatedTotal = estimatedTotal;
+		}
+
+		boolean isRunning() {
+			return finishedAt == 0;
+		}
+
+		long getCount() {
+			return count.get();
+		}
+
+		void addCount(long delta) {
+			count.addAndGet(delta);
+		}
+
+		Throwable getError() {
+			return error;
+		}
+
+		void setError(Throwable error) {
+			this.error = error;
+		}
+
+		void finish(boolean success) {
+			this.success = success;
+			this.finishedAt = System.currentTimeMillis();
+			closeLog();
+		}
+
+		synchronized void log(RebuildWrite write) {
+			if (writes != null) {
+				writes.add(write);
+			}
+		}
+
+		synchronized List<RebuildWrite> closeLog() {
+			List<RebuildWrite> logged = (writes == null) ? Collections.<RebuildWrite>emptyList() : writes;
+			writes = null;
+			return logged;
+		}
+
+		Map<String, Object> toMap() {
+			long done = count.get();
+			long end = isRunning() ? System.currentTimeMillis() : finishedAt;
+			double seconds = Math.max(1L, end - startedAt) / 1000.0;
+			double perSecond = done / seconds;
+			Map<String, Object> status = new LinkedHashMap<>();
+			status.put("status", isRunning() ? "running" : (success ? "done" : "failed"));
+			status.put("startedAt", startedAt);
+			status.put("finishedAt", isRunning() ? null : finishedAt);
+			status.put("objectsReindexed", done);
+			status.put("estimatedTotal", estimatedTotal);
+			status.put("objectsPerSecond", Math.round(perSecond));
+			if (isRunning() && perSecond > 0 && estimatedTotal > done) {
+				status.put("etaSeconds", Math.round((estimatedTotal - done) / perSecond));
+			}
+			if (error != null) {
+				status.put("error", error.getMessage());
+			}
+			return status;
 		}
-		return true;
 	}
 
-	private static void addDocumentFields(JsonNode object, Document doc, String prefix) {
+	private static void addDocumentFields(JsonNode object, Document doc, String prefix, IndexMapping mapping,
+			String type, Map<String, DocValuesType> docValuesTypes) {
 		try {
 			for (Iterator<Map.Entry<String, JsonNode>> iterator = object.fields(); iterator.hasNext();) {
 				Map.Entry<String, JsonNode> entry = iterator.next();
@@ -377,13 +694,21 @@ public final class LuceneUtils {
 				if (StringUtils.equalsAny(field, IGNORED_FIELDS)) {
 					continue;
 				}
+				IndexMapping.FieldMapping fieldMapping = (value != null && value.isObject()) ?
+						mapping.getObjectMapping(type, field) : mapping.get(type, field);
+				if (fieldMapping == null && NUMERIC_FIELDS.contains(field)) {
+					fieldMapping = NUMERIC_FIELD;
+				} else if (fieldMapping != null && fieldMapping.getKind() == IndexMapping.Kind.NONE) {
+					continue;
+				}
 				if (value != null) {
 					switch (value.getNodeType()) {
 						case OBJECT:
-							addDocumentFields(value, doc, pre + field);
+							addDocumentFields(value, doc, pre + field, mapping, type, docValuesTypes);
 							break;
 						case ARRAY:
 							StringBuilder sb = new StringBuilder();
+							boolean sortable = false;
 							for (Iterator<JsonNode> iterator1 = value.elements(); iterator1.hasNext();) {
 								String val = iterator1.next().asText();
 								if (!StringUtils.isBlank(val)) {
@@ -391,20 +716,16 @@ public final class LuceneUtils {
 										sb.append(",");
 									}
 									sb.append(val);
-									doc.add(getField(field, val));
+									// numeric values are sortable one by one, other values are joined
+									sortable = addField(doc, field, val, fieldMapping, docValuesTypes, false);
 								}
 							}
-							if (sb.length() > 0) {
+							if (sb.length() > 0 && sortable) {
 								doc.add(new SortedDocValuesField(field, new BytesRef(sb.toString())));
 							}
 							break;
 						default:
-							String val = value.asText("null");
-							Field f = getField(field, val);
-							if (!(f instanceof LatLonPoint)) {
-								doc.add(new SortedDocValuesField(field, new BytesRef(val)));
-							}
-							doc.add(f);
+							addField(doc, field, value.asText("null"), fieldMapping, docValuesTypes, true);
 							break;
 					}
 				}
@@ -414,18 +735,200 @@ public final class LuceneUtils {
 		}
 	}
 
-	private static Field getField(String field, String value) {
-		if ("latlng".equals(field) && StringUtils.contains(value, ",")) {
+	/**
+	 * Adds a field to a document, as declared by its mapping.
+	 * @param doc document
+	 * @param field field name
+	 * @param value field value
+	 * @param mapping the mapping of the field or null for the default
+	 * @param docValuesTypes the types of doc values of the fields in the index, which can't be changed
+	 * @param single if false, the value is one of many and string doc values are left to the caller
+	 * @return true if the caller should add string doc values for the field
+	 */
+	private static boolean addField(Document doc, String field, String value, IndexMapping.FieldMapping mapping,
+			Map<String, DocValuesType> docValuesTypes, boolean single) {
+		IndexMapping.Kind kind = (mapping == null) ? null : mapping.getKind();
+		boolean numeric = (mapping != null) && mapping.isNumeric();
+		if (mapping == NUMERIC_FIELD && docValuesTypes.get(field) == DocValuesType.SORTED) {
+			// a core field which was indexed as a string before - it stays that way until the index is rebuilt
+			mapping = null;
+			kind = null;
+			numeric = false;
+		}
+		// a field which already has doc values of another type (e.g. mapped differently for another type) can't
+		// be sorted on
+		boolean sortable = (mapping == null || mapping.isSortable()) && claimDocValues(docValuesTypes, field,
+				numeric ? DocValuesType.SORTED_NUMERIC : DocValuesType.SORTED);
+		if (!numeric && Config._TIMESTAMP.equals(field) && docValuesTypes.get(field) == DocValuesType.SORTED_NUMERIC &&
+				NumberUtils.isDigits(StringUtils.removeStart(value, "-"))) {
+			// the index is sorted by timestamp, so it keeps its numeric doc values however it's mapped
+			doc.add(new SortedNumericDocValuesField(field, Long.parseLong(value)));
+		}
+		if (Config._ID.equals(field)) {
+			doc.add(new Field(field, value, ID_FIELD));
+		} else if ((kind == null || kind == IndexMapping.Kind.GEO) && isGeoField(field, value, kind)) {
 			String[] latlng = value.split(",", 2);
-			return new LatLonPoint(field, NumberUtils.toDouble(latlng[0]), NumberUtils.toDouble(latlng[1]));
-		} else if (Config._ID.equals(field)) {
-			return new Field(field, value, ID_FIELD);
+			doc.add(new LatLonPoint(field, NumberUtils.toDouble(latlng[0]), NumberUtils.toDouble(latlng[1])));
+			return sortable;
+		} else if (numeric) {
+			// numbers are also indexed as terms, so that they can be found with query strings
+			doc.add(new Field(field, value, DEFAULT_NOT_ANALYZED_FIELD));
+			addNumericField(doc, field, value, kind == IndexMapping.Kind.LONG, sortable);
+			return false;
+		} else if (kind == IndexMapping.Kind.TEXT || (kind == null && !NOT_ANALYZED_FIELDS.contains(field))) {
+			doc.add(new Field(field, value, DEFAULT_FIELD));
 		} else {
-			if (NOT_ANALYZED_FIELDS.contains(field)) {
-				return new Field(field, value, DEFAULT_NOT_ANALYZED_FIELD);
+			doc.add(new Field(field, value, DEFAULT_NOT_ANALYZED_FIELD));
+		}
+		if (single && sortable) {
+			doc.add(new SortedDocValuesField(field, new BytesRef(value)));
+		}
+		return sortable;
+	}
+
+	private static boolean claimDocValues(Map<String, DocValuesType> docValuesTypes, String field,
+			DocValuesType type) {
+		DocValuesType existing = docValuesTypes.putIfAbsent(field, type);
+		return existing == null || existing == type;
+	}
+
+	private static boolean isGeoField(String field, String value, IndexMapping.Kind kind) {
+		return (kind == IndexMapping.Kind.GEO || "latlng".equals(field)) && StringUtils.contains(value, ",");
+	}
+
+	private static void addNumericField(Document doc, String field, String value, boolean isLong, boolean sortable) {
+		try {
+			if (isLong) {
+				long number = NumberUtils.isDigits(StringUtils.removeStart(value, "-")) ?
+						Long.parseLong(value) : (long) Double.parseDouble(value);
+				doc.add(new LongPoint(field, number));
+				if (sortable) {
+					doc.add(new SortedNumericDocValuesField(field, number));
+				}
 			} else {
-				return new Field(field, value, DEFAULT_FIELD);
+				double number = Double.parseDouble(value);
+				doc.add(new DoublePoint(field, number));
+				if (sortable) {
+					doc.add(new SortedNumericDocValuesField(field, NumericUtils.doubleToSortableLong(number)));
+				}
 			}
+		} catch (NumberFormatException e) {
+			logger.debug("Field '{}' is not a number: {}", field, value);
+		}
+	}
+
+	/**
+	 * Returns the index mapping of an app, which is read from the app settings and cached for a while.
+	 * @param appid appid
+	 * @return the mapping, never null
+	 */
+	static IndexMapping getIndexMapping(String appid) {
+		if (StringUtils.isBlank(appid)) {
+			return IndexMapping.DEFAULT;
+		}
+		return MAPPINGS.get(appid, (String id) -> IndexMapping.fromApp(readApp(Para.getDAO(), id)));
+	}
+
+	/**
+	 * Drops the cached index mapping of an app, e.g. after its settings have changed.
+	 * @param appid appid
+	 */
+	static void invalidateIndexMapping(String appid) {
+		if (!StringUtils.isBlank(appid)) {
+			MAPPINGS.invalidate(appid);
+		}
+	}
+
+	/**
+	 * Returns the types of doc values of the fields in the index of an app - read from the index when it's first
+	 * used and updated as documents are added. The type of doc values of a field can't be changed, so fields which
+	 * were indexed as strings before numeric fields were supported, or before the mapping was changed, keep their
+	 * doc values until the index is rebuilt.
+	 * @param appid appid
+	 * @return a map of field names to doc values types
+	 */
+	private static Map<String, DocValuesType> getDocValuesTypes(String appid) {
+		if (StringUtils.isBlank(appid)) {
+			return Collections.emptyMap();
+		}
+		Map<String, DocValuesType> types = DOC_VALUES_TYPES.get(appid);
+		if (types == null) {
+			types = readDocValuesTypes(appid);
+			Map<String, DocValuesType> existing = DOC_VALUES_TYPES.putIfAbsent(appid, types);
+			if (existing != null) {
+				types = existing;
+			}
+		}
+		return types;
+	}
+
+	private static Map<String, DocValuesType> readDocValuesTypes(String appid) {
+		IndexWriter writer = WRITERS.get(appid);
+		Map<String, DocValuesType> types = newDocValuesTypes((writer != null) ?
+				writer.getConfig().getIndexSort() : readIndexSort(appid));
+		if (writer == null && !indexExists(appid)) {
+			return types;
+		}
+		IndexSearcher isearcher = null;
+		try {
+			isearcher = acquireIndexSearcher(appid);
+			if (isearcher != null) {
+				for (LeafReaderContext leaf : isearcher.getIndexReader().leaves()) {
+					for (FieldInfo info : leaf.reader().getFieldInfos()) {
+						if (info.getDocValuesType() != DocValuesType.NONE) {
+							types.put(info.name, info.getDocValuesType());
+						}
+					}
+				}
+			}
+		} finally {
+			releaseIndexSearcher(isearcher);
+		}
+		return types;
+	}
+
+	/**
+	 * Creates a map of doc values types for a new index or a new index reader. The fields which the index is
+	 * sorted by must have numeric doc values, so they are claimed up front - a mapping like
+	 * "timestamp": "keyword,sortable" can't add string doc values for them, which would fail the whole document.
+	 * @param indexSort the sort order of the index or null
+	 * @return a map of field names to doc values types
+	 */
+	private static Map<String, DocValuesType> newDocValuesTypes(Sort indexSort) {
+		Map<String, DocValuesType> types = new ConcurrentHashMap<>();
+		if (indexSort != null) {
+			for (SortField sortField : indexSort.getSort()) {
+				types.put(sortField.getField(), DocValuesType.SORTED_NUMERIC);
+			}
+		}
+		return types;
+	}
+
+	private static Sort readIndexSort(String appid) {
+		try (FSDirectory indexDir = FSDirectory.open(getIndexPath(appid))) {
+			return getIndexSort(indexDir);
+		} catch (IOException ex) {
+			logger.warn("Couldn't read the sort order of index '{}': {}", getIndexName(appid), ex.getMessage());
+		}
+		return null;
+	}
+
+	private static DocValuesType getDocValuesType(IndexReader reader, String field) {
+		for (LeafReaderContext leaf : reader.leaves()) {
+			FieldInfo info = leaf.reader().getFieldInfos().fieldInfo(field);
+			if (info != null) {
+				return info.getDocValuesType();
+			}
+		}
+		return DocValuesType.NONE;
+	}
+
+	private static App readApp(DAO dao, String appid) {
+		try {
+			return (dao == null) ? null : dao.read(Config.getRootAppIdentifier(), App.id(appid));
+		} catch (Exception e) {
+			logger.warn("Couldn't read the index mapping of app '{}': {}", appid, e.getMessage());
+			return null;
 		}
 	}
 
@@ -436,41 +939,58 @@ public final class LuceneUtils {
 	 * @param data object data - keys and values
 	 * @return a {@link Document} object
 	 */
-	@SuppressWarnings("unchecked")
 	public static Document paraObjectToDocument(String appid, Map<String, Object> data) {
 		if (data == null) {
 			throw new IllegalArgumentException("Null data");
 		}
+		return paraObjectToDocument(appid, (JsonNode) ParaObjectUtils.getJsonMapper().valueToTree(data));
+	}
+
+	/**
+	 * Converts a ParaObject to Lucene Document. Takes care of nested objects and indexes them separately.
+	 * Stores the original object data as JSON text inside the "_source" field.
+	 * @param appid an appid
+	 * @param data object data as a JSON object, see {@link ParaObjectUtils#getAnnotatedFieldsAsTree(ParaObject)}
+	 * @return a {@link Document} object
+	 */
+	public static Document paraObjectToDocument(String appid, JsonNode data) {
+		List<Document> nestedDocs = new LinkedList<>();
+		Document doc = paraObjectToDocument(data, getIndexMapping(appid), getDocValuesTypes(appid), nestedDocs);
+		indexDocuments(appid, nestedDocs);
+		return doc;
+	}
+
+	static Document paraObjectToDocument(JsonNode data, IndexMapping mapping,
+			Map<String, DocValuesType> docValuesTypes, List<Document> nestedDocs) {
+		if (data == null) {
+			throw new IllegalArgumentException("Null data");
+		}
 		Document doc = new Document();
-		JsonNode jsonDoc = null;
+		JsonNode jsonDoc = data;
+		String type = data.hasNonNull(Config._TYPE) ? data.get(Config._TYPE).asText() : null;
 		try {
 			// Process nested fields first
 			// Nested objects are stored as independent documents in Lucene.
 			// They are not shown in search results.
-			if (data.containsKey(NESTED_FIELD_NAME)) {
-				Object nstd = data.get(NESTED_FIELD_NAME);
-				if (nstd instanceof List) {
-					LinkedList<Document> docs = new LinkedList<>();
-					Map<String, Object> dataWithoutNestedField = new HashMap<>(data);
-					dataWithoutNestedField.remove(NESTED_FIELD_NAME);
-					jsonDoc = ParaObjectUtils.getJsonMapper().valueToTree(dataWithoutNestedField);
-					for (Map<String, Object> obj : ((List<Map<String, Object>>) nstd)) {
-						Map<String, Object> object = new HashMap<>(obj);
+			JsonNode nstd = data.get(NESTED_FIELD_NAME);
+			if (nstd != null && nstd.isArray() && data.isObject()) {
+				ObjectNode dataWithoutNestedField = ((ObjectNode) data).deepCopy();
+				dataWithoutNestedField.remove(NESTED_FIELD_NAME);
+				jsonDoc = dataWithoutNestedField;
+				for (JsonNode obj : nstd) {
+					if (obj.isObject()) {
+						ObjectNode object = ((ObjectNode) obj).deepCopy();
 						object.put(Config._ID, Utils.getNewId());
 						// the nested object's type is forced to be equal to its parent, otherwise breaks queries
-						object.put(Config._TYPE, data.get(Config._TYPE));
-						JsonNode nestedJsonDoc = ParaObjectUtils.getJsonMapper().valueToTree(object);
+						object.set(Config._TYPE, data.get(Config._TYPE));
 						Document nestedDoc = new Document();
-						addDocumentFields(nestedJsonDoc, nestedDoc, "");
+						addDocumentFields(object, nestedDoc, "", mapping, type, docValuesTypes);
 						addSource(jsonDoc, nestedDoc); // nested field has the source of its parent
-						docs.add(nestedDoc);
+						nestedDocs.add(nestedDoc);
 					}
-					indexDocuments(appid, docs);
 				}
-			} else {
-				jsonDoc = ParaObjectUtils.getJsonMapper().valueToTree(data);
 			}
-			addDocumentFields(jsonDoc, doc, "");
+			addDocumentFields(jsonDoc, doc, "", mapping, type, docValuesTypes);
 			addSource(jsonDoc, doc);
 		} catch (Exception e) {
 			logger.error(null, e);
@@ -567,12 +1087,12 @@ public final class LuceneUtils {
 		if (StringUtils.isBlank(queryString)) {
 			queryString = "*";
 		}
-		DirectoryReader ireader = null;
+		IndexSearcher isearcher = null;
 		try {
 			Pager page = getPager(pager);
-			ireader = getIndexReader(appid);
-			if (ireader != null) {
-				Document[] hits1 = searchQueryRaw(ireader, appid, Utils.type(Address.class), query, page);
+			isearcher = acquireIndexSearcher(appid);
+			if (isearcher != null) {
+				Document[] hits1 = searchQueryRaw(isearcher, appid, Utils.type(Address.class), query, page);
 				page.setLastKey(null); // will cause problems if not cleared
 
 				if (hits1.length == 0) {
@@ -593,17 +1113,18 @@ public final class LuceneUtils {
 				}
 
 				Builder qb2 = new BooleanQuery.Builder();
-				qb2.add(qs(queryString, MultiFields.getIndexedFields(ireader)), BooleanClause.Occur.MUST);
+				qb2.add(qs(queryString, MultiFields.getIndexedFields(isearcher.getIndexReader())),
+						BooleanClause.Occur.MUST);
 				for (String id : parentids) {
 					qb2.add(new TermQuery(new Term(Config._ID, id)), BooleanClause.Occur.SHOULD);
 				}
-				Document[] hits2 = searchQueryRaw(ireader, appid, type, qb2.build(), page);
+				Document[] hits2 = searchQueryRaw(isearcher, appid, type, qb2.build(), page);
 				return searchQuery(dao, appid, hits2, page);
 			}
 		} catch (Exception e) {
 			logger.error(null, e);
 		} finally {
-			closeIndexReader(ireader);
+			releaseIndexSearcher(isearcher);
 		}
 		return Collections.emptyList();
 	}
@@ -622,19 +1143,16 @@ public final class LuceneUtils {
 		if (StringUtils.isBlank(appid)) {
 			return Collections.emptyList();
 		}
-		DirectoryReader ireader = null;
+		IndexSearcher isearcher = null;
 		try {
-			ireader = getIndexReader(appid);
-			if (ireader != null) {
-				Pager page = getPager(pager);
-				List<P> docs = searchQuery(dao, appid, searchQueryRaw(ireader, appid, type,
-						qs(query, MultiFields.getIndexedFields(ireader)), page), page);
-				return docs;
+			isearcher = acquireIndexSearcher(appid);
+			if (isearcher != null) {
+				return searchQueryCached(dao, isearcher, appid, type, query, getPager(pager));
 			}
 		} catch (Exception e) {
 			logger.error(null, e);
 		} finally {
-			closeIndexReader(ireader);
+			releaseIndexSearcher(isearcher);
 		}
 		return Collections.emptyList();
 	}
@@ -653,22 +1171,83 @@ public final class LuceneUtils {
 		if (StringUtils.isBlank(appid)) {
 			return Collections.emptyList();
 		}
-		DirectoryReader ireader = null;
+		IndexSearcher isearcher = null;
 		try {
-			ireader = getIndexReader(appid);
-			if (ireader != null) {
-				Pager page = getPager(pager);
-				List<P> docs = searchQuery(dao, appid, searchQueryRaw(ireader, appid, type, query, page), page);
-				return docs;
+			isearcher = acquireIndexSearcher(appid);
+			if (isearcher != null) {
+				return searchQueryCached(dao, isearcher, appid, type, query, getPager(pager));
 			}
 		} catch (Exception e) {
 			logger.error(null, e);
 		} finally {
-			closeIndexReader(ireader);
+			releaseIndexSearcher(isearcher);
 		}
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Runs a query (a query string or a {@link Query}) through the result cache. On a hit the objects
+	 * are read from the database by id, on a miss (or if any of them is gone) the query is run on the index.
+	 */
+	private static <P extends ParaObject> List<P> searchQueryCached(DAO dao, IndexSearcher isearcher,
+			String appid, String type, Object query, Pager page) throws IOException {
+		// objects read from the index can't be cached by id
+		boolean cacheable = RESULTS.isEnabled() && !Config.getConfigBoolean("read_from_index", false);
+		SearchResultCache.Key key = cacheable ? RESULTS.key(appid, type, query, page) : null;
+		long generation = getGeneration(isearcher);
+		if (key != null) {
+			List<String> ids = RESULTS.get(key, generation, page);
+			if (ids != null) {
+				List<P> cached = readCachedResults(dao, appid, ids);
+				if (cached != null) {
+					return cached;
+				}
+				RESULTS.remove(key);
+			}
+		}
+		Query q = (query instanceof Query) ? (Query) query :
+				qs((String) query, MultiFields.getIndexedFields(isearcher.getIndexReader()));
+		Document[] hits = searchQueryRaw(isearcher, appid, type, q, page);
+		List<P> results = searchQuery(dao, appid, hits, page);
+		if (key != null) {
+			Set<String> ids = new LinkedHashSet<>(hits.length);
+			for (Document hit : hits) {
+				if (hit != null && hit.get(Config._ID) != null) {
+					ids.add(hit.get(Config._ID));
+				}
+			}
+			// cache only if every object could be read from the database
+			if (results.size() == ids.size() && results.stream().allMatch(p -> !Boolean.FALSE.equals(p.getStored()))) {
+				RESULTS.put(key, generation, new ArrayList<>(ids), page);
+			}
+		}
+		return results;
+	}
+
+	private static <P extends ParaObject> List<P> readCachedResults(DAO dao, String appid, List<String> ids) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Map<String, P> fromDB = dao.readAll(appid, ids, true);
+		ArrayList<P> results = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			P pobj = (fromDB == null) ? null : fromDB.get(id);
+			if (pobj == null) {
+				return null;
+			}
+			results.add(pobj);
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the statistics of the search result cache.
+	 * @return the number of "hits", "misses" and the "hitRatio" for each app and query type
+	 */
+	public static Map<String, Map<String, Map<String, Object>>> getResultCacheStats() {
+		return RESULTS.getStats();
+	}
+
 	@SuppressWarnings("unchecked")
 	private static <P extends ParaObject> List<P> searchQuery(DAO dao, String appid, Document[] hits, Pager pager) {
 		if (hits == null || hits.length == 0) {
@@ -695,8 +1274,9 @@ public final class LuceneUtils {
 		return results;
 	}
 
-	private static Document[] searchQueryRaw(DirectoryReader ireader, String appid, String type, Query query, Pager pager) {
-		if (StringUtils.isBlank(appid) || ireader == null) {
+	private static Document[] searchQueryRaw(IndexSearcher isearcher, String appid, String type, Query query,
+			Pager pager) {
+		if (StringUtils.isBlank(appid) || isearcher == null) {
 			return new Document[0];
 		}
 		if (query == null) {
@@ -706,7 +1286,6 @@ public final class LuceneUtils {
 			pager = new Pager();
 		}
 		try {
-			IndexSearcher isearcher = new IndexSearcher(ireader);
 			if (!StringUtils.isBlank(type)) {
 				query = new BooleanQuery.Builder().
 						add(query, BooleanClause.Occur.MUST).
@@ -717,34 +1296,57 @@ public final class LuceneUtils {
 			int pageNum = (int) pager.getPage();
 			TopDocs topDocs;
 
-			if (pageNum <= 1 && !StringUtils.isBlank(pager.getLastKey())) {
+			Sort sort = getSort(pager, getIndexMapping(appid).get(type, pager.getSortby()), isearcher.getIndexReader());
+			boolean legacyLastKey = false;
+			Integer trackTotalHits = pager.getTrackTotalHits();
+			boolean exactCount = trackTotalHits == null || trackTotalHits < 0;
+
+			if (pageNum <= 1 && NumberUtils.isDigits(pager.getLastKey())) {
+				// Old style "lastKey", which is the _docid of the last Document, only works when sorting by _docid.
 				// Read the last Document from index to get its docId which is required by "searchAfter".
 				// We can't get it from lastKey beacuse it contains the id of the last ParaObject on the page.
 				Integer lastDocId = getLastDocId(isearcher, pager.getLastKey());
+				legacyLastKey = true;
 				if (lastDocId != null) {
+					sort = new Sort(new SortedNumericSortField(DOC_ID_FIELD_NAME, LONG, pager.isDesc()));
 					topDocs = isearcher.searchAfter(new FieldDoc(lastDocId, 1,
-							new Object[]{NumberUtils.toLong(pager.getLastKey())}), query, maxPerPage,
-							new Sort(new SortedNumericSortField(DOC_ID_FIELD_NAME, LONG, pager.isDesc())));
+							new Object[]{NumberUtils.toLong(pager.getLastKey())}), query, maxPerPage, sort, false, false);
 				} else {
 					topDocs = new TopDocs(0, new ScoreDoc[0], 0);
 				}
+			} else if (pageNum <= 1 && !StringUtils.isBlank(pager.getLastKey())) {
+				// "lastKey" is a cursor with the sort values of the last Document on the previous page
+				FieldDoc after = readCursor(pager.getLastKey(), pager, sort);
+				if (after != null) {
+					int numHits = Math.max(1, maxPerPage);
+					TopFieldCollector collector = TopFieldCollector.create(sort, numHits, after, true, false, false);
+					search(isearcher, query, collector, sort, exactCount ? -1 : Math.max(numHits, trackTotalHits),
+							after.doc);
+					topDocs = collector.topDocs();
+				} else {
+					logger.debug("Invalid cursor '{}' for sorting by '{}'.", pager.getLastKey(), pager.getSortby());
+					topDocs = new TopDocs(0, new ScoreDoc[0], 0);
+				}
 			} else {
 				int start = (pageNum < 1 || pageNum > Config.MAX_PAGES) ? 0 : (pageNum - 1) * maxPerPage;
-				Sort sort = new Sort(getSortField(pager));
-				TopFieldCollector collector = TopFieldCollector.create(sort, Config.DEFAULT_LIMIT, false, false, false);
-				isearcher.search(query, collector);
+				// only the hits up to the requested page have to be sorted
+				int numHits = Math.max(1, start + maxPerPage);
+				TopFieldCollector collector = TopFieldCollector.create(sort, numHits, true, false, false);
+				search(isearcher, query, collector, sort, exactCount ? -1 : Math.max(numHits, trackTotalHits), -1);
 				topDocs = collector.topDocs(start, maxPerPage);
 			}
 
 			ScoreDoc[] hits = topDocs.scoreDocs;
-			pager.setCount(topDocs.totalHits);
+			pager.setCount(exactCount ? topDocs.totalHits : Math.min(topDocs.totalHits, trackTotalHits));
 
 			Document[] docs = new Document[hits.length];
 			for (int i = 0; i < hits.length; i++) {
 				docs[i] = isearcher.doc(hits[i].doc);
 			}
 			if (hits.length > 0) {
-				pager.setLastKey(docs[hits.length - 1].get(DOC_ID_FIELD_NAME));
+				ScoreDoc last = hits[hits.length - 1];
+				pager.setLastKey((!legacyLastKey && last instanceof FieldDoc && ((FieldDoc) last).fields != null) ?
+						writeCursor(pager, (FieldDoc) last) : docs[hits.length - 1].get(DOC_ID_FIELD_NAME));
 			}
 			logger.debug("Lucene query: {} Hits: {}, Total: {}", query, hits.length, topDocs.totalHits);
 			return docs;
@@ -756,6 +1358,59 @@ public final class LuceneUtils {
 		return new Document[0];
 	}
 
+	/**
+	 * Runs a query. If the total number of hits doesn't have to be exact and the results are sorted
+	 * in index order, collection stops as soon as enough hits are collected. The same goes for the default
+	 * sort order (newest first) on the first page, but only in segments which are sorted that way - see
+	 * {@link #getIndexSort(org.apache.lucene.store.Directory)}. For any other sort order, Lucene has to visit
+	 * every matching Document to find the top hits.
+	 * @param maxHits the number of hits after which collection can stop or -1
+	 * @param afterDoc the Lucene docId of the Document the search starts after or -1
+	 */
+	private static void search(IndexSearcher isearcher, Query query, Collector collector, Sort sort,
+			int maxHits, int afterDoc) throws IOException {
+		if (maxHits >= 0 && Sort.INDEXORDER.equals(sort)) {
+			isearcher.search(query, new EarlyTerminatingCollector(collector, maxHits, afterDoc));
+		} else if (maxHits >= 0 && afterDoc < 0 && EarlyTerminatingSortingCollector.canEarlyTerminate(sort, INDEX_SORT)) {
+			// hits before a cursor would count towards maxHits, so only the first page stops early
+			isearcher.search(query, new EarlyTerminatingSortingCollector(collector, sort, maxHits));
+		} else {
+			isearcher.search(query, collector);
+		}
+	}
+
+	/**
+	 * Stops collecting hits once a number of hits have been collected after a given Document.
+	 */
+	private static final class EarlyTerminatingCollector extends FilterCollector {
+		private final int maxHits;
+		private final int afterDoc;
+		private int hits;
+
+		EarlyTerminatingCollector(Collector in, int maxHits, int afterDoc) {
+			super(in);
+			this.maxHits = maxHits;
+			this.afterDoc = afterDoc;
+		}
+
+		@Override
+		public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+			if (hits >= maxHits) {
+				throw new CollectionTerminatedException();
+			}
+			final int docBase = context.docBase;
+			return new FilterLeafCollector(super.getLeafCollector(context)) {
+				@Override
+				public void collect(int doc) throws IOException {
+					super.collect(doc);
+					if (docBase + doc > afterDoc && ++hits >= maxHits) {
+						throw new CollectionTerminatedException();
+					}
+				}
+			};
+		}
+	}
+
 	private static Integer getLastDocId(IndexSearcher isearcher, String lastKey) throws IOException {
 		Query lastDoc = new TermQuery(new Term(DOC_ID_FIELD_NAME, lastKey));
 		TopDocs docs = isearcher.search(lastDoc, 1);
@@ -766,16 +1421,125 @@ public final class LuceneUtils {
 		return null;
 	}
 
-	private static SortField getSortField(Pager pager) {
-		if (DOC_ID_FIELD_NAME.equals(pager.getSortby())) {
+	/**
+	 * Returns the sort order for a pager. Results are sorted by "_docid" last, so that the sort values
+	 * of each Document are unique and can be used as a cursor for "searchAfter".
+	 */
+	private static Sort getSort(Pager pager, IndexMapping.FieldMapping sortMapping, IndexReader reader) {
+		SortField sortField = getSortField(pager, sortMapping, reader);
+		if (DOC_ID_FIELD_NAME.equals(sortField.getField())) {
+			return new Sort(sortField);
+		} else if (INDEX_ORDER.equals(pager.getSortby())) {
+			return Sort.INDEXORDER;
+		}
+		return new Sort(sortField, new SortedNumericSortField(DOC_ID_FIELD_NAME, LONG, pager.isDesc()));
+	}
+
+	/**
+	 * Encodes the sort values of the last Document on a page as an opaque, URL-safe cursor.
+	 * The cursor also contains the sort field and order, and is only valid for the same sort.
+	 */
+	private static String writeCursor(Pager pager, FieldDoc last) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(pager.getSortby());
+		out.writeBoolean(pager.isDesc());
+		out.writeByte(last.fields.length);
+		for (Object value : last.fields) {
+			if (value instanceof BytesRef) {
+				BytesRef ref = (BytesRef) value;
+				out.writeByte(1);
+				out.writeInt(ref.length);
+				out.write(ref.bytes, ref.offset, ref.length);
+			} else if (value instanceof Long) {
+				out.writeByte(2);
+				out.writeLong((Long) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(3);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Double) {
+				out.writeByte(4);
+				out.writeDouble((Double) value);
+			} else if (value instanceof Float) {
+				out.writeByte(5);
+				out.writeFloat((Float) value);
+			} else {
+				out.writeByte(0);
+			}
+		}
+		out.flush();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+	/**
+	 * Decodes a cursor created by {@link #writeCursor(Pager, FieldDoc)}.
+	 * @return a Document to search after or null if the cursor is invalid or was created for a different sort
+	 */
+	private static FieldDoc readCursor(String cursor, Pager pager, Sort sort) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)));
+			if (!pager.getSortby().equals(in.readUTF()) || pager.isDesc() != in.readBoolean()) {
+				return null;
+			}
+			int size = in.readByte();
+			if (size != sort.getSort().length) {
+				return null;
+			}
+			Object[] fields = new Object[size];
+			for (int i = 0; i < size; i++) {
+				switch (in.readByte()) {
+					case 1:
+						int length = in.readInt();
+						if (length < 0 || length > in.available()) {
+							return null;
+						}
+						byte[] value = new byte[length];
+						in.readFully(value);
+						fields[i] = new BytesRef(value);
+						break;
+					case 2:
+						fields[i] = in.readLong();
+						break;
+					case 3:
+						fields[i] = in.readInt();
+						break;
+					case 4:
+						fields[i] = in.readDouble();
+						break;
+					case 5:
+						fields[i] = in.readFloat();
+						break;
+					default:
+						fields[i] = null;
+				}
+			}
+			// the sort values are unique, so the Lucene docId of the last Document is only needed for index order
+			int doc = (Sort.INDEXORDER.equals(sort) && fields[0] instanceof Integer) ? (Integer) fields[0] : 0;
+			return new FieldDoc(doc, Float.NaN, fields);
+		} catch (IOException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static SortField getSortField(Pager pager, IndexMapping.FieldMapping sortMapping, IndexReader reader) {
+		if (INDEX_ORDER.equals(pager.getSortby())) {
+			// the order in which Documents are stored in the index, i.e. no particular order
+			// cursors for this order are only valid until the index changes
+			return SortField.FIELD_DOC;
+		} else if (DOC_ID_FIELD_NAME.equals(pager.getSortby()) || (sortMapping != null && !sortMapping.isSortable())) {
+			// fields which aren't sortable have no doc values, sorting by them would fail
 			return new SortedNumericSortField(DOC_ID_FIELD_NAME, LONG, pager.isDesc());
+		} else if (getDocValuesType(reader, pager.getSortby()) == DocValuesType.SORTED_NUMERIC) {
+			// numeric fields are sorted by value - longs, unless they are mapped as doubles
+			boolean isDouble = sortMapping != null && sortMapping.getKind() == IndexMapping.Kind.DOUBLE;
+			return new SortedNumericSortField(pager.getSortby(), isDouble ? DOUBLE : LONG, pager.isDesc());
 		} else {
 			return new SortField(pager.getSortby(), STRING, pager.isDesc());
 		}
 	}
 
 	/**
-	 * Counts the total number of documents for a given query.
+	 * Counts the total number of documents for a given query. Counts are cached until the index changes.
 	 * @param appid appid
 	 * @param query a query
 	 * @return total docs found in index
@@ -784,46 +1548,272 @@ public final class LuceneUtils {
 		if (StringUtils.isBlank(appid) || query == null) {
 			return 0;
 		}
-		DirectoryReader ireader = null;
+		IndexSearcher isearcher = null;
 		try {
-			ireader = getIndexReader(appid);
-			if (ireader != null) {
-				IndexSearcher isearcher = new IndexSearcher(ireader);
-				return isearcher.count(query);
+			isearcher = acquireIndexSearcher(appid);
+			if (isearcher != null) {
+				SearchResultCache.Key key = RESULTS.isEnabled() ? RESULTS.countKey(appid, query) : null;
+				long generation = getGeneration(isearcher);
+				Long cached = (key == null) ? null : RESULTS.getCount(key, generation);
+				if (cached != null) {
+					return cached.intValue();
+				}
+				int count = isearcher.count(query);
+				if (key != null) {
+					RESULTS.putCount(key, generation, count);
+				}
+				return count;
 			}
 		} catch (Exception e) {
 			logger.error(null, e);
 		} finally {
-			closeIndexReader(ireader);
+			releaseIndexSearcher(isearcher);
 		}
 		return 0;
 	}
 
-	private static DirectoryReader getIndexReader(String appid) {
+	/**
+	 * Returns the shared, near-real-time {@link IndexSearcher} for a given app.
+	 * The searcher must be released with {@link #releaseIndexSearcher(IndexSearcher)}
+	 * after use. If the index was modified more than "lucene.max_staleness_ms" ago and the searcher
+	 * hasn't been refreshed since, it is refreshed before being returned.
+	 * @param appid appid
+	 * @return a searcher or null if the index doesn't exist
+	 */
+	static IndexSearcher acquireIndexSearcher(String appid) {
+		SearcherManager manager = getSearcherManager(appid);
+		if (manager == null) {
+			return null;
+		}
 		try {
-			String dataDir = Config.getConfigParam("lucene.dir", Paths.get(".").toAbsolutePath().normalize().toString());
-			Path path = FileSystems.getDefault().getPath(dataDir, "data", getIndexName(appid));
-			FSDirectory indexDir = FSDirectory.open(path);
-			if (DirectoryReader.indexExists(indexDir)) {
-				return DirectoryReader.open(indexDir);
+			Long staleSince = STALE_SINCE.get(appid);
+			if (staleSince != null && System.currentTimeMillis() - staleSince >=
+					Config.getConfigInt("lucene.max_staleness_ms", 0)) {
+				refreshSearcher(appid, manager, true);
 			}
-		} catch (IOException ex) {
-			logger.warn("Couldn't get IndexReader - '{}' does not exist: {}", getIndexName(appid), ex.getMessage());
+			return manager.acquire();
+		} catch (Exception ex) {
+			logger.warn("Couldn't get IndexSearcher for '{}': {}", getIndexName(appid), ex.getMessage());
 		}
 		return null;
 	}
 
+	/**
+	 * Releases a searcher the same way {@link SearcherManager#release(java.lang.Object)} does. The manager
+	 * which issued it may have been closed and replaced since (e.g. by a rebuild), and the reader
+	 * of the old index must still be closed once the last search on it is done.
+	 */
+	static void releaseIndexSearcher(IndexSearcher isearcher) {
+		if (isearcher == null) {
+			return;
+		}
+		try {
+			isearcher.getIndexReader().decRef();
+		} catch (Exception e) {
+			logger.error(null, e);
+		}
+	}
+
+	/**
+	 * @param appid appid
+	 * @return the generation of the searcher which would be used for the next search, or -1 if there's no index
+	 */
+	static long getSearcherGeneration(String appid) {
+		IndexSearcher isearcher = acquireIndexSearcher(appid);
+		try {
+			return getGeneration(isearcher);
+		} finally {
+			releaseIndexSearcher(isearcher);
+		}
+	}
+
+	private static long getGeneration(IndexSearcher isearcher) {
+		return (isearcher instanceof GenerationSearcher) ? ((GenerationSearcher) isearcher).generation : -1;
+	}
+
+	/**
+	 * Creates searchers numbered in the order they were opened, across all apps and indexes. A new searcher
+	 * is only opened when the index has changed, so the number identifies the state of the index it sees.
+	 */
+	private static final class GenerationSearcherFactory extends SearcherFactory {
+		@Override
+		public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+			return new GenerationSearcher(reader, SEARCHER_GENERATION.incrementAndGet());
+		}
+	}
+
+	private static final class GenerationSearcher extends IndexSearcher {
+		private final long generation;
+
+		GenerationSearcher(IndexReader reader, long generation) {
+			super(reader);
+			this.generation = generation;
+		}
+	}
+
+	private static SearcherManager getSearcherManager(String appid) {
+		SearcherManager manager = SEARCHERS.get(appid);
+		if (manager == null) {
+			// don't create empty indexes for apps which were never indexed
+			if (!WRITERS.containsKey(appid) && !indexExists(appid)) {
+				return null;
+			}
+			IndexWriter iwriter = getIndexWriter(appid);
+			if (iwriter == null) {
+				return null;
+			}
+			synchronized (SEARCHERS) {
+				manager = SEARCHERS.get(appid);
+				if (manager == null) {
+					try {
+						manager = new SearcherManager(iwriter, new GenerationSearcherFactory());
+						SEARCHERS.put(appid, manager);
+						startSearcherRefreshTask();
+					} catch (Exception ex) {
+						// the writer might have been closed by rebuildIndex() in the meantime
+						logger.warn("Couldn't get SearcherManager for '{}': {}", getIndexName(appid), ex.getMessage());
+					}
+				}
+			}
+		}
+		return manager;
+	}
+
+	private static void markStale(String appid) {
+		STALE_SINCE.putIfAbsent(appid, System.currentTimeMillis());
+	}
+
+	private static void refreshSearcher(String appid, SearcherManager manager, boolean blocking) throws IOException {
+		// clear the flag first - writes which happen during the refresh will set it again
+		if (STALE_SINCE.remove(appid) != null) {
+			if (blocking) {
+				manager.maybeRefreshBlocking();
+			} else if (!manager.maybeRefresh()) {
+				// another thread is refreshing - try again later
+				markStale(appid);
+			}
+		}
+	}
+
+	private static synchronized void startSearcherRefreshTask() {
+		if (refreshTask == null) {
+			long interval = Config.getConfigInt("lucene.refresh_interval_ms", 1000);
+			refreshTask = Para.asyncExecutePeriodically(new Runnable() {
+				public void run() {
+					for (Map.Entry<String, SearcherManager> entry : SEARCHERS.entrySet()) {
+						try {
+							refreshSearcher(entry.getKey(), entry.getValue(), false);
+						} catch (Exception e) {
+							logger.warn("Failed to refresh IndexSearcher for '{}': {}",
+									getIndexName(entry.getKey()), e.getMessage());
+						}
+					}
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Makes changes visible to searchers and commits them. If "lucene.async_commit" is enabled,
+	 * commits are grouped - changes are committed every "lucene.commit_interval_ms" or as soon as
+	 * "lucene.commit_max_docs" changes are pending, whichever comes first.
+	 * @param appid appid
+	 * @param iwriter the index writer
+	 * @param changes number of changed documents
+	 * @throws IOException error
+	 */
+	private static void commit(String appid, IndexWriter iwriter, int changes) throws IOException {
+		markStale(appid);
+		if (!Config.getConfigBoolean("lucene.async_commit", false)) {
+			iwriter.commit();
+			return;
+		}
+		AtomicInteger pending = UNCOMMITTED.computeIfAbsent(appid, (k) -> new AtomicInteger());
+		if (pending.addAndGet(changes) >= Config.getConfigInt("lucene.commit_max_docs", 5000)) {
+			commitPending(appid, iwriter);
+		} else {
+			startCommitTask();
+		}
+	}
+
+	private static void commitPending(String appid, IndexWriter iwriter) throws IOException {
+		AtomicInteger pending = UNCOMMITTED.get(appid);
+		int changes = (pending == null) ? 0 : pending.getAndSet(0);
+		if (changes > 0) {
+			try {
+				iwriter.commit();
+			} catch (IOException | RuntimeException e) {
+				// the changes are still pending, the next commit will retry them
+				pending.addAndGet(changes);
+				throw e;
+			}
+		}
+	}
+
+	private static synchronized void startCommitTask() {
+		if (commitTask == null) {
+			long interval = Config.getConfigInt("lucene.commit_interval_ms", 1000);
+			commitTask = Para.asyncExecutePeriodically(new Runnable() {
+				public void run() {
+					for (Map.Entry<String, IndexWriter> entry : WRITERS.entrySet()) {
+						try {
+							commitPending(entry.getKey(), entry.getValue());
+						} catch (Exception e) {
+							logger.warn("Failed to commit changes to index '{}': {}",
+									getIndexName(entry.getKey()), e.getMessage());
+						}
+					}
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Returns the order in which an index keeps its Documents. Lucene can't change the order of an existing
+	 * index, so indexes created before it was sorted (or with "lucene.index_sort" disabled) stay unsorted
+	 * until they are rebuilt.
+	 * @param indexDir the index directory
+	 * @return the sort order or null if the index can't be sorted
+	 * @throws IOException if the index can't be read
+	 */
+	static Sort getIndexSort(Directory indexDir) throws IOException {
+		if (!Config.getConfigBoolean("lucene.index_sort", true)) {
+			return null;
+		}
+		if (DirectoryReader.indexExists(indexDir)) {
+			for (SegmentCommitInfo info : SegmentInfos.readLatestCommit(indexDir)) {
+				if (!INDEX_SORT.equals(info.info.getIndexSort())) {
+					return null;
+				}
+			}
+		}
+		return INDEX_SORT;
+	}
+
+	private static boolean indexExists(String appid) {
+		try (FSDirectory indexDir = FSDirectory.open(getIndexPath(appid))) {
+			return DirectoryReader.indexExists(indexDir);
+		} catch (IOException ex) {
+			logger.warn("Couldn't check if index '{}' exists: {}", getIndexName(appid), ex.getMessage());
+		}
+		return false;
+	}
+
+	static Path getIndexPath(String appid) {
+		String dataDir = Config.getConfigParam("lucene.dir", Paths.get(".").toAbsolutePath().normalize().toString());
+		return FileSystems.getDefault().getPath(dataDir, "data", getIndexName(appid));
+	}
+
 	private static IndexWriter getIndexWriter(String appid) {
 		synchronized (WRITERS) {
 			if (!WRITERS.containsKey(appid)) {
 				try {
-					String luceneDir = Paths.get(".").toAbsolutePath().normalize().toString();
-					String dataDir = Config.getConfigParam("lucene.dir", luceneDir);
-					Path path = FileSystems.getDefault().getPath(dataDir, "data", getIndexName(appid));
 					Analyzer analyzer = new StandardAnalyzer();
 					IndexWriterConfig config = new IndexWriterConfig(analyzer);
 					config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-					WRITERS.put(appid, new IndexWriter(FSDirectory.open(path), config));
+					FSDirectory indexDir = FSDirectory.open(getIndexPath(appid));
+					config.setIndexSort(getIndexSort(indexDir));
+					WRITERS.put(appid, new IndexWriter(indexDir, config));
 				} catch (IOException ex) {
 					logger.warn("Couldn't get IndexWriter - '{}' does not exist: {}", getIndexName(appid), ex.getMessage());
 				}
@@ -837,21 +1827,24 @@ public final class LuceneUtils {
 		return WRITERS.get(appid);
 	}
 
-	private static void closeIndexReader(DirectoryReader ireader) {
+	private static void closeIndexWriters() {
 		try {
-			if (ireader != null) {
-				ireader.close();
-				if (ireader.directory() != null) {
-					ireader.directory().close();
+			synchronized (LuceneUtils.class) {
+				if (refreshTask != null) {
+					refreshTask.cancel(false);
+					refreshTask = null;
+				}
+				if (commitTask != null) {
+					commitTask.cancel(false);
+					commitTask = null;
 				}
 			}
-		} catch (Exception e) {
-			logger.error(null, e);
-		}
-	}
-
-	private static void closeIndexWriters() {
-		try {
+			for (SearcherManager manager : SEARCHERS.values()) {
+				manager.close();
+			}
+			SEARCHERS.clear();
+			STALE_SINCE.clear();
+			UNCOMMITTED.clear();
 			for (IndexWriter indexWriter : WRITERS.values()) {
 				if (indexWriter != null) {
 					indexWriter.commit();
@@ -868,12 +1861,95 @@ public final class LuceneUtils {
 	}
 
 	/**
-	 * Creates a term filter for a set of terms.
+	 * Creates a range query. Numeric fields are matched with a point range query, which is much faster than
+	 * a query string. Fields which are indexed as strings, or are still strings in an index which has to be
+	 * rebuilt, are matched with a term range.
+	 * @param appid appid
+	 * @param type object type or null
+	 * @param field field name
+	 * @param from the lower bound (inclusive) or null
+	 * @param to the upper bound (inclusive) or null
+	 * @return a query
+	 */
+	static Query getRangeQuery(String appid, String type, String field, String from, String to) {
+		return getRangeQuery(appid, type, field, from, to, true, true);
+	}
+
+	/**
+	 * Creates a range query with inclusive or exclusive bounds.
+	 * @param appid appid
+	 * @param type object type or null
+	 * @param field field name
+	 * @param from the lower bound or null
+	 * @param to the upper bound or null
+	 * @param includeFrom if true the lower bound is inclusive
+	 * @param includeTo if true the upper bound is inclusive
+	 * @return a query
+	 */
+	static Query getRangeQuery(String appid, String type, String field, String from, String to,
+			boolean includeFrom, boolean includeTo) {
+		IndexMapping.FieldMapping mapping = getIndexMapping(appid).get(type, field);
+		boolean numeric = (mapping != null) ? mapping.isNumeric() : NUMERIC_FIELDS.contains(field);
+		if (numeric && getDocValuesTypes(appid).get(field) != DocValuesType.SORTED &&
+				isNumberOrBlank(from) && isNumberOrBlank(to)) {
+			if (mapping != null && mapping.getKind() == IndexMapping.Kind.DOUBLE) {
+				double lower = StringUtils.isBlank(from) ? Double.NEGATIVE_INFINITY : Double.parseDouble(from);
+				double upper = StringUtils.isBlank(to) ? Double.POSITIVE_INFINITY : Double.parseDouble(to);
+				return DoublePoint.newRangeQuery(field, includeFrom ? lower : Math.nextUp(lower),
+						includeTo ? upper : Math.nextDown(upper));
+			}
+			try {
+				return LongPoint.newRangeQuery(field, toLongBound(from, true, includeFrom),
+						toLongBound(to, false, includeTo));
+			} catch (ArithmeticException e) {
+				// nothing is above Long.MAX_VALUE or below Long.MIN_VALUE
+				return new MatchNoDocsQuery();
+			}
+		}
+		return TermRangeQuery.newStringRange(field, StringUtils.trimToNull(from), StringUtils.trimToNull(to),
+				includeFrom, includeTo);
+	}
+
+	private static long toLongBound(String value, boolean lower, boolean inclusive) {
+		if (StringUtils.isBlank(value)) {
+			return lower ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+		long number;
+		boolean whole;
+		try {
+			number = Long.parseLong(value.trim());
+			whole = true;
+		} catch (NumberFormatException e) {
+			double d = Double.parseDouble(value);
+			number = (long) (lower ? Math.ceil(d) : Math.floor(d));
+			whole = (d == Math.rint(d));
+		}
+		if (inclusive || !whole) {
+			return number;
+		}
+		return lower ? Math.addExact(number, 1) : Math.subtractExact(number, 1);
+	}
+
+	private static boolean isNumberOrBlank(String value) {
+		if (StringUtils.isBlank(value)) {
+			return true;
+		}
+		try {
+			return !Double.isNaN(Double.parseDouble(value));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a term filter for a set of terms. Terms like "field>" with a number are range queries.
+	 * @param appid appid
+	 * @param type object type or null
 	 * @param terms some terms
 	 * @param mustMatchAll if true all terms must match ('AND' operation)
 	 * @return the filter
 	 */
-	static Query getTermsQuery(Map<String, ?> terms, boolean mustMatchAll) {
+	static Query getTermsQuery(String appid, String type, Map<String, ?> terms, boolean mustMatchAll) {
 		BooleanQuery.Builder fb = new BooleanQuery.Builder();
 		int addedTerms = 0;
 		boolean noop = true;
@@ -888,13 +1964,13 @@ public final class LuceneUtils {
 					String key = term.getKey().replaceAll("[<>=\\s]+$", "");
 
 					if (">".equals(matcher.group(1))) {
-						bfb = TermRangeQuery.newStringRange(key, val.toString(), null, false, false);
+						bfb = getRangeQuery(appid, type, key, val.toString(), null, false, false);
 					} else if ("<".equals(matcher.group(1))) {
-						bfb = TermRangeQuery.newStringRange(key, null, val.toString(), false, false);
+						bfb = getRangeQuery(appid, type, key, null, val.toString(), false, false);
 					} else if (">=".equals(matcher.group(1))) {
-						bfb = TermRangeQuery.newStringRange(key, val.toString(), null, true, false);
+						bfb = getRangeQuery(appid, type, key, val.toString(), null, true, false);
 					} else if ("<=".equals(matcher.group(1))) {
-						bfb = TermRangeQuery.newStringRange(key, null, val.toString(), false, true);
+						bfb = getRangeQuery(appid, type, key, null, val.toString(), false, true);
 					}
 				}
 				if (mustMatchAll) {
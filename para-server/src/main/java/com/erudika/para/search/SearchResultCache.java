@@ -0,0 +1,290 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.search;
+
+import com.erudika.para.utils.Pager;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the results of search queries - only the ids of the hits and the pager metadata (count and lastKey)
+ * are kept, the objects themselves are read from the data store (and its cache) on every hit. The results of
+ * count queries are cached separately from searches for the same query.
+ * Entries are keyed by appid, type, query and pager, and are tagged with the generation of the searcher
+ * which produced them. Once a newer searcher is opened for an app, its older entries are never returned again -
+ * they are replaced on the next search or evicted. The cache is bounded by the estimated memory taken by its entries.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class SearchResultCache {
+
+	private static final int ENTRY_OVERHEAD = 160;
+
+	private final Cache<Key, Entry> cache;
+	private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Map<String, Stats>> stats = new ConcurrentHashMap<>();
+
+	/**
+	 * Default constructor.
+	 * @param maxBytes the maximum estimated size of all entries, 0 disables the cache
+	 */
+	SearchResultCache(long maxBytes) {
+		cache = (maxBytes <= 0) ? null : Caffeine.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher((Key key, Entry entry) -> entry.weight)
+				.build();
+	}
+
+	/**
+	 * @return true if caching is enabled
+	 */
+	boolean isEnabled() {
+		return cache != null;
+	}
+
+	/**
+	 * Creates a cache key. Must be called before the search, which modifies the pager.
+	 * @param appid appid
+	 * @param type object type or null
+	 * @param query a query string or a {@link org.apache.lucene.search.Query}
+	 * @param pager pager
+	 * @return a key
+	 */
+	Key key(String appid, String type, Object query, Pager pager) {
+		return new Key(appid, type, query, pager, false);
+	}
+
+	/**
+	 * Creates a cache key for a count query.
+	 * @param appid appid
+	 * @param query a {@link org.apache.lucene.search.Query}
+	 * @return a key
+	 */
+	Key countKey(String appid, Object query) {
+		return new Key(appid, null, query, null, true);
+	}
+
+	/**
+	 * Returns the cached ids for a query and sets the count and lastKey of the pager.
+	 * @param key key
+	 * @param generation the generation of the searcher which would run the query
+	 * @param pager pager to update
+	 * @return a list of ids or null if nothing is cached for this key and generation
+	 */
+	List<String> get(Key key, long generation, Pager pager) {
+		if (cache == null) {
+			return null;
+		}
+		generations.merge(key.appid, generation, Math::max);
+		Entry entry = cache.getIfPresent(key);
+		if (entry != null && entry.generation != generation) {
+			if (entry.generation < generation) {
+				// the index has changed since - scanning for all stale entries of the app would be too slow
+				cache.asMap().remove(key, entry);
+			}
+			entry = null;
+		}
+		if (entry == null) {
+			getStats(key.appid, key.queryType).misses.increment();
+			return null;
+		}
+		getStats(key.appid, key.queryType).hits.increment();
+		if (pager != null) {
+			pager.setCount(entry.count);
+			pager.setLastKey(entry.lastKey);
+		}
+		return entry.ids;
+	}
+
+	/**
+	 * Caches the ids of the hits for a query, along with the count and lastKey of the pager.
+	 * @param key key
+	 * @param generation the generation of the searcher which ran the query
+	 * @param ids ids of the hits, in order
+	 * @param pager pager updated by the search
+	 */
+	void put(Key key, long generation, List<String> ids, Pager pager) {
+		if (cache == null || ids == null) {
+			return;
+		}
+		Long current = generations.get(key.appid);
+		// results from a searcher which has already been replaced are never cached
+		if (current != null && current > generation) {
+			return;
+		}
+		cache.put(key, new Entry(key, generation, ids, pager));
+	}
+
+	/**
+	 * Returns the cached number of hits for a count query.
+	 * @param key a key created by {@link #countKey(java.lang.String, java.lang.Object)}
+	 * @param generation the generation of the searcher which would run the query
+	 * @return the count or null if nothing is cached for this key and generation
+	 */
+	Long getCount(Key key, long generation) {
+		Pager pager = new Pager();
+		return (get(key, generation, pager) == null) ? null : pager.getCount();
+	}
+
+	/**
+	 * Caches the number of hits for a count query.
+	 * @param key a key created by {@link #countKey(java.lang.String, java.lang.Object)}
+	 * @param generation the generation of the searcher which ran the query
+	 * @param count the number of hits
+	 */
+	void putCount(Key key, long generation, long count) {
+		Pager pager = new Pager();
+		pager.setCount(count);
+		put(key, generation, Collections.<String>emptyList(), pager);
+	}
+
+	/**
+	 * Drops a single entry, e.g. when some of its objects are no longer in the data store.
+	 * @param key key
+	 */
+	void remove(Key key) {
+		if (cache != null) {
+			cache.invalidate(key);
+		}
+	}
+
+	/**
+	 * @return the number of hits and misses, and the hit ratio, for each app and query type
+	 */
+	Map<String, Map<String, Map<String, Object>>> getStats() {
+		Map<String, Map<String, Map<String, Object>>> map = new LinkedHashMap<>(stats.size());
+		for (Map.Entry<String, Map<String, Stats>> app : stats.entrySet()) {
+			Map<String, Map<String, Object>> byType = new LinkedHashMap<>(app.getValue().size());
+			for (Map.Entry<String, Stats> type : app.getValue().entrySet()) {
+				long hits = type.getValue().hits.sum();
+				long misses = type.getValue().misses.sum();
+				Map<String, Object> counters = new LinkedHashMap<>(3);
+				counters.put("hits", hits);
+				counters.put("misses", misses);
+				counters.put("hitRatio", (hits + misses) == 0 ? 0.0 : (double) hits / (hits + misses));
+				byType.put(type.getKey(), counters);
+			}
+			map.put(app.getKey(), byType);
+		}
+		return map;
+	}
+
+	private Stats getStats(String appid, String queryType) {
+		Map<String, Stats> byType = stats.computeIfAbsent(appid, k -> new ConcurrentHashMap<>());
+		return byType.computeIfAbsent(queryType, k -> new Stats());
+	}
+
+	/**
+	 * A cache key - appid, type, query and the pager fields which affect the results, or just appid and query
+	 * for counts.
+	 */
+	static final class Key {
+		private final String appid;
+		private final String type;
+		private final String queryType;
+		private final Object query;
+		private final long page;
+		private final int limit;
+		private final String sortby;
+		private final boolean desc;
+		private final String lastKey;
+		private final Integer trackTotalHits;
+		private final boolean count;
+		private final int hash;
+
+		Key(String appid, String type, Object query, Pager pager, boolean count) {
+			this.appid = appid;
+			this.type = type;
+			this.count = count;
+			// Lucene queries implement equals() and hashCode() by value, query strings are compared trimmed
+			this.query = (query instanceof String) ? ((String) query).trim() : query;
+			if (count) {
+				this.queryType = "Count";
+			} else {
+				this.queryType = (query instanceof String || query == null) ? "QueryString" :
+						query.getClass().getSimpleName();
+			}
+			Pager p = (pager == null) ? new Pager() : pager;
+			this.page = p.getPage();
+			this.limit = p.getLimit();
+			this.sortby = p.getSortby();
+			this.desc = p.isDesc();
+			this.lastKey = p.getLastKey();
+			this.trackTotalHits = p.getTrackTotalHits();
+			this.hash = Objects.hash(appid, type, this.query, page, limit, sortby, desc, lastKey, trackTotalHits, count);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && count == other.count && page == other.page && limit == other.limit &&
+					desc == other.desc && Objects.equals(appid, other.appid) && Objects.equals(type, other.type) &&
+					Objects.equals(sortby, other.sortby) && Objects.equals(lastKey, other.lastKey) &&
+					Objects.equals(trackTotalHits, other.trackTotalHits) && Objects.equals(query, other.query);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class Entry {
+		private final long generation;
+		private final List<String> ids;
+		private final long count;
+		private final String lastKey;
+		private final int weight;
+
+		Entry(Key key, long generation, List<String> ids, Pager pager) {
+			this.generation = generation;
+			this.ids = Collections.unmodifiableList(new ArrayList<>(ids));
+			this.count = (pager == null) ? ids.size() : pager.getCount();
+			this.lastKey = (pager == null) ? null : pager.getLastKey();
+			long size = ENTRY_OVERHEAD + 2L * (length(key.appid) + length(key.type) + length(key.sortby) +
+					length(key.lastKey) + length(lastKey) + length(String.valueOf(key.query)));
+			for (String id : ids) {
+				size += 48 + 2L * length(id);
+			}
+			this.weight = (int) Math.min(size, Integer.MAX_VALUE);
+		}
+
+		private static int length(String s) {
+			return (s == null) ? 0 : s.length();
+		}
+	}
+
+	private static final class Stats {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.security;
+
+import com.erudika.para.IOListener;
+import com.erudika.para.cache.CacheInvalidationBus;
+import com.erudika.para.core.App;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.core.User;
+import com.erudika.para.core.utils.ParaObjectUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jwt.SignedJWT;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the result of verifying a JWT - the app and user it belongs to - keyed by a digest of the token.
+ * Entries live for at most "jwt.auth_cache_ttl_seconds" and never past the expiration time of the token.
+ * Writing or deleting an {@link App}, a {@link User} or its "metaUser" through the DAO invalidates all entries
+ * created before the write for that app or user, which covers secret resets, token revocation and role changes.
+ * Writes made on other nodes are received through the {@link CacheInvalidationBus}.
+ * <br>
+ * Each hit returns a copy of the cached user, with the tenant info resolved when the token was verified.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class JWTAuthCache implements IOListener, CacheInvalidationBus.Listener {
+
+	private static final Logger logger = LoggerFactory.getLogger(JWTAuthCache.class);
+
+	private final Cache<String, Entry> entries;
+	private final Cache<String, Long> versions;
+	private final AtomicLong sequence = new AtomicLong();
+	private volatile CacheInvalidationBus invalidationBus;
+
+	/**
+	 * @param ttlSeconds the maximum time to live for an entry
+	 * @param maxSize the maximum number of entries
+	 */
+	JWTAuthCache(long ttlSeconds, long maxSize) {
+		entries = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+		// a write only needs to be remembered for as long as the entries created before it could live
+		versions = Caffeine.newBuilder().expireAfterWrite(ttlSeconds + 1, TimeUnit.SECONDS).build();
+	}
+
+	/**
+	 * Must be called before the app and user are read from the database. The returned value
+	 * is passed to {@link #put(java.lang.String, long, com.nimbusds.jwt.SignedJWT, App, User)}, so that
+	 * writes which happen while the token is being verified invalidate the new entry.
+	 * @return the current sequence number
+	 */
+	long begin() {
+		return sequence.get();
+	}
+
+	/**
+	 * @param token the raw token
+	 * @return a verified entry or null
+	 */
+	Entry get(String token) {
+		String key = digest(token);
+		Entry entry = entries.getIfPresent(key);
+		if (entry != null && (entry.expiresAt <= System.currentTimeMillis() || isStale(entry))) {
+			entries.invalidate(key);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Caches a verified token.
+	 * @param token the raw token
+	 * @param seq the value returned by {@link #begin()}
+	 * @param jwt the parsed token
+	 * @param app the app
+	 * @param user the user or null for "super" tokens
+	 */
+	void put(String token, long seq, SignedJWT jwt, App app, User user) {
+		try {
+			Date expires = jwt.getJWTClaimsSet().getExpirationTime();
+			if (expires != null && app != null) {
+				Entry entry = new Entry(jwt, app, user, seq, expires.getTime());
+				if (!isStale(entry)) {
+					entries.put(digest(token), entry);
+				}
+			}
+		} catch (Exception e) {
+			logger.debug("Unable to cache JWT: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Invalidates the entries of an app or user.
+	 * @param id the id of an app or user
+	 */
+	void invalidate(String id) {
+		if (id != null) {
+			versions.put(id, sequence.incrementAndGet());
+		}
+	}
+
+	/**
+	 * Starts receiving the writes made on other nodes.
+	 * @param bus the cache invalidation bus
+	 */
+	synchronized void subscribe(CacheInvalidationBus bus) {
+		if (bus != null && bus != invalidationBus) {
+			invalidationBus = bus;
+			bus.addListener(this);
+		}
+	}
+
+	@Override
+	public void onInvalidate(String appid, String id) {
+		invalidate(id == null ? App.id(appid) : id);
+	}
+
+	@Override
+	public void onPreInvoke(Method method, Object[] args) { }
+
+	@Override
+	public void onPostInvoke(Method method, Object[] args, Object result) {
+		if (method == null || args == null || method.getName().startsWith("read")) {
+			return;
+		}
+		for (Object arg : args) {
+			if (arg instanceof List) {
+				for (Object obj : (List<?>) arg) {
+					invalidateObject(obj);
+				}
+			} else {
+				invalidateObject(arg);
+			}
+		}
+	}
+
+	private void invalidateObject(Object obj) {
+		if (obj instanceof App || obj instanceof User) {
+			invalidate(((ParaObject) obj).getId());
+		} else if (obj instanceof Sysprop && "metaUser".equals(((Sysprop) obj).getType())) {
+			// the tenant info of a user is kept in its "metaUser" object
+			String userid = ((Sysprop) obj).getParentid();
+			invalidate(userid);
+			CacheInvalidationBus bus = invalidationBus;
+			if (bus != null && userid != null) {
+				bus.invalidate(((Sysprop) obj).getAppid(), userid);
+			}
+		}
+	}
+
+	private boolean isStale(Entry entry) {
+		return version(entry.app.getId()) > entry.seq || (entry.user != null && version(entry.user.getId()) > entry.seq);
+	}
+
+	private long version(String id) {
+		Long version = (id == null) ? null : versions.getIfPresent(id);
+		return version == null ? 0L : version;
+	}
+
+	private static String digest(String token) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return Base64.getEncoder().encodeToString(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A verified token with the app and user it was issued for.
+	 */
+	static final class Entry {
+
+		private final SignedJWT jwt;
+		private final App app;
+		private final User user;
+		private final String activeTenantId;
+		private final List<String> roleId;
+		private final long seq;
+		private final long expiresAt;
+
+		Entry(SignedJWT jwt, App app, User user, long seq, long expiresAt) {
+			this.jwt = jwt;
+			this.app = app;
+			this.user = copy(user);
+			this.activeTenantId = (user == null) ? null : user.getActiveTenantId();
+			this.roleId = (user == null) ? null : new ArrayList<>(user.getRoleId());
+			this.seq = seq;
+			this.expiresAt = expiresAt;
+		}
+
+		SignedJWT getJwt() {
+			return jwt;
+		}
+
+		App getApp() {
+			return app;
+		}
+
+		/**
+		 * @return a copy of the user, so that changes made while handling a request aren't cached
+		 */
+		User getUser() {
+			User copy = copy(user);
+			if (copy != null) {
+				copy.setActiveTenantId(activeTenantId);
+				copy.setRoleId(roleId);
+			}
+			return copy;
+		}
+
+		private static User copy(User user) {
+			return (user == null) ? null : ParaObjectUtils.setAnnotatedFields(new User(),
+					ParaObjectUtils.getAnnotatedFields(user, false), null);
+		}
+	}
+}
@@ -18,6 +18,7 @@
 package com.erudika.para.security;
 
 import com.erudika.para.Para;
+import com.erudika.para.cache.CacheInvalidationBus;
 import com.erudika.para.core.App;
 import com.erudika.para.core.User;
 import com.erudika.para.core.utils.CoreUtils;
@@ -71,6 +72,7 @@ public class JWTRestfulAuthFilter extends GenericFilterBean {
 	private PasswordAuthFilter passwordAuth;
 	private WechatAuthFilter wechatAuth;
 	private VerificationCodeAuthFilter verificationCodeAuth;
+	private final JWTAuthCache authCache;
 
 	/**
 	 * The default filter mapping.
@@ -83,6 +85,13 @@ public class JWTRestfulAuthFilter extends GenericFilterBean {
 	 */
 	public JWTRestfulAuthFilter(String defaultFilterProcessesUrl) {
 		setFilterProcessesUrl(defaultFilterProcessesUrl);
+		int ttl = Config.getConfigInt("jwt.auth_cache_ttl_seconds", 30);
+		if (ttl > 0) {
+			authCache = new JWTAuthCache(ttl, Config.getConfigInt("jwt.auth_cache_size", 10000));
+			Para.addIOListener(authCache);
+		} else {
+			authCache = null;
+		}
 	}
 
 	@Override
@@ -102,12 +111,20 @@ public class JWTRestfulAuthFilter extends GenericFilterBean {
 		} else if (RestRequestMatcher.INSTANCE_STRICT.matches(request) &&
 				SecurityContextHolder.getContext().getAuthentication() == null) {
 			try {
-				// validate token if present
-				JWTAuthentication jwt = getJWTfromRequest(request, response);
-				if (jwt != null) {
+				// validate token if present, unless it was verified recently
+				String token = getRawToken(request);
+				JWTAuthCache.Entry verified = (authCache == null || token == null) ? null : authCache.get(token);
+				long seq = (authCache == null) ? 0 : authCache.begin();
+				JWTAuthentication jwt = (verified == null) ? getJWTfromRequest(request, response) : null;
+				if (verified != null) {
+					SecurityContextHolder.getContext().setAuthentication(getCachedAuthentication(verified, response));
+				} else if (jwt != null) {
 					Authentication auth = authenticationManager.authenticate(jwt);
 					// success!
 					SecurityContextHolder.getContext().setAuthentication(auth);
+					if (authCache != null) {
+						authCache.put(token, seq, jwt.getJwt(), jwt.getApp(), SecurityUtils.getAuthenticatedUser(jwt));
+					}
 				} else {
 					response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
 				}
@@ -250,14 +267,33 @@ public class JWTRestfulAuthFilter extends GenericFilterBean {
 		}
 	}
 
-	private JWTAuthentication getJWTfromRequest(HttpServletRequest request, HttpServletResponse response) {
+	private Authentication getCachedAuthentication(JWTAuthCache.Entry verified, HttpServletResponse response) {
+		App app = verified.getApp();
+		User user = verified.getUser(); // a copy with the tenant info resolved when the token was verified
+		response.setHeader("APP_ID", app.getAppIdentifier());
+		if (user != null) {
+			return new JWTAuthentication(new AuthenticatedUserDetails(user)).withJWT(verified.getJwt()).withApp(app);
+		} else {
+			return new AppAuthentication(app);
+		}
+	}
+
+	private String getRawToken(HttpServletRequest request) {
 		String token = request.getHeader(HttpHeaders.AUTHORIZATION);
 		if (token == null) {
 			token = request.getParameter(HttpHeaders.AUTHORIZATION);
 		}
 		if (!StringUtils.isBlank(token) && token.contains("Bearer")) {
+			return token.substring(6).trim();
+		}
+		return null;
+	}
+
+	private JWTAuthentication getJWTfromRequest(HttpServletRequest request, HttpServletResponse response) {
+		String token = getRawToken(request);
+		if (token != null) {
 			try {
-				SignedJWT jwt = SignedJWT.parse(token.substring(6).trim());
+				SignedJWT jwt = SignedJWT.parse(token);
 				String userid = jwt.getJWTClaimsSet().getSubject();
 				String appid = (String) jwt.getJWTClaimsSet().getClaim(Config._APPID);
 				App app = Para.getDAO().read(App.id(appid));
@@ -489,4 +525,15 @@ public class JWTRestfulAuthFilter extends GenericFilterBean {
 	public void setVerificationCodeAuth(VerificationCodeAuthFilter verificationCodeAuth) {
 		this.verificationCodeAuth = verificationCodeAuth;
 	}
+
+	/**
+	 * @param invalidationBus cache invalidation bus - writes to apps and users on other nodes
+	 * invalidate the tokens cached here
+	 */
+	@Inject
+	public void setInvalidationBus(CacheInvalidationBus invalidationBus) {
+		if (authCache != null && invalidationBus != null) {
+			authCache.subscribe(invalidationBus);
+		}
+	}
 }
@@ -18,6 +18,7 @@
 package com.erudika.para.security;
 
 import com.erudika.para.cache.Cache;
+import com.erudika.para.cache.CacheInvalidationBus;
 import com.erudika.para.security.filters.*;
 import com.erudika.para.utils.Config;
 import com.google.inject.AbstractModule;
@@ -364,12 +365,16 @@ public class SecurityModule extends AbstractModule {
 	 * @param oAuth2 filter
 	 * @param ldAuth filter
 	 * @param pwAuth filter
+	 * @param wechatAuth filter
+	 * @param verificationCodeAuth filter
+	 * @param invalidationBus cache invalidation bus
 	 * @return filter
 	 */
 	@Provides
 	public JWTRestfulAuthFilter getJWTAuthFilter(FacebookAuthFilter fbAuth, GoogleAuthFilter gpAuth,
 			GitHubAuthFilter ghAuth, LinkedInAuthFilter liAuth, TwitterAuthFilter twAuth,
-			MicrosoftAuthFilter msAuth, GenericOAuth2Filter oAuth2, LdapAuthFilter ldAuth, PasswordAuthFilter pwAuth, WechatAuthFilter wechatAuth, VerificationCodeAuthFilter verificationCodeAuth) {
+			MicrosoftAuthFilter msAuth, GenericOAuth2Filter oAuth2, LdapAuthFilter ldAuth, PasswordAuthFilter pwAuth, WechatAuthFilter wechatAuth, VerificationCodeAuthFilter verificationCodeAuth,
+			CacheInvalidationBus invalidationBus) {
 		if (jwtFilter == null) {
 			jwtFilter = new JWTRestfulAuthFilter("/" + JWTRestfulAuthFilter.JWT_ACTION);
 			jwtFilter.setFacebookAuth(fbAuth);
@@ -383,6 +388,7 @@ public class SecurityModule extends AbstractModule {
 			jwtFilter.setPasswordAuth(pwAuth);
 			jwtFilter.setWechatAuth(wechatAuth);
 			jwtFilter.setVerificationCodeAuth(verificationCodeAuth);
+			jwtFilter.setInvalidationBus(invalidationBus);
 		}
 		return jwtFilter;
 	}
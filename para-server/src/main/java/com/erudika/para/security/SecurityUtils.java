@@ -324,6 +324,9 @@ public final class SecurityUtils {
 		if (incoming == null || StringUtils.isBlank(secretKey)) {
 			return false;
 		}
+		if (SignatureVerifier.isSupported(incoming)) {
+			return SignatureVerifier.isValidSignature(incoming, secretKey);
+		}
 		String auth = incoming.getHeader(HttpHeaders.AUTHORIZATION);
 		String givenSig = StringUtils.substringAfter(auth, "Signature=");
 		String sigHeaders = StringUtils.substringBetween(auth, "SignedHeaders=", ",");
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.security;
+
+import com.amazonaws.util.SdkHttpUtils;
+import com.erudika.para.utils.BufferedRequestWrapper;
+import com.erudika.para.utils.Config;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies AWS Signature V4 signed requests without going through {@link com.erudika.para.rest.Signer}.
+ * The canonical request is built directly from the servlet request, derived signing keys are cached
+ * per access key and date and the {@code Mac} and {@code MessageDigest} instances are reused per thread.
+ * The result is identical to re-signing the request with {@code Signer}, which is still used for the
+ * requests this class doesn't handle (see {@link #isSupported(HttpServletRequest)}).
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class SignatureVerifier {
+
+	private static final Logger logger = LoggerFactory.getLogger(SignatureVerifier.class);
+
+	private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+	// must match the region and service name set in Signer
+	private static final String SCOPE_SUFFIX = "/us-east-1/" + Config.PARA + "/aws4_request";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final Comparator<String[]> BY_NAME = new Comparator<String[]>() {
+		public int compare(String[] o1, String[] o2) {
+			return o1[0].compareTo(o2[0]);
+		}
+	};
+
+	private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance("HmacSHA256");
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	private static final ThreadLocal<MessageDigest> SHA256 = new ThreadLocal<MessageDigest>() {
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	// a signing key is only valid for one day, so there are at most two keys in use per app
+	private static final Cache<String, SigningKey> KEYS = Caffeine.newBuilder().
+			maximumSize(Config.getConfigInt("signing_key_cache_size", 10000)).
+			expireAfterAccess(1, TimeUnit.HOURS).build();
+
+	private SignatureVerifier() { }
+
+	/**
+	 * Checks if the request can be verified by this class. Presigned URLs, requests without a signed
+	 * {@code X-Amz-Date} header and POST requests without a body but with parameters (these are
+	 * signed as if the parameters were the payload) are left to {@code Signer}.
+	 * @param request a buffered request
+	 * @return true if {@link #isValidSignature(HttpServletRequest, String)} can verify the request
+	 */
+	static boolean isSupported(HttpServletRequest request) {
+		String auth = request.getHeader(HttpHeaders.AUTHORIZATION);
+		if (!(request instanceof BufferedRequestWrapper) || StringUtils.isBlank(auth) || !auth.contains("Signature=")) {
+			return false;
+		}
+		String sigHeaders = StringUtils.substringBetween(auth, "SignedHeaders=", ",");
+		if (sigHeaders == null || !isSigned("x-amz-date", sigHeaders) || !isAWSDate(request.getHeader("x-amz-date"))) {
+			return false;
+		}
+		if (HttpMethod.POST.equals(request.getMethod()) && !request.getParameterMap().isEmpty()) {
+			try {
+				return request.getInputStream().available() > 0;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Validates the signature of a request.
+	 * @param request a buffered request, for which {@link #isSupported(HttpServletRequest)} is true
+	 * @param secretKey the app's secret key
+	 * @return true if the signature is valid
+	 */
+	static boolean isValidSignature(HttpServletRequest request, String secretKey) {
+		String auth = request.getHeader(HttpHeaders.AUTHORIZATION);
+		String givenSig = StringUtils.substringAfter(auth, "Signature=");
+		String sigHeaders = StringUtils.substringBetween(auth, "SignedHeaders=", ",");
+		String accessKey = StringUtils.substringBefore(StringUtils.substringBetween(auth, "Credential=", ","), "/");
+		String dateTime = request.getHeader("x-amz-date");
+		String date = dateTime.substring(0, 8);
+		String scope = date + SCOPE_SUFFIX;
+		try {
+			MessageDigest sha = SHA256.get();
+			String payloadHash = hashPayload(request.getInputStream(), sha);
+			String canonicalRequest = canonicalRequest(request, sigHeaders, dateTime, payloadHash);
+
+			StringBuilder sb = new StringBuilder(ALGORITHM.length() + dateTime.length() + scope.length() + 67);
+			sb.append(ALGORITHM).append('\n').append(dateTime).append('\n').append(scope).append('\n');
+			appendHex(sb, sha.digest(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+			Mac mac = MAC.get();
+			mac.init(new SecretKeySpec(getSigningKey(accessKey, secretKey.trim(), date), mac.getAlgorithm()));
+			byte[] signature = mac.doFinal(sb.toString().getBytes(StandardCharsets.UTF_8));
+			sb.setLength(0);
+			appendHex(sb, signature);
+			return MessageDigest.isEqual(sb.toString().getBytes(StandardCharsets.UTF_8),
+					StringUtils.trimToEmpty(givenSig).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException | GeneralSecurityException e) {
+			logger.warn("Failed to verify request signature: {}", e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the canonical request in the same way as {@code AWS4Signer} does for a request
+	 * prepared by {@code Signer}, i.e. only the signed headers which are present are included,
+	 * and the {@code host} and {@code x-amz-date} headers are always included.
+	 */
+	private static String canonicalRequest(HttpServletRequest request, String sigHeaders,
+			String dateTime, String payloadHash) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(request.getMethod()).append('\n');
+		String path = SdkHttpUtils.urlEncode(request.getRequestURI(), true);
+		if (!path.startsWith("/")) {
+			sb.append('/');
+		}
+		sb.append(path).append('\n');
+
+		Map<String, String[]> params = request.getParameterMap();
+		if (!params.isEmpty()) {
+			String[][] encoded = new String[params.size()][];
+			int i = 0;
+			for (Map.Entry<String, String[]> param : params.entrySet()) {
+				String[] values = param.getValue();
+				encoded[i++] = new String[]{SdkHttpUtils.urlEncode(param.getKey(), false),
+					SdkHttpUtils.urlEncode((values == null || values.length == 0) ? null : values[0], false)};
+			}
+			Arrays.sort(encoded, BY_NAME);
+			for (int j = 0; j < encoded.length; j++) {
+				if (j > 0) {
+					sb.append('&');
+				}
+				sb.append(encoded[j][0]).append('=').append(encoded[j][1]);
+			}
+		}
+		sb.append('\n');
+
+		String[] names = StringUtils.split(sigHeaders.toLowerCase() + ";host;x-amz-date", ';');
+		Arrays.sort(names);
+		StringBuilder signed = new StringBuilder(sigHeaders.length() + 16);
+		String previous = null;
+		for (String name : names) {
+			if (name.equals(previous) || "connection".equals(name) || "x-amzn-trace-id".equals(name)) {
+				continue;
+			}
+			String value;
+			if ("host".equals(name)) {
+				value = getHost(request);
+			} else if ("x-amz-date".equals(name)) {
+				value = dateTime;
+			} else {
+				value = request.getHeader(name);
+				if (value == null) {
+					continue;
+				}
+			}
+			previous = name;
+			sb.append(name).append(':');
+			appendCompacted(sb, value);
+			sb.append('\n');
+			if (signed.length() > 0) {
+				signed.append(';');
+			}
+			signed.append(name);
+		}
+		sb.append('\n').append(signed).append('\n');
+		sb.append(payloadHash);
+		return sb.toString();
+	}
+
+	private static String getHost(HttpServletRequest request) {
+		String scheme = request.getScheme();
+		int port = request.getServerPort();
+		if (port <= 0 || ("http".equalsIgnoreCase(scheme) && port == 80) ||
+				("https".equalsIgnoreCase(scheme) && port == 443)) {
+			return request.getServerName();
+		}
+		return request.getServerName() + ":" + port;
+	}
+
+	private static byte[] getSigningKey(String accessKey, String secretKey, String date) throws GeneralSecurityException {
+		String cacheKey = accessKey + "/" + date;
+		SigningKey key = KEYS.getIfPresent(cacheKey);
+		if (key == null || !key.secret.equals(secretKey)) {
+			byte[] k = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+			k = hmac(k, "us-east-1");
+			k = hmac(k, Config.PARA);
+			k = hmac(k, "aws4_request");
+			key = new SigningKey(secretKey, k);
+			KEYS.put(cacheKey, key);
+		}
+		return key.key;
+	}
+
+	private static byte[] hmac(byte[] key, String data) throws GeneralSecurityException {
+		Mac mac = MAC.get();
+		mac.init(new SecretKeySpec(key, mac.getAlgorithm()));
+		return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String hashPayload(InputStream in, MessageDigest sha) throws IOException {
+		sha.reset();
+		if (in != null) {
+			byte[] buf = new byte[1024];
+			int read;
+			while ((read = in.read(buf)) > 0) {
+				sha.update(buf, 0, read);
+			}
+		}
+		StringBuilder sb = new StringBuilder(64);
+		appendHex(sb, sha.digest());
+		return sb.toString();
+	}
+
+	private static void appendHex(StringBuilder sb, byte[] bytes) {
+		for (byte b : bytes) {
+			sb.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+		}
+	}
+
+	private static void appendCompacted(StringBuilder sb, String value) {
+		boolean whitespace = false;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\u000b' || c == '\r' || c == '\f') {
+				if (!whitespace) {
+					sb.append(' ');
+				}
+				whitespace = true;
+			} else {
+				sb.append(c);
+				whitespace = false;
+			}
+		}
+	}
+
+	private static boolean isSigned(String header, String sigHeaders) {
+		for (String name : StringUtils.split(sigHeaders, ';')) {
+			if (header.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAWSDate(String date) {
+		if (date == null || date.length() != 16 || date.charAt(8) != 'T' || date.charAt(15) != 'Z') {
+			return false;
+		}
+		for (int i = 0; i < 15; i++) {
+			if (i != 8 && !Character.isDigit(date.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class SigningKey {
+		private final String secret;
+		private final byte[] key;
+
+		SigningKey(String secret, byte[] key) {
+			this.secret = secret;
+			this.key = key;
+		}
+	}
+}
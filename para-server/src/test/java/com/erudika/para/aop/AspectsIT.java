@@ -29,6 +29,7 @@ import com.erudika.para.persistence.DAO;
 import com.erudika.para.persistence.MockDAO;
 import com.erudika.para.search.LuceneSearch;
 import com.erudika.para.search.Search;
+import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Utils;
 import com.google.inject.Binder;
 import com.google.inject.Module;
@@ -162,7 +163,9 @@ public class AspectsIT {
 		logger.debug("---- cache remove ----");
 		c.remove(s1.getId());
 		c.remove(s2.getId());
-		d.readAll(Arrays.asList(s0.getId(), s1.getId(), s2.getId()), true);
+		// partial miss - only s1 and s2 are read from the DB, results keep the order of the keys
+		map = d.readAll(Arrays.asList(s2.getId(), s0.getId(), s1.getId()), true);
+		assertEquals(Arrays.asList(s2.getId(), s0.getId(), s1.getId()), new ArrayList<>(map.keySet()));
 		assertTrue(c.contains(s1.getId()));
 		assertTrue(c.contains(s2.getId()));
 
@@ -434,4 +437,31 @@ public class AspectsIT {
 		assertNull(Para.getCache().get(o62.getId()));
 	}
 
+	@Test
+	public void testNegativeCaching() {
+		DAO d = Para.getDAO();
+		Cache c = Para.getCache();
+		System.setProperty("para.cache_enabled", "true");
+		System.setProperty("para.cache_negative_ttl_seconds", "60");
+		try {
+			Sysprop s3 = new Sysprop("s444");
+			Sysprop s4 = new Sysprop("s555");
+			assertNull(d.read(s3.getId()));
+			assertTrue(c.isMissing(Config.getRootAppIdentifier(), s3.getId()));
+			assertTrue(d.readAll(Arrays.asList(s3.getId(), s4.getId()), true).isEmpty());
+			assertTrue(c.isMissing(Config.getRootAppIdentifier(), s4.getId()));
+
+			// creating the objects clears the negative entries
+			d.create(s3);
+			d.createAll(Arrays.asList(s4));
+			assertFalse(c.isMissing(Config.getRootAppIdentifier(), s3.getId()));
+			assertFalse(c.isMissing(Config.getRootAppIdentifier(), s4.getId()));
+			assertNotNull(d.read(s3.getId()));
+			assertEquals(2, d.readAll(Arrays.asList(s3.getId(), s4.getId()), true).size());
+			d.deleteAll(Arrays.asList(s3, s4));
+		} finally {
+			System.clearProperty("para.cache_negative_ttl_seconds");
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.aop;
+
+import com.erudika.para.cache.Cache;
+import com.erudika.para.cache.CacheInvalidationBus;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.persistence.MockDAO;
+import com.erudika.para.search.Search;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+@SuppressWarnings("unchecked")
+public class IndexAndCacheAspectTest {
+
+	private IndexAndCacheAspect aspect;
+	private Cache cache;
+	private Search search;
+
+	@Before
+	public void setUp() {
+		cache = mock(Cache.class);
+		search = mock(Search.class);
+		aspect = new IndexAndCacheAspect();
+		aspect.setCache(cache);
+		aspect.setSearch(search);
+		aspect.setInvalidationBus(mock(CacheInvalidationBus.class));
+		System.setProperty("para.cache_enabled", "true");
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("para.cache_enabled");
+	}
+
+	@Test
+	public void testFlagsAreReadOnEveryCall() throws Throwable {
+		Method read = MockDAO.class.getMethod("read", String.class, String.class);
+		Sysprop cached = new Sysprop("1");
+		when(cache.get("app", "1")).thenReturn(cached);
+		MethodInvocation hit = invocation(read, null, "app", "1");
+		assertSame(cached, aspect.invoke(hit));
+		verify(hit, never()).proceed();
+
+		// the annotations of the method are resolved once, but caching can still be turned off
+		System.setProperty("para.cache_enabled", "false");
+		Sysprop stored = new Sysprop("1");
+		MethodInvocation pass = invocation(read, stored, "app", "1");
+		assertSame(stored, aspect.invoke(pass));
+		verify(pass).proceed();
+		verify(cache, times(1)).get("app", "1");
+	}
+
+	@Test
+	public void testMethodsNotInDAOArePassedThrough() throws Throwable {
+		MethodInvocation mi = invocation(MockDAO.class.getMethod("toString"), "result");
+		assertEquals("result", aspect.invoke(mi));
+		assertEquals("result", aspect.invoke(mi));
+		verify(mi, times(2)).proceed();
+		verifyZeroInteractions(cache, search);
+	}
+
+	@Test
+	public void testReadAllFetchesOnlyMissingObjects() throws Throwable {
+		Method readAll = MockDAO.class.getMethod("readAll", String.class, List.class, boolean.class);
+		List<String> ids = new ArrayList<>(Arrays.asList("1", "2"));
+		Sysprop cached = new Sysprop("1");
+		final Sysprop stored = new Sysprop("2");
+		when(cache.getAll("app", ids)).thenReturn(Collections.singletonMap("1", (ParaObject) cached));
+
+		final Object[] args = new Object[]{"app", ids, true};
+		final List<Object> requested = new ArrayList<>();
+		MethodInvocation mi = mock(MethodInvocation.class);
+		when(mi.getMethod()).thenReturn(readAll);
+		when(mi.getArguments()).thenReturn(args);
+		when(mi.proceed()).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				requested.addAll((List<?>) args[1]);
+				return Collections.singletonMap("2", stored);
+			}
+		});
+
+		Map<String, ParaObject> result = (Map<String, ParaObject>) aspect.invoke(mi);
+		assertEquals(Arrays.asList("1", "2"), new ArrayList<>(result.keySet()));
+		assertSame(cached, result.get("1"));
+		assertSame(stored, result.get("2"));
+		assertEquals(Collections.singletonList("2"), requested);
+		assertSame(ids, args[1]);
+		verify(mi, times(1)).proceed();
+		verify(cache).put("app", "2", stored);
+	}
+
+	@Test
+	public void testNegativeCaching() throws Throwable {
+		Method read = MockDAO.class.getMethod("read", String.class, String.class);
+		Method readAll = MockDAO.class.getMethod("readAll", String.class, List.class, boolean.class);
+		// off by default
+		aspect.invoke(invocation(read, null, "app", "404"));
+		verify(cache, never()).putMissing(anyString(), anyString(), anyLong());
+
+		System.setProperty("para.cache_negative_ttl_seconds", "60");
+		try {
+			MethodInvocation miss = invocation(read, null, "app", "404");
+			assertNull(aspect.invoke(miss));
+			verify(miss).proceed();
+			verify(cache).putMissing("app", "404", 60L);
+
+			when(cache.isMissing("app", "404")).thenReturn(true);
+			MethodInvocation known = invocation(read, null, "app", "404");
+			assertNull(aspect.invoke(known));
+			verify(known, never()).proceed();
+
+			List<String> ids = new ArrayList<>(Arrays.asList("404", "405"));
+			when(cache.getAll("app", ids)).thenReturn(Collections.<String, ParaObject>emptyMap());
+			MethodInvocation batch = invocation(readAll, Collections.emptyMap(), "app", ids, true);
+			assertTrue(((Map<?, ?>) aspect.invoke(batch)).isEmpty());
+			verify(cache).putMissing("app", "405", 60L);
+			verify(cache, times(1)).putMissing("app", "404", 60L);
+		} finally {
+			System.clearProperty("para.cache_negative_ttl_seconds");
+		}
+	}
+
+	static MethodInvocation invocation(Method method, Object result, Object... args) throws Throwable {
+		MethodInvocation mi = mock(MethodInvocation.class);
+		when(mi.getMethod()).thenReturn(method);
+		when(mi.getArguments()).thenReturn(args);
+		when(mi.proceed()).thenReturn(result);
+		return mi;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.aop;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class ReadCoalescerTest {
+
+	@Test
+	public void testConcurrentReadsAreCoalesced() throws Exception {
+		final ReadCoalescer coalescer = new ReadCoalescer();
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<Object> first = pool.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					try {
+						return coalescer.read("app", "1", () -> {
+							loads.incrementAndGet();
+							loading.countDown();
+							release.await();
+							return "obj1";
+						});
+					} catch (Throwable e) {
+						throw new Exception(e);
+					}
+				}
+			});
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			Future<Map<String, Object>> second = pool.submit(new Callable<Map<String, Object>>() {
+				public Map<String, Object> call() throws Exception {
+					try {
+						// "1" is already being read, only "2" should reach the loader
+						return coalescer.readAll("app", Arrays.asList("1", "2"), (List<String> ids) -> {
+							loads.incrementAndGet();
+							assertEquals(Collections.singletonList("2"), ids);
+							return Collections.singletonMap("2", "obj2");
+						});
+					} catch (Throwable e) {
+						throw new Exception(e);
+					}
+				}
+			});
+			while (coalescer.getStats().get("coalesced") < 1) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			assertEquals("obj1", first.get(5, TimeUnit.SECONDS));
+			Map<String, Object> all = second.get(5, TimeUnit.SECONDS);
+			assertEquals("obj1", all.get("1"));
+			assertEquals("obj2", all.get("2"));
+			assertEquals(2, loads.get());
+			assertEquals(Long.valueOf(1), coalescer.getStats().get("coalesced"));
+			assertEquals(Long.valueOf(0), coalescer.getStats().get("inFlight"));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class CacheInvalidationBusTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testInvalidationsReachOtherNodes() {
+		Cache cache1 = new MockCache();
+		Cache cache2 = new MockCache();
+		CacheInvalidationBus bus1 = new CacheInvalidationBus(cache1, new LoopbackTransport(), 0, null);
+		CacheInvalidationBus bus2 = new CacheInvalidationBus(cache2, new LoopbackTransport(), 0, null);
+		CacheInvalidationBus disabled = new CacheInvalidationBus(new MockCache(), null, 0, null);
+		final List<String> received = new ArrayList<>();
+		bus2.addListener(new CacheInvalidationBus.Listener() {
+			public void onInvalidate(String appid, String id) {
+				received.add(appid + "/" + id);
+			}
+		});
+		try {
+			for (Cache cache : Arrays.asList(cache1, cache2)) {
+				cache.put("app", "1", "one");
+				cache.put("app", "2", "two");
+				cache.put("app", "3", "three");
+			}
+			bus1.invalidate("app", "1");
+			assertNotNull(cache1.get("app", "1"));
+			assertNull(cache2.get("app", "1"));
+			assertEquals(Arrays.asList("app/1"), received);
+
+			bus2.invalidate("app", Arrays.asList("2", "3"));
+			assertNull(cache1.get("app", "2"));
+			assertNull(cache1.get("app", "3"));
+			assertNotNull(cache2.get("app", "2"));
+
+			Map<String, Object> nodes = (Map<String, Object>) bus2.getStats().get("nodes");
+			Map<String, Long> fromBus1 = (Map<String, Long>) nodes.get(bus1.getStats().get("nodeId"));
+			assertNotNull(fromBus1);
+			assertEquals(Long.valueOf(1), fromBus1.get("messages"));
+			assertEquals(Long.valueOf(0), fromBus1.get("missed"));
+			assertEquals(2L, bus2.getStats().get("sentInvalidations"));
+
+			assertFalse(disabled.isEnabled());
+			disabled.invalidate("app", "2"); // no-op
+			assertNotNull(cache2.get("app", "2"));
+		} finally {
+			bus1.stop();
+			bus2.stop();
+		}
+	}
+
+	@Test
+	public void testMessagesAreSigned() {
+		Cache cache1 = new MockCache();
+		Cache cache2 = new MockCache();
+		Cache cache3 = new MockCache();
+		CacheInvalidationBus bus1 = new CacheInvalidationBus(cache1, new LoopbackTransport(), 0, "secret");
+		CacheInvalidationBus bus2 = new CacheInvalidationBus(cache2, new LoopbackTransport(), 0, "secret");
+		CacheInvalidationBus bus3 = new CacheInvalidationBus(cache3, new LoopbackTransport(), 0, "other");
+		try {
+			cache2.put("app", "1", "one");
+			cache3.put("app", "1", "one");
+			bus1.invalidate("app", "1");
+			assertNull(cache2.get("app", "1"));
+			// a node with a different secret drops the message
+			assertNotNull(cache3.get("app", "1"));
+			assertEquals(1L, bus3.getStats().get("rejectedMessages"));
+			assertEquals(0L, bus2.getStats().get("rejectedMessages"));
+		} finally {
+			bus1.stop();
+			bus2.stop();
+			bus3.stop();
+		}
+		// network transports are not started without a secret
+		assertFalse(new CacheInvalidationBus(new MockCache(), new TcpTransport(), 0, null).isEnabled());
+		assertFalse(new CacheInvalidationBus(new MockCache(), new MulticastTransport(), 0, "").isEnabled());
+	}
+
+}
@@ -17,6 +17,14 @@
  */
 package com.erudika.para.cache;
 
+import com.erudika.para.core.Sysprop;
+import org.apache.commons.lang3.StringUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
 /**
  *
  * @author Alex Bogdanovski [alex@erudika.com]
@@ -27,4 +35,119 @@ public class CaffeineCacheTest extends CacheTest {
 		super(new CaffeineCache());
 	}
 
+	@Test
+	public void testPerEntryExpiry() throws InterruptedException {
+		Cache c = new CaffeineCache();
+		c.put("app", "ttl", "value", 1L);
+		c.put("app", "ttl2", "value", 1L);
+		c.put("app", "ttl2", "value2");
+		assertEquals("value", c.get("app", "ttl"));
+		Thread.sleep(1500);
+		assertNull(c.get("app", "ttl"));
+		// a put without TTL replaces the expiry of the previous entry
+		assertEquals("value2", c.get("app", "ttl2"));
+	}
+
+	@Test
+	public void testRemoveAllAndStats() {
+		CaffeineCache c = new CaffeineCache();
+		c.put("app1", "1", "one");
+		c.put("app1", "2", "two");
+		c.put("app2", "1", "one");
+		assertEquals("one", c.get("app1", "1"));
+		assertNull(c.get("app1", "3"));
+		assertEquals(Long.valueOf(1), c.getStats("app1").get("hits"));
+		assertEquals(Long.valueOf(1), c.getStats("app1").get("misses"));
+		assertEquals(Long.valueOf(2), c.getStats("app1").get("entries"));
+
+		c.removeAll("app1");
+		assertEquals(Long.valueOf(0), c.getStats("app1").get("entries"));
+		assertEquals(Long.valueOf(0), c.getStats("app1").get("bytes"));
+		assertNull(c.get("app1", "1"));
+		assertNotNull(c.get("app2", "1"));
+	}
+
+	@Test
+	public void testRemoveAllAfterReplaceAndRemove() {
+		CaffeineCache c = new CaffeineCache();
+		c.put("app1", "1", "one");
+		c.put("app1", "1", "uno"); // replaced entries stay indexed
+		c.put("app1", "2", "two");
+		c.remove("app1", "2");
+		c.put("app1", "2", "dos");
+		c.removeAll("app1");
+		assertNull(c.get("app1", "1"));
+		assertNull(c.get("app1", "2"));
+		assertEquals(Long.valueOf(0), c.getStats("app1").get("entries"));
+
+		c.put("app1", "1", "one");
+		c.removeAll("app1");
+		assertNull(c.get("app1", "1"));
+	}
+
+	@Test
+	public void testParaObjectsAreWeighedByTheirFields() {
+		CaffeineCache c = new CaffeineCache();
+		Sysprop small = new Sysprop("small");
+		Sysprop big = new Sysprop("big");
+		big.addProperty("text", StringUtils.repeat('x', 100 * 1024));
+		c.put("app1", small.getId(), small);
+		long smallBytes = c.getStats("app1").get("bytes");
+		assertTrue(smallBytes > 0);
+		c.put("app1", big.getId(), big);
+		assertTrue(c.getStats("app1").get("bytes") - smallBytes >= 200 * 1024);
+	}
+
+	@Test
+	public void testAppQuota() {
+		System.setProperty("para.caffeine.app_quota_mb", "1");
+		try {
+			CaffeineCache c = new CaffeineCache();
+			String big = StringUtils.repeat('x', 200 * 1024); // ~400KB
+			for (int i = 0; i < 5; i++) {
+				c.put("app1", "big" + i, big);
+			}
+			c.put("app2", "small", "small");
+			assertTrue(c.getStats("app1").get("evictions") > 0);
+			assertTrue(c.getStats("app1").get("bytes") <= 1024 * 1024);
+			assertEquals("small", c.get("app2", "small"));
+		} finally {
+			System.clearProperty("para.caffeine.app_quota_mb");
+		}
+	}
+
+	@Test
+	public void testAppQuotasShareTheOverallLimit() {
+		System.setProperty("para.caffeine.app_quota_mb", "1");
+		System.setProperty("para.caffeine.cache_max_mb", "1");
+		try {
+			CaffeineCache c = new CaffeineCache();
+			String big = StringUtils.repeat('x', 100 * 1024); // ~200KB
+			for (int i = 0; i < 4; i++) {
+				c.put("app1", "big" + i, big);
+				c.put("app2", "big" + i, big);
+			}
+			long total = c.getStats("app1").get("bytes") + c.getStats("app2").get("bytes");
+			assertTrue(total <= 1024 * 1024);
+			assertTrue(c.getStats("app1").get("evictions") + c.getStats("app2").get("evictions") > 0);
+		} finally {
+			System.clearProperty("para.caffeine.app_quota_mb");
+			System.clearProperty("para.caffeine.cache_max_mb");
+		}
+	}
+
+	@Test
+	public void testDeprecatedCacheSize() {
+		System.setProperty("para.caffeine.cache_size", "2");
+		try {
+			CaffeineCache c = new CaffeineCache();
+			for (int i = 0; i < 5; i++) {
+				c.put("app1", "key" + i, "value" + i);
+			}
+			assertTrue(c.getStats("app1").get("entries") <= 2);
+		} finally {
+			System.clearProperty("para.caffeine.cache_size");
+		}
+	}
+
 }
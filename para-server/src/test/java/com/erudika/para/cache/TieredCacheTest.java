@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.core.Sysprop;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class TieredCacheTest extends CacheTest {
+
+	public TieredCacheTest() {
+		super(new TieredCache(new CaffeineCache(), new OffHeapStore(1024 * 1024, 128, 2)));
+	}
+
+	@Test
+	public void testReadFromL2() {
+		CaffeineCache l1 = new CaffeineCache();
+		TieredCache c = new TieredCache(l1, new OffHeapStore(1024 * 1024, 128, 2));
+		Sysprop s = new Sysprop("sys1");
+		s.setName(StringUtils.repeat("name", 100));
+		s.addProperty("prop", "value");
+		c.put("app", s.getId(), s);
+		c.put("app", "str", "string", 60L);
+
+		// evicted from L1 only
+		l1.removeAll("app");
+		Sysprop fromL2 = c.get("app", s.getId());
+		assertNotNull(fromL2);
+		assertNotSame(s, fromL2);
+		assertEquals(s.getName(), fromL2.getName());
+		assertEquals("value", fromL2.getProperty("prop"));
+		assertEquals("string", c.get("app", "str"));
+		// promoted back to L1
+		assertNotNull(l1.get("app", s.getId()));
+
+		c.remove("app", s.getId());
+		assertNull(c.get("app", s.getId()));
+	}
+
+	@Test
+	public void testGetAllFromL2() {
+		CaffeineCache l1 = new CaffeineCache();
+		OffHeapStore store = new OffHeapStore(1024 * 1024, 128, 4);
+		TieredCache c = new TieredCache(l1, store);
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			c.put("app", "id" + i, "value" + i);
+			ids.add("id" + i);
+		}
+		l1.removeAll("app");
+		c.put("app", "id0", "value0");
+		ids.add("none");
+		Map<String, String> all = c.getAll("app", ids);
+		assertEquals(20, all.size());
+		assertEquals("id0", all.keySet().iterator().next());
+		assertEquals("value19", all.get("id19"));
+		assertEquals(Long.valueOf(19), store.getStats().get("hits"));
+		assertEquals(Long.valueOf(1), store.getStats().get("misses"));
+		assertEquals("value5", l1.get("app", "id5"));
+	}
+
+	@Test
+	public void testNegativeEntriesInL2() {
+		CaffeineCache l1 = new CaffeineCache();
+		TieredCache c = new TieredCache(l1, new OffHeapStore(1024 * 1024, 128, 2));
+		c.put("app", "gone", "value");
+		c.putMissing("app", "gone", 60L);
+		assertTrue(c.isMissing("app", "gone"));
+		assertNull(c.get("app", "gone"));
+
+		// evicted from L1 only
+		l1.removeAll("app");
+		assertTrue(c.isMissing("app", "gone"));
+		assertTrue(l1.isMissing("app", "gone"));
+		assertNull(c.get("app", "gone"));
+		assertFalse(c.isMissing("app", "other"));
+
+		c.put("app", "gone", "back");
+		assertFalse(c.isMissing("app", "gone"));
+		assertEquals("back", c.get("app", "gone"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOffHeapStoreCapacityIsValidated() {
+		new OffHeapStore(1024, 512, 4);
+	}
+
+	@Test
+	public void testOffHeapStoreEviction() {
+		OffHeapStore store = new OffHeapStore(1024, 128, 1);
+		store.put("app", "1", new byte[512], 0);
+		store.put("app", "2", new byte[256], 0);
+		assertNotNull(store.get("app", "1")); // "2" is now the least recently used
+		store.put("app", "3", new byte[384], 0);
+		assertNull(store.get("app", "2"));
+		assertEquals(512, store.get("app", "1").length);
+		assertEquals(384, store.get("app", "3").length);
+		assertFalse(store.put("app", "4", new byte[2048], 0));
+		assertEquals(Long.valueOf(1), store.getStats().get("evictions"));
+
+		store.removeAll("app");
+		assertEquals(Long.valueOf(0), store.getStats().get("entries"));
+		assertEquals(Long.valueOf(0), store.getStats().get("bytesUsed"));
+	}
+
+}
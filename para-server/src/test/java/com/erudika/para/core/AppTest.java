@@ -42,6 +42,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import org.junit.AfterClass;
 import static org.junit.Assert.*;
 import org.junit.BeforeClass;
@@ -385,4 +386,100 @@ public class AppTest {
 		assertFalse(app2.isDeniedExplicitly(u2.getId(), res2, "PUT"));
 	}
 
+	@Test
+	public void testIsAllowedWithLargePermissionSets() {
+		int size = 20000;
+		App app = new App();
+		Map<String, List<String>> perms = new HashMap<>(size);
+		for (int i = 0; i < size; i++) {
+			String res = String.format("res%06d", i);
+			if (i % 4 == 0) {
+				perms.put(res, Arrays.asList("GET"));
+			} else if (i % 4 == 1) {
+				perms.put(res + "/sub/*", Arrays.asList("PUT"));
+			} else if (i % 4 == 2) {
+				perms.put(res + "/items", Arrays.asList("POST"));
+			}
+		}
+		Map<String, Map<String, List<String>>> resourcePermissions = new HashMap<>();
+		resourcePermissions.put("user1", perms);
+		app.setResourcePermissions(resourcePermissions);
+
+		Random rand = new Random(42);
+		String[] suffixes = {"", "/1", "/sub/1", "/items", "/items/2"};
+		String[] methods = {"GET", "PUT", "POST", "DELETE"};
+		int checks = 5000;
+		String[] paths = new String[checks];
+		String[] pathMethods = new String[checks];
+		for (int i = 0; i < checks; i++) {
+			paths[i] = String.format("res%06d", rand.nextInt(size)) + suffixes[rand.nextInt(suffixes.length)];
+			pathMethods[i] = methods[rand.nextInt(methods.length)];
+		}
+
+		int allowed = 0;
+		for (int i = 0; i < checks; i++) {
+			boolean result = app.isAllowed("user1", paths[i], pathMethods[i]);
+			assertEquals(paths[i] + " " + pathMethods[i], isAllowedByScan(perms, paths[i], pathMethods[i]), result);
+			allowed += result ? 1 : 0;
+		}
+		assertTrue(allowed > 0);
+
+		// changes are picked up
+		String path = String.format("res%06d/3", 3);
+		assertFalse(app.isAllowed("user1", path, "DELETE"));
+		app.grantResourcePermission("user1", String.format("res%06d", 3), EnumSet.of(DELETE));
+		assertTrue(app.isAllowed("user1", path, "DELETE"));
+		app.revokeResourcePermission("user1", String.format("res%06d", 3));
+		assertFalse(app.isAllowed("user1", path, "DELETE"));
+	}
+
+	@Test
+	public void testIsAllowedMatchesPartialSegments() {
+		App app = new App();
+		Map<String, List<String>> perms = new HashMap<>();
+		perms.put("use", Arrays.asList("GET"));
+		perms.put("posts/", Arrays.asList("PUT"));
+		perms.put("/*", Arrays.asList("POST"));
+		perms.put("tags/a/*", Arrays.asList("DELETE"));
+		perms.put("tags/ab", Arrays.asList("PATCH"));
+		Map<String, Map<String, List<String>>> resourcePermissions = new HashMap<>();
+		resourcePermissions.put("user1", perms);
+		app.setResourcePermissions(resourcePermissions);
+
+		String[] paths = {"users/1", "use/1", "us/1", "posts/1", "posts/1/2", "postsx/1/2", "/1", "/a/b",
+			"tags/a/1", "tags/a", "tags/abc/1", "tags/ab", "tags/ab/1", "tags/abc", "tags/b/1"};
+		for (String path : paths) {
+			for (String method : new String[]{"GET", "PUT", "POST", "DELETE", "PATCH"}) {
+				assertEquals(path + " " + method, isAllowedByScan(perms, path, method), app.isAllowed("user1", path, method));
+			}
+		}
+		assertTrue(app.isAllowed("user1", "users/1", "GET"));
+		assertTrue(app.isAllowed("user1", "posts/1/2", "PUT"));
+		assertFalse(app.isAllowed("user1", "posts/1", "PUT"));
+		assertTrue(app.isAllowed("user1", "tags/abc/1", "PATCH"));
+		assertFalse(app.isAllowed("user2", "users/1", "GET"));
+	}
+
+	/**
+	 * The linear scan App.isAllowed used to do, for comparison.
+	 */
+	static boolean isAllowedByScan(Map<String, List<String>> perms, String resourcePath, String method) {
+		String exactPathToMatch = resourcePath;
+		if (resourcePath.contains("/")) {
+			String fragment = resourcePath.substring(0, resourcePath.lastIndexOf('/'));
+			for (String resource : perms.keySet()) {
+				if (fragment.startsWith(resource) && (perms.get(resource).contains(method) ||
+						perms.get(resource).contains(ALLOW_ALL))) {
+					return true;
+				}
+				if (resource.endsWith("/*") && resourcePath.startsWith(resource.substring(0, resource.length() - 1))) {
+					exactPathToMatch = resource;
+					break;
+				}
+			}
+		}
+		return perms.containsKey(exactPathToMatch) && (perms.get(exactPathToMatch).contains(method) ||
+				perms.get(exactPathToMatch).contains(ALLOW_ALL));
+	}
+
 }
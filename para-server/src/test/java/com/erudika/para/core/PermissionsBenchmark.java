@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ * Compares {@link App#isAllowed(java.lang.String, java.lang.String, java.lang.String)}, which matches paths
+ * against compiled permissions, with the linear scan it replaced, for increasing numbers of resources.
+ * Not run with the other tests - run it with:
+ * {@code mvn test -pl para-server -Dtest=PermissionsBenchmark -Dpara.benchmark=true}
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class PermissionsBenchmark {
+
+	private static final String[] SUFFIXES = {"", "/1", "/sub/1", "/items", "/items/2"};
+	private static final String[] METHODS = {"GET", "PUT", "POST", "DELETE"};
+	private static final int CHECKS = 20000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	@Test
+	public void benchmarkIsAllowed() {
+		assumeTrue(Boolean.getBoolean("para.benchmark"));
+		for (int size : new int[]{100, 1000, 10000, 50000}) {
+			Map<String, List<String>> perms = getPermissions(size);
+			App app = new App();
+			Map<String, Map<String, List<String>>> resourcePermissions = new HashMap<>();
+			resourcePermissions.put("user1", perms);
+			app.setResourcePermissions(resourcePermissions);
+
+			Random rand = new Random(42);
+			String[] paths = new String[CHECKS];
+			String[] methods = new String[CHECKS];
+			for (int i = 0; i < CHECKS; i++) {
+				paths[i] = String.format("res%06d", rand.nextInt(size)) + SUFFIXES[rand.nextInt(SUFFIXES.length)];
+				methods[i] = METHODS[rand.nextInt(METHODS.length)];
+			}
+			// the scan is much slower, fewer checks are enough to measure it
+			int scanChecks = Math.max(100, CHECKS * 100 / size);
+			long compiled = 0;
+			long scan = 0;
+			long allowed = 0;
+			for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < CHECKS; i++) {
+					allowed += app.isAllowed("user1", paths[i], methods[i]) ? 1 : 0;
+				}
+				long compiledTime = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < scanChecks; i++) {
+					allowed += AppTest.isAllowedByScan(perms, paths[i], methods[i]) ? 1 : 0;
+				}
+				long scanTime = System.nanoTime() - start;
+				if (round >= WARMUP_ROUNDS) {
+					compiled += compiledTime / CHECKS;
+					scan += scanTime / scanChecks;
+				}
+			}
+			// the results are used, so that the checks can't be optimized away
+			assertTrue(allowed > 0);
+			System.out.println(String.format("%6d resources: compiled %8d ns/check, scan %10d ns/check (%.0fx)",
+					size, compiled / ROUNDS, scan / ROUNDS, (double) scan / Math.max(1, compiled)));
+		}
+	}
+
+	private static Map<String, List<String>> getPermissions(int size) {
+		Map<String, List<String>> perms = new HashMap<>(size);
+		for (int i = 0; i < size; i++) {
+			String res = String.format("res%06d", i);
+			if (i % 4 == 0) {
+				perms.put(res, Arrays.asList("GET"));
+			} else if (i % 4 == 1) {
+				perms.put(res + "/sub/*", Arrays.asList("PUT"));
+			} else if (i % 4 == 2) {
+				perms.put(res + "/items", Arrays.asList("POST"));
+			}
+		}
+		return perms;
+	}
+}
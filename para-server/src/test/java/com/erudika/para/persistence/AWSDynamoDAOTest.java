@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.persistence;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.utils.Config;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class AWSDynamoDAOTest {
+
+	private static final String APPID = "dynamo-test";
+
+	private AmazonDynamoDB client;
+	private AWSDynamoDAO dao;
+
+	@Before
+	public void setUp() {
+		AWSDynamoUtils.shutdownClient();
+		System.setProperty("para.dynamodb.batch_concurrency", "2");
+		System.setProperty("para.dynamodb.retry_backoff_ms", "1");
+		System.setProperty("para.dynamodb.max_retries", "3");
+		client = mock(AmazonDynamoDB.class);
+		dao = new AWSDynamoDAO() {
+			AmazonDynamoDB client() {
+				return client;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		AWSDynamoUtils.shutdownClient();
+		System.clearProperty("para.dynamodb.batch_concurrency");
+		System.clearProperty("para.dynamodb.retry_backoff_ms");
+		System.clearProperty("para.dynamodb.max_retries");
+	}
+
+	@Test
+	public void testExecuteWithBackoff() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+		assertEquals("ok", AWSDynamoUtils.executeWithBackoff(new Callable<String>() {
+			public String call() {
+				if (attempts.incrementAndGet() < 3) {
+					throw new ProvisionedThroughputExceededException("throttled");
+				}
+				return "ok";
+			}
+		}));
+		assertEquals(3, attempts.get());
+
+		// gives up after the last retry
+		attempts.set(0);
+		try {
+			AWSDynamoUtils.executeWithBackoff(new Callable<String>() {
+				public String call() {
+					attempts.incrementAndGet();
+					throw new ProvisionedThroughputExceededException("throttled");
+				}
+			});
+			fail("throttling should have been rethrown");
+		} catch (ProvisionedThroughputExceededException e) {
+			assertEquals(4, attempts.get());
+		}
+
+		// other errors are not retried
+		attempts.set(0);
+		try {
+			AWSDynamoUtils.executeWithBackoff(new Callable<String>() {
+				public String call() {
+					attempts.incrementAndGet();
+					AmazonServiceException e = new AmazonServiceException("invalid");
+					e.setErrorCode("ValidationException");
+					e.setStatusCode(400);
+					throw e;
+				}
+			});
+			fail("error should have been rethrown");
+		} catch (AmazonServiceException e) {
+			assertEquals(1, attempts.get());
+		}
+	}
+
+	@Test
+	public void testUpdateAllIsBoundedAndReportsFailures() {
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final AtomicInteger throttled = new AtomicInteger();
+		when(client.updateItem(any(UpdateItemRequest.class))).thenAnswer(new Answer<UpdateItemResult>() {
+			public UpdateItemResult answer(InvocationOnMock invocation) throws Exception {
+				String key = ((UpdateItemRequest) invocation.getArgument(0)).getKey().get(Config._KEY).getS();
+				int now = active.incrementAndGet();
+				maxActive.accumulateAndGet(now, Math::max);
+				try {
+					Thread.sleep(20);
+					if ("3".equals(key)) {
+						throw new AmazonServiceException("failed");
+					}
+					if ("5".equals(key) && throttled.getAndIncrement() == 0) {
+						throw new ProvisionedThroughputExceededException("throttled");
+					}
+					return new UpdateItemResult();
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		});
+		List<Sysprop> objects = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			objects.add(new Sysprop(Integer.toString(i)));
+		}
+		List<String> failed = dao.updateItems(APPID, objects);
+		assertEquals(Collections.singletonList("3"), failed);
+		assertTrue(maxActive.get() <= 2);
+		// 8 updates and one retry after throttling
+		verify(client, times(9)).updateItem(any(UpdateItemRequest.class));
+	}
+
+	@Test
+	public void testUpdateAllRetriesFailuresOnce() {
+		when(client.updateItem(any(UpdateItemRequest.class))).thenAnswer(new Answer<UpdateItemResult>() {
+			public UpdateItemResult answer(InvocationOnMock invocation) {
+				String key = ((UpdateItemRequest) invocation.getArgument(0)).getKey().get(Config._KEY).getS();
+				if ("1".equals(key)) {
+					throw new AmazonServiceException("failed");
+				}
+				return new UpdateItemResult();
+			}
+		});
+		List<Sysprop> objects = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			objects.add(new Sysprop(Integer.toString(i)));
+		}
+		dao.updateAll(APPID, objects);
+		// 3 updates and one retry of the failed one
+		verify(client, times(4)).updateItem(any(UpdateItemRequest.class));
+	}
+
+	@Test
+	public void testUnprocessedKeysAreRetriedLimitedTimes() throws Exception {
+		when(client.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(new Answer<BatchGetItemResult>() {
+			public BatchGetItemResult answer(InvocationOnMock invocation) {
+				// nothing is ever processed
+				return new BatchGetItemResult().withResponses(Collections.emptyMap()).
+						withUnprocessedKeys(((BatchGetItemRequest) invocation.getArgument(0)).getRequestItems());
+			}
+		});
+		Map<String, AttributeValue> key = Collections.singletonMap(Config._KEY, new AttributeValue("k1"));
+		try {
+			dao.readBatch("table", new KeysAndAttributes().withKeys(Collections.singletonList(key)),
+					new HashMap<String, ParaObject>());
+			fail("unprocessed keys should have been reported");
+		} catch (IllegalStateException e) {
+			// the first request and 3 retries
+			verify(client, times(4)).batchGetItem(any(BatchGetItemRequest.class));
+		}
+	}
+
+	@Test
+	public void testReadAllInBatches() {
+		when(client.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(new Answer<BatchGetItemResult>() {
+			public BatchGetItemResult answer(InvocationOnMock invocation) {
+				Map<String, KeysAndAttributes> items = ((BatchGetItemRequest) invocation.getArgument(0)).getRequestItems();
+				String table = items.keySet().iterator().next();
+				List<Map<String, AttributeValue>> rows = new ArrayList<>();
+				for (Map<String, AttributeValue> key : items.get(table).getKeys()) {
+					String id = key.get(Config._KEY).getS();
+					if ("k150".equals(id)) {
+						throw new AmazonServiceException("failed");
+					}
+					Map<String, AttributeValue> row = new HashMap<>();
+					row.put(Config._ID, new AttributeValue(id));
+					row.put(Config._TYPE, new AttributeValue("sysprop"));
+					rows.add(row);
+				}
+				return new BatchGetItemResult().withResponses(Collections.singletonMap(table, rows));
+			}
+		});
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 250; i++) {
+			keys.add(String.format("k%03d", i));
+		}
+		Map<String, ParaObject> results = dao.readAll(APPID, keys, true);
+		verify(client, times(3)).batchGetItem(any(BatchGetItemRequest.class));
+		assertEquals(250, results.size());
+		// the second batch (k100-k199) failed, the others are still returned
+		for (int i = 0; i < 250; i++) {
+			String key = String.format("k%03d", i);
+			if (i >= 100 && i < 200) {
+				assertNull(results.get(key));
+			} else {
+				assertNotNull(results.get(key));
+				assertEquals(key, results.get(key).getId());
+			}
+		}
+	}
+}
@@ -17,9 +17,20 @@
  */
 package com.erudika.para.persistence;
 
+import com.erudika.para.core.Sysprop;
 import com.erudika.para.utils.Config;
+import com.erudika.para.utils.Pager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 /**
  *
@@ -28,6 +39,7 @@ import org.junit.BeforeClass;
 public class H2DAOIT extends DAOTest {
 
 	private static final String ROOT_APP_NAME = "para-test";
+	private static final String PAGING_APPID = "paging-test";
 
 	public H2DAOIT() {
 		super(new H2DAO());
@@ -40,6 +52,7 @@ public class H2DAOIT extends DAOTest {
 		H2Utils.createTable(appid1);
 		H2Utils.createTable(appid2);
 		H2Utils.createTable(appid3);
+		H2Utils.createTable(PAGING_APPID);
 	}
 
 	@AfterClass
@@ -48,6 +61,96 @@ public class H2DAOIT extends DAOTest {
 		H2Utils.deleteTable(appid1);
 		H2Utils.deleteTable(appid2);
 		H2Utils.deleteTable(appid3);
+		H2Utils.deleteTable(PAGING_APPID);
+	}
+
+	@Test
+	public void testScanRowsByKeyAndByPage() {
+		List<Sysprop> list = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			list.add(new Sysprop("scan_" + (100 + i)));
+		}
+		H2Utils.createRows(PAGING_APPID, list);
+
+		Pager byKey = new Pager(10);
+		assertEquals("scan_100", H2Utils.scanRows(PAGING_APPID, byKey).get(0).getId());
+		assertEquals("scan_109", byKey.getLastKey());
+		assertEquals("scan_110", H2Utils.scanRows(PAGING_APPID, byKey).get(0).getId());
+		assertEquals(5, H2Utils.scanRows(PAGING_APPID, byKey).size());
+		assertEquals(0, H2Utils.scanRows(PAGING_APPID, byKey).size());
+		assertEquals(25, byKey.getCount());
+
+		Pager byPage = new Pager(3, 10);
+		List<Sysprop> page3 = H2Utils.scanRows(PAGING_APPID, byPage);
+		assertEquals(5, page3.size());
+		assertEquals("scan_120", page3.get(0).getId());
+	}
+
+	@Test
+	public void testFindTerms() {
+		List<Sysprop> list = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			Sysprop s = new Sysprop("find_" + i);
+			s.setType("findtest");
+			s.setParentid(i % 2 == 0 ? "even" : "odd");
+			s.setTimestamp(1000L + i);
+			list.add(s);
+		}
+		H2Utils.createRows(PAGING_APPID, list);
+		H2DAO dao = new H2DAO();
+
+		Map<String, Object> terms = new HashMap<>();
+		terms.put(Config._PARENTID, "even");
+		Pager p = new Pager();
+		List<Sysprop> evens = dao.findTerms(PAGING_APPID, "findtest", terms, true, p);
+		assertEquals(3, evens.size());
+		assertEquals(3, p.getCount());
+		assertEquals("find_4", evens.get(0).getId()); // newest first
+
+		terms.put(Config._TIMESTAMP + " >", 1002L);
+		assertEquals(1, dao.findTerms(PAGING_APPID, "findtest", terms, true).size());
+		assertEquals(5, dao.findTerms(PAGING_APPID, "findtest", terms, false).size());
+
+		assertEquals(2, dao.findTermInList(PAGING_APPID, "findtest", Config._ID,
+				Arrays.asList("find_1", "find_3", "missing")).size());
+		assertNull(dao.findTerms(PAGING_APPID, "findtest", Collections.singletonMap("prop", "x"), true));
+	}
+
+	@Test
+	public void testFindTermsPaging() {
+		List<Sysprop> list = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			Sysprop s = new Sysprop("page_" + i);
+			s.setType("pagetest");
+			s.setParentid("parent");
+			s.setTimestamp(2000L + i / 2); // pairs of rows share a timestamp
+			list.add(s);
+		}
+		H2Utils.createRows(PAGING_APPID, list);
+		H2DAO dao = new H2DAO();
+		Map<String, Object> terms = Collections.singletonMap(Config._PARENTID, "parent");
+
+		Pager byKey = new Pager(3);
+		List<String> ids = new ArrayList<>();
+		List<Sysprop> page;
+		while (!(page = dao.findTerms(PAGING_APPID, "pagetest", terms, true, byKey)).isEmpty()) {
+			for (Sysprop s : page) {
+				ids.add(s.getId());
+			}
+			// the total number of matching rows on every page
+			assertEquals(7, byKey.getCount());
+		}
+		assertEquals(Arrays.asList("page_6", "page_5", "page_4", "page_3", "page_2", "page_1", "page_0"), ids);
+		assertEquals("page_0", byKey.getLastKey());
+		assertEquals(7, byKey.getCount());
+
+		Pager byPage = new Pager(2, Config._TIMESTAMP, false, 3);
+		List<Sysprop> page2 = dao.findTerms(PAGING_APPID, "pagetest", terms, true, byPage);
+		assertEquals(3, page2.size());
+		assertEquals("page_3", page2.get(0).getId());
+		assertEquals(7, byPage.getCount());
+		assertEquals("page_5", byPage.getLastKey());
+		assertEquals("page_6", dao.findTerms(PAGING_APPID, "pagetest", terms, true, byPage).get(0).getId());
 	}
 
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.search;
+
+import com.erudika.para.core.App;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.core.utils.ParaObjectUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexableField;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class IndexMappingTest {
+
+	@Test
+	public void testParse() {
+		assertNull(IndexMapping.FieldMapping.parse(null));
+		assertNull(IndexMapping.FieldMapping.parse(""));
+		assertNull(IndexMapping.FieldMapping.parse("blob"));
+		assertNull(IndexMapping.FieldMapping.parse("text,keyword"));
+		assertEquals(IndexMapping.Kind.TEXT, IndexMapping.FieldMapping.parse("text").getKind());
+		assertFalse(IndexMapping.FieldMapping.parse("text").isSortable());
+		assertTrue(IndexMapping.FieldMapping.parse("Keyword, sortable").isSortable());
+		assertEquals(IndexMapping.Kind.DOUBLE, IndexMapping.FieldMapping.parse("numeric").getKind());
+		assertTrue(IndexMapping.FieldMapping.parse("long,sortable").isNumeric());
+		assertNull(IndexMapping.FieldMapping.parse("sortable").getKind());
+		assertFalse(IndexMapping.FieldMapping.parse("none,sortable").isSortable());
+	}
+
+	@Test
+	public void testFromApp() {
+		assertSame(IndexMapping.DEFAULT, IndexMapping.fromApp(null));
+		App app = new App("test");
+		assertSame(IndexMapping.DEFAULT, IndexMapping.fromApp(app));
+
+		IndexMapping mapping = IndexMapping.fromApp(app.addSetting(IndexMapping.SETTING, mapping()));
+		// type specific, then all types
+		assertEquals(IndexMapping.Kind.LONG, mapping.get("product", "properties.price").getKind());
+		assertEquals(IndexMapping.Kind.TEXT, mapping.get("product", "properties.description").getKind());
+		assertEquals(IndexMapping.Kind.TEXT, mapping.get(null, "properties.description").getKind());
+		assertNull(mapping.get(null, "properties.price"));
+		// wildcards don't apply to core fields, which can still be mapped explicitly
+		assertEquals(IndexMapping.Kind.NONE, mapping.get("product", "properties.blob").getKind());
+		assertNull(mapping.get("product", "timestamp"));
+		assertEquals(IndexMapping.Kind.TEXT, mapping.get("product", "name").getKind());
+		assertNull(mapping.getObjectMapping("product", "properties"));
+		assertEquals(IndexMapping.Kind.NONE, mapping.get("product", "properties").getKind());
+		// reserved fields can't be mapped
+		assertNull(mapping.get("product", "id"));
+		assertNull(mapping.get("product", "type"));
+		// invalid specs are ignored
+		assertEquals(IndexMapping.Kind.NONE, mapping.get("product", "properties.color").getKind());
+	}
+
+	@Test
+	public void testDocumentHonorsMapping() {
+		Sysprop s = new Sysprop("123");
+		s.setType("product");
+		s.setName("Phone");
+		s.setTimestamp(System.currentTimeMillis());
+		s.addProperty("description", "A phone");
+		s.addProperty("price", 150);
+		s.addProperty("blob", "lots of text");
+		s.addProperty("sku", "X-1");
+
+		Document noMapping = LuceneUtils.paraObjectToDocument(ParaObjectUtils.getAnnotatedFieldsAsTree(s),
+				IndexMapping.DEFAULT, new ConcurrentHashMap<>(), new ArrayList<>());
+		assertNotNull(noMapping.getField("properties.blob"));
+		assertEquals(DocValuesType.SORTED, docValuesType(noMapping, "properties.price"));
+		assertEquals(DocValuesType.SORTED, docValuesType(noMapping, "properties.description"));
+		assertEquals(DocValuesType.SORTED_NUMERIC, docValuesType(noMapping, "timestamp"));
+		assertTrue(hasPoints(noMapping, "timestamp"));
+		assertEquals(s.getTimestamp().toString(), noMapping.get("timestamp"));
+
+		Document doc = LuceneUtils.paraObjectToDocument(ParaObjectUtils.getAnnotatedFieldsAsTree(s),
+				IndexMapping.fromApp(new App("test").addSetting(IndexMapping.SETTING, mapping())), new ConcurrentHashMap<>(),
+				new ArrayList<>());
+		assertNull(doc.getField("properties.blob"));
+		assertEquals(DocValuesType.SORTED_NUMERIC, docValuesType(doc, "properties.price"));
+		assertTrue(hasPoints(doc, "properties.price"));
+		assertNull(docValuesType(doc, "properties.description"));
+		assertNotNull(doc.getField("properties.description"));
+		assertEquals(DocValuesType.SORTED, docValuesType(doc, "properties.sku"));
+		assertEquals(DocValuesType.SORTED_NUMERIC, docValuesType(doc, "timestamp"));
+		assertEquals("123", doc.get("id"));
+		assertEquals("product", doc.get("type"));
+		assertNotNull(doc.get("_source"));
+
+		// indexes created before timestamps were numeric keep their string doc values until rebuilt
+		Map<String, DocValuesType> legacy = new ConcurrentHashMap<>();
+		legacy.put("timestamp", DocValuesType.SORTED);
+		Document old = LuceneUtils.paraObjectToDocument(ParaObjectUtils.getAnnotatedFieldsAsTree(s),
+				IndexMapping.DEFAULT, legacy, new ArrayList<>());
+		assertEquals(DocValuesType.SORTED, docValuesType(old, "timestamp"));
+		assertFalse(hasPoints(old, "timestamp"));
+	}
+
+	private static Map<String, Object> mapping() {
+		Map<String, Object> all = new HashMap<>();
+		all.put("properties.description", "text");
+		Map<String, Object> product = new HashMap<>();
+		product.put("properties.price", "long,sortable");
+		product.put("properties.color", "blue");
+		product.put("name", "text");
+		product.put("id", "none");
+		product.put("type", "none");
+		product.put("*", "none");
+		product.put("properties.sku", "keyword,sortable");
+		Map<String, Object> mapping = new HashMap<>();
+		mapping.put("*", all);
+		mapping.put("product", product);
+		return mapping;
+	}
+
+	private static DocValuesType docValuesType(Document doc, String field) {
+		for (IndexableField f : doc.getFields(field)) {
+			if (f.fieldType().docValuesType() != DocValuesType.NONE) {
+				return f.fieldType().docValuesType();
+			}
+		}
+		return null;
+	}
+
+	private static boolean hasPoints(Document doc, String field) {
+		for (IndexableField f : doc.getFields(field)) {
+			if (f.fieldType().pointDimensionCount() > 0 && f.fieldType().indexOptions() == IndexOptions.NONE) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -17,18 +17,40 @@
  */
 package com.erudika.para.search;
 
+import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
 import com.erudika.para.persistence.DAO;
 import static com.erudika.para.search.SearchTest.u;
 import com.erudika.para.utils.Config;
+import com.erudika.para.utils.Pager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.FSDirectory;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  *
@@ -71,4 +93,222 @@ public class LuceneSearchIT extends SearchTest {
 		assertEquals(u.getId(), res2.get(0).getId());
 	}
 
+	@Test
+	public void testNumericTermRanges() {
+		String appid = "numeric-terms";
+		Sysprop s1 = new Sysprop("nt1");
+		Sysprop s2 = new Sysprop("nt2");
+		Sysprop s3 = new Sysprop("nt3");
+		s1.setVotes(9);
+		s2.setVotes(10);
+		s3.setVotes(100);
+		s.indexAll(appid, Arrays.asList(s1, s2, s3));
+
+		// as strings, "10" and "100" are smaller than "9"
+		assertEquals(2, s.findTerms(appid, s1.getType(), Collections.singletonMap("votes >", 9), true).size());
+		assertEquals(3, s.findTerms(appid, s1.getType(), Collections.singletonMap("votes >=", 9), true).size());
+		assertEquals(1, s.findTerms(appid, s1.getType(), Collections.singletonMap("votes <", 10), true).size());
+		assertEquals(2, s.findTerms(appid, s1.getType(), Collections.singletonMap("votes <=", 10), true).size());
+		assertEquals(0, s.findTerms(appid, s1.getType(), Collections.singletonMap("votes >", Long.MAX_VALUE),
+				true).size());
+		assertEquals(2, s.getCount(appid, s1.getType(), Collections.singletonMap("votes >", 9)).intValue());
+		s.unindexAll(appid, Arrays.asList(s1, s2, s3));
+	}
+
+	@Test
+	public void testSharedSearcherRefresh() throws Exception {
+		final String appid = "refresh-test";
+		Sysprop s1 = new Sysprop("rf1");
+		Sysprop s2 = new Sysprop("rf2");
+		Sysprop s3 = new Sysprop("rf3");
+		s.index(appid, s1);
+		long generation = LuceneUtils.getSearcherGeneration(appid);
+		assertTrue(generation > 0);
+		// the searcher is shared and only reopened when the index changes
+		assertEquals(generation, LuceneUtils.getSearcherGeneration(appid));
+		assertNotNull(s.findById(appid, s1.getId()));
+		assertEquals(generation, LuceneUtils.getSearcherGeneration(appid));
+
+		// by default, searches see the writes made before them
+		s.index(appid, s2);
+		assertNotNull(s.findById(appid, s2.getId()));
+		assertTrue(LuceneUtils.getSearcherGeneration(appid) > generation);
+
+		// otherwise writes become visible when the searcher is refreshed in the background
+		System.setProperty("para.lucene.max_staleness_ms", "60000");
+		try {
+			s.index(appid, s3);
+			long deadline = System.currentTimeMillis() + 10000;
+			while (s.findById(appid, s3.getId()) == null && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			assertNotNull(s.findById(appid, s3.getId()));
+		} finally {
+			System.clearProperty("para.lucene.max_staleness_ms");
+			s.unindexAll(appid, Arrays.asList(s1, s2, s3));
+		}
+	}
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		final String appid = "group-commit-test";
+		Sysprop s0 = new Sysprop("gc0");
+		Sysprop s1 = new Sysprop("gc1");
+		Sysprop s2 = new Sysprop("gc2");
+		Sysprop s3 = new Sysprop("gc3");
+		s.index(appid, s0);
+		assertEquals(1, countCommitted(appid));
+
+		System.setProperty("para.lucene.async_commit", "true");
+		System.setProperty("para.lucene.commit_max_docs", "3");
+		System.setProperty("para.lucene.commit_interval_ms", "600000");
+		try {
+			// changes are visible to searches before they are committed
+			s.indexAll(appid, Arrays.asList(s1, s2));
+			assertNotNull(s.findById(appid, s1.getId()));
+			assertEquals(1, countCommitted(appid));
+			// the pending changes are committed together once there are enough of them
+			s.index(appid, s3);
+			assertEquals(4, countCommitted(appid));
+		} finally {
+			System.clearProperty("para.lucene.async_commit");
+			System.clearProperty("para.lucene.commit_max_docs");
+			System.clearProperty("para.lucene.commit_interval_ms");
+			s.unindexAll(appid, Arrays.asList(s0, s1, s2, s3));
+		}
+	}
+
+	@Test
+	public void testIndexIsSortedByTimestamp() throws Exception {
+		final String appid = "index-sort-test";
+		List<Sysprop> list = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Sysprop obj = new Sysprop("is" + i);
+			obj.setTimestamp(1000L + i);
+			list.add(obj);
+		}
+		try {
+			s.indexAll(appid, list.subList(0, 3));
+			s.indexAll(appid, list.subList(3, 5));
+			try (FSDirectory dir = FSDirectory.open(LuceneUtils.getIndexPath(appid));
+					DirectoryReader reader = DirectoryReader.open(dir)) {
+				assertNotNull(LuceneUtils.getIndexSort(dir));
+				for (LeafReaderContext leaf : reader.leaves()) {
+					assertEquals(LuceneUtils.getIndexSort(dir), leaf.reader().getMetaData().getSort());
+				}
+			}
+			// the newest objects are found first, even though collection stops early in each segment
+			Pager p = new Pager(2);
+			p.setTrackTotalHits(2);
+			List<ParaObject> newest = s.findQuery(appid, null, "*", p);
+			assertEquals(Arrays.asList("is4", "is3"), Arrays.asList(newest.get(0).getId(), newest.get(1).getId()));
+			assertEquals(2, p.getCount());
+		} finally {
+			s.unindexAll(appid, list);
+		}
+	}
+
+	private static int countCommitted(String appid) throws Exception {
+		try (FSDirectory dir = FSDirectory.open(LuceneUtils.getIndexPath(appid));
+				DirectoryReader reader = DirectoryReader.open(dir)) {
+			return reader.numDocs();
+		}
+	}
+
+	@Test
+	public void testRebuildIndexKeepsConcurrentWrites() throws Exception {
+		final String appid = "rebuild-test";
+		final Sysprop deleted = new Sysprop("rb1");
+		final Sysprop updated = new Sysprop("rb2");
+		final Sysprop untouched = new Sysprop("rb3");
+		deleted.setName("deleted");
+		updated.setName("old name");
+		untouched.setName("untouched");
+		s.indexAll(appid, Arrays.asList(deleted, updated, untouched));
+
+		final CountDownLatch scanned = new CountDownLatch(1);
+		final CountDownLatch resume = new CountDownLatch(1);
+		final AtomicInteger pages = new AtomicInteger();
+		DAO dao = mock(DAO.class);
+		when(dao.readPage(eq(appid), any(Pager.class))).thenAnswer((i) -> {
+			if (pages.getAndIncrement() == 0) {
+				return Arrays.asList(deleted, updated, untouched);
+			}
+			// hold the rebuild until the objects it has already read are changed
+			scanned.countDown();
+			resume.await(10, TimeUnit.SECONDS);
+			return Collections.emptyList();
+		});
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> rebuild = executor.submit(() -> s.rebuildIndex(dao, appid));
+			assertTrue(scanned.await(10, TimeUnit.SECONDS));
+			s.unindex(appid, deleted);
+			Sysprop updated2 = new Sysprop(updated.getId());
+			updated2.setName("new name");
+			s.index(appid, updated2);
+			resume.countDown();
+			assertTrue(rebuild.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertNull(s.findById(appid, deleted.getId()));
+		assertEquals("new name", s.findById(appid, updated.getId()).getName());
+		assertNotNull(s.findById(appid, untouched.getId()));
+		assertEquals(2L, s.getCount(appid, null).longValue());
+		s.unindexAll(appid, Arrays.asList(updated, untouched));
+	}
+
+	@Test
+	public void testSearchersOpenDuringRebuildAreClosed() {
+		final String appid = "rebuild-release-test";
+		final Sysprop obj = new Sysprop("rr1");
+		s.index(appid, obj);
+		final AtomicInteger pages = new AtomicInteger();
+		DAO dao = mock(DAO.class);
+		when(dao.readPage(eq(appid), any(Pager.class))).thenAnswer((i) ->
+				(pages.getAndIncrement() == 0) ? Arrays.asList(obj) : Collections.emptyList());
+
+		IndexSearcher old = LuceneUtils.acquireIndexSearcher(appid);
+		assertNotNull(old);
+		assertTrue(s.rebuildIndex(dao, appid));
+		// the reader of the replaced index stays open until the search using it is done
+		assertTrue(old.getIndexReader().getRefCount() > 0);
+		LuceneUtils.releaseIndexSearcher(old);
+		assertEquals(0, old.getIndexReader().getRefCount());
+		assertNotNull(s.findById(appid, obj.getId()));
+		s.unindex(appid, obj);
+	}
+
+	@Test
+	public void testSortFieldsStayNumericWhenMappedAsStrings() {
+		final String appid = "sorted-mapping-test";
+		Map<String, Object> fields = new HashMap<>();
+		fields.put(Config._TIMESTAMP, "keyword,sortable");
+		App app = new App(appid);
+		app.addSetting(IndexMapping.SETTING, Collections.singletonMap("*", fields));
+		final Sysprop older = new Sysprop("sm1");
+		final Sysprop newer = new Sysprop("sm2");
+		older.setTimestamp(1000L);
+		newer.setTimestamp(2000L);
+		final AtomicInteger pages = new AtomicInteger();
+		DAO dao = mock(DAO.class);
+		when(dao.<App>read(Config.getRootAppIdentifier(), App.id(appid))).thenReturn(app);
+		when(dao.readPage(eq(appid), any(Pager.class))).thenAnswer((i) ->
+				(pages.getAndIncrement() == 0) ? Arrays.asList(older, newer) : Collections.emptyList());
+
+		// the index is sorted by timestamp, string doc values for it would fail every document
+		assertTrue(s.rebuildIndex(dao, appid));
+		Sysprop newest = new Sysprop("sm3");
+		newest.setTimestamp(3000L);
+		s.index(appid, newest);
+		assertEquals(3L, s.getCount(appid, null).longValue());
+		List<ParaObject> all = s.findQuery(appid, null, "*");
+		assertEquals(Arrays.asList(newest.getId(), newer.getId(), older.getId()),
+				Arrays.asList(all.get(0).getId(), all.get(1).getId(), all.get(2).getId()));
+		s.unindexAll(appid, Arrays.asList(older, newer, newest));
+	}
+
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.search;
+
+import com.erudika.para.utils.Pager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class SearchResultCacheTest {
+
+	@Test
+	public void testGetAndPut() {
+		SearchResultCache cache = new SearchResultCache(1024 * 1024);
+		Pager p1 = new Pager(1, "name", true, 2);
+		SearchResultCache.Key key = cache.key("app1", "user", " name:alice ", p1);
+		assertNull(cache.get(key, 1, p1));
+		p1.setCount(5);
+		p1.setLastKey("cursor1");
+		cache.put(key, 1, Arrays.asList("1", "2"), p1);
+
+		// same query, differently formatted, on a fresh pager
+		Pager p2 = new Pager(1, "name", true, 2);
+		List<String> ids = cache.get(cache.key("app1", "user", "name:alice", p2), 1, p2);
+		assertEquals(Arrays.asList("1", "2"), ids);
+		assertEquals(5, p2.getCount());
+		assertEquals("cursor1", p2.getLastKey());
+
+		// a different page, type or app is a different key
+		assertNull(cache.get(cache.key("app1", "user", "name:alice", new Pager(2, "name", true, 2)), 1, null));
+		assertNull(cache.get(cache.key("app1", "tag", "name:alice", new Pager(1, "name", true, 2)), 1, null));
+		assertNull(cache.get(cache.key("app2", "user", "name:alice", new Pager(1, "name", true, 2)), 1, null));
+
+		Map<String, Object> stats = cache.getStats().get("app1").get("QueryString");
+		assertEquals(1L, stats.get("hits"));
+		assertEquals(3L, stats.get("misses"));
+		assertEquals(0.25, (Double) stats.get("hitRatio"), 0.001);
+	}
+
+	@Test
+	public void testQueriesAreComparedByValue() {
+		SearchResultCache cache = new SearchResultCache(1024 * 1024);
+		BooleanQuery q1 = new BooleanQuery.Builder().
+				add(new TermQuery(new Term("tags", "a")), BooleanClause.Occur.MUST).
+				add(new TermQuery(new Term("tags", "b")), BooleanClause.Occur.MUST).build();
+		BooleanQuery q2 = new BooleanQuery.Builder().
+				add(new TermQuery(new Term("tags", "b")), BooleanClause.Occur.MUST).
+				add(new TermQuery(new Term("tags", "a")), BooleanClause.Occur.MUST).build();
+		cache.put(cache.key("app1", null, q1, new Pager()), 1, Arrays.asList("1"), new Pager());
+		assertEquals(Arrays.asList("1"), cache.get(cache.key("app1", null, q2, new Pager()), 1, null));
+		assertTrue(cache.getStats().get("app1").containsKey("BooleanQuery"));
+	}
+
+	@Test
+	public void testNewSearcherGenerationInvalidates() {
+		SearchResultCache cache = new SearchResultCache(1024 * 1024);
+		SearchResultCache.Key key = cache.key("app1", null, "*", new Pager());
+		assertNull(cache.get(key, 1, null));
+		cache.put(key, 1, Arrays.asList("1"), new Pager());
+		assertNotNull(cache.get(key, 1, null));
+		// the index has changed
+		assertNull(cache.get(key, 2, null));
+		assertNull(cache.get(key, 1, null));
+		// results from an older searcher are not cached
+		cache.put(key, 1, Arrays.asList("1"), new Pager());
+		assertNull(cache.get(key, 2, null));
+		cache.put(key, 2, Arrays.asList("1", "2"), new Pager());
+		assertEquals(Arrays.asList("1", "2"), cache.get(key, 2, null));
+	}
+
+	@Test
+	public void testCounts() {
+		SearchResultCache cache = new SearchResultCache(1024 * 1024);
+		TermQuery query = new TermQuery(new Term("type", "user"));
+		SearchResultCache.Key key = cache.countKey("app1", query);
+		assertNull(cache.getCount(key, 1));
+		cache.putCount(key, 1, 42);
+		assertEquals(Long.valueOf(42), cache.getCount(cache.countKey("app1", new TermQuery(new Term("type", "user"))), 1));
+		// counts and searches for the same query don't share entries
+		assertNull(cache.get(cache.key("app1", null, query, null), 1, null));
+		assertNull(cache.getCount(cache.countKey("app2", query), 1));
+		// the index has changed
+		assertNull(cache.getCount(key, 2));
+		assertEquals(1L, cache.getStats().get("app1").get("Count").get("hits"));
+	}
+
+	@Test
+	public void testDisabled() {
+		SearchResultCache cache = new SearchResultCache(0);
+		assertFalse(cache.isEnabled());
+		SearchResultCache.Key key = cache.key("app1", null, "*", new Pager());
+		cache.put(key, 1, Arrays.asList("1"), new Pager());
+		assertNull(cache.get(key, 1, null));
+		assertTrue(cache.getStats().isEmpty());
+	}
+}
@@ -32,8 +32,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Ignore;
@@ -294,6 +296,25 @@ public abstract class SearchTest {
 		assertFalse(s.findWildcard(u.getType(), Config._NAME, "An*").isEmpty());
 	}
 
+	@Test
+	public void testFindRange() {
+		assertTrue(s.findRange(u.getType(), null, null, null).isEmpty());
+		assertTrue(s.findRange(u.getType(), Config._TIMESTAMP, null, " ").isEmpty());
+
+		List<User> old = s.findRange(u.getType(), Config._TIMESTAMP, null, "1000000000");
+		assertEquals(1, old.size());
+		assertEquals(u.getId(), old.get(0).getId());
+
+		long hourAgo = Utils.timestamp() - 3600000;
+		List<User> recent = s.findRange(u.getType(), Config._TIMESTAMP, Long.toString(hourAgo), null);
+		assertEquals(2, recent.size());
+		assertFalse(recent.contains(u));
+		// bounds are compared as numbers, "999" sorts after "1000000000" as a string
+		assertEquals(3, s.findRange(u.getType(), Config._TIMESTAMP, "999", null).size());
+		assertTrue(s.findRange(appid1, u.getType(), Config._TIMESTAMP, "999", null).isEmpty());
+		assertEquals(1, s.findRange(u.getType(), Config._NAME, "A", "B").size());
+	}
+
 	@Test
 	public void testGetCount() {
 		assertTrue(s.getCount(null).intValue() > 4);
@@ -436,6 +457,35 @@ public abstract class SearchTest {
 		assertNotNull(s.findById(sp3.getId()));
 	}
 
+	@Test
+	public void testTrackTotalHits() {
+		Pager exact = new Pager(1);
+		assertEquals(1, s.findQuery(u.getType(), "type:user", exact).size());
+		assertEquals(3, exact.getCount());
+		assertTrue(exact.isCountExact());
+
+		Pager capped = new Pager(1);
+		capped.setTrackTotalHits(2);
+		List<User> newest = s.findQuery(u.getType(), "type:user", capped);
+		assertEquals(1, newest.size());
+		assertEquals(2, capped.getCount());
+		assertFalse(capped.isCountExact());
+		// stopping early doesn't change the top hits
+		assertEquals(s.findQuery(u.getType(), "type:user", new Pager(1)).get(0).getId(), newest.get(0).getId());
+
+		// collection stops early when results are in index order
+		Pager noCount = new Pager(1);
+		noCount.setTrackTotalHits(0);
+		noCount.setSortby("_doc");
+		Set<String> ids = new HashSet<>();
+		List<User> page;
+		while (!(page = s.findQuery(u.getType(), "type:user", noCount)).isEmpty()) {
+			assertEquals(0, noCount.getCount());
+			ids.add(page.get(0).getId());
+		}
+		assertEquals(3, ids.size());
+	}
+
 	@Test
 	public void testSearchAfter() throws InterruptedException {
 		ArrayList<Sysprop> list = new ArrayList<>();
@@ -461,6 +511,24 @@ public abstract class SearchTest {
 		List<ParaObject> page4 = s.findQuery(appid3, null, "*", p);
 		assertTrue(page4.isEmpty());  // end
 		assertEquals(22, p.getCount());
+
+		// cursors work for any sort field
+		List<String> expected = new ArrayList<>();
+		for (Sysprop obj : list) {
+			expected.add(obj.getId());
+		}
+		Collections.sort(expected, Collections.reverseOrder());
+		Pager p2 = new Pager(5);
+		p2.setSortby(Config._ID);
+		p2.setDesc(true);
+		List<String> ids = new ArrayList<>();
+		List<ParaObject> page;
+		while (!(page = s.findQuery(appid3, null, "*", p2)).isEmpty()) {
+			for (ParaObject obj : page) {
+				ids.add(obj.getId());
+			}
+		}
+		assertEquals(expected, ids);
 		s.unindexAll(appid3, list);
 	}
 
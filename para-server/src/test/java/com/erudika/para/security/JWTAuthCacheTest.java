@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.security;
+
+import com.erudika.para.cache.CacheInvalidationBus;
+import com.erudika.para.core.App;
+import com.erudika.para.core.User;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.persistence.DAO;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class JWTAuthCacheTest {
+
+	@Test
+	public void testVerifiedTokensAreCachedUntilInvalidated() throws Exception {
+		JWTAuthCache cache = new JWTAuthCache(30, 100);
+		App app = new App("test");
+		app.resetSecret();
+		User user = new User("u1");
+		user.setAppid(app.getAppIdentifier());
+		user.resetTokenSecret();
+		SignedJWT jwt = SecurityUtils.generateJWToken(user, app);
+		String token = jwt.serialize();
+
+		assertNull(cache.get(token));
+		cache.put(token, cache.begin(), jwt, app, user);
+		JWTAuthCache.Entry entry = cache.get(token);
+		assertNotNull(entry);
+		assertEquals(app, entry.getApp());
+		assertEquals(user, entry.getUser());
+		assertNull(cache.get(token + "x"));
+
+		// updating the user (e.g. revoking all tokens) drops the entry
+		cache.onPostInvoke(DAO.class.getMethod("update", String.class, ParaObject.class),
+				new Object[]{app.getAppIdentifier(), user}, null);
+		assertNull(cache.get(token));
+
+		// an entry read before a write can't be cached after it
+		long seq = cache.begin();
+		cache.onPostInvoke(DAO.class.getMethod("updateAll", String.class, List.class),
+				new Object[]{app.getAppIdentifier(), Arrays.asList(app)}, null);
+		cache.put(token, seq, jwt, app, user);
+		assertNull(cache.get(token));
+
+		// reads don't invalidate anything
+		cache.put(token, cache.begin(), jwt, app, user);
+		cache.onPostInvoke(DAO.class.getMethod("read", String.class, String.class),
+				new Object[]{app.getAppIdentifier(), user}, null);
+		assertNotNull(cache.get(token));
+	}
+
+	@Test
+	public void testCachedUsersAreCopiesWithTenantInfo() throws Exception {
+		JWTAuthCache cache = new JWTAuthCache(30, 100);
+		CacheInvalidationBus bus = mock(CacheInvalidationBus.class);
+		cache.subscribe(bus);
+		App app = new App("test3");
+		app.resetSecret();
+		User user = new User("u3");
+		user.setAppid(app.getAppIdentifier());
+		user.resetTokenSecret();
+		user.setActiveTenantId("t1");
+		user.setRoleId(Arrays.asList("r1"));
+		SignedJWT jwt = SecurityUtils.generateJWToken(user, app);
+		String token = jwt.serialize();
+		cache.put(token, cache.begin(), jwt, app, user);
+
+		User cached = cache.get(token).getUser();
+		assertNotSame(user, cached);
+		assertEquals(user.getTokenSecret(), cached.getTokenSecret());
+		assertEquals("t1", cached.getActiveTenantId());
+		assertEquals(Arrays.asList("r1"), cached.getRoleId());
+		// changes made while handling a request are not kept
+		cached.setActiveTenantId("t2");
+		cached.setRoleId(Arrays.asList("r1", "r2"));
+		user.setRoleId(Arrays.asList("r3"));
+		assertEquals("t1", cache.get(token).getUser().getActiveTenantId());
+		assertEquals(Arrays.asList("r1"), cache.get(token).getUser().getRoleId());
+
+		// a role change is a write to the "metaUser" of the user, which is also sent to other nodes
+		Sysprop metaUser = new Sysprop("mu3");
+		metaUser.setType("metaUser");
+		metaUser.setAppid(app.getAppIdentifier());
+		metaUser.setParentid(user.getId());
+		cache.onPostInvoke(DAO.class.getMethod("update", String.class, ParaObject.class),
+				new Object[]{app.getAppIdentifier(), metaUser}, null);
+		assertNull(cache.get(token));
+		verify(bus).invalidate(app.getAppIdentifier(), user.getId());
+
+		// writes made on other nodes
+		cache.put(token, cache.begin(), jwt, app, user);
+		cache.onInvalidate(app.getAppIdentifier(), user.getId());
+		assertNull(cache.get(token));
+		cache.put(token, cache.begin(), jwt, app, user);
+		cache.onInvalidate(app.getAppIdentifier(), null);
+		assertNull(cache.get(token));
+	}
+
+	@Test
+	public void testExpiredTokensAreNotCached() throws Exception {
+		JWTAuthCache cache = new JWTAuthCache(30, 100);
+		App app = new App("test2");
+		app.resetSecret();
+		JWTClaimsSet claims = new JWTClaimsSet.Builder().
+				expirationTime(new Date(System.currentTimeMillis() - 1000)).build();
+		SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims);
+		jwt.sign(new MACSigner(app.getSecret()));
+		String token = jwt.serialize();
+		cache.put(token, cache.begin(), jwt, app, null);
+		assertNull(cache.get(token));
+	}
+
+}
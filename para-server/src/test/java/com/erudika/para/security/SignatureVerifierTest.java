@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013-2017 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.security;
+
+import com.erudika.para.rest.Signer;
+import com.erudika.para.utils.BufferedRequestWrapper;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class SignatureVerifierTest {
+
+	private static final String ACCESS_KEY = "app:test";
+	private static final String SECRET = "Xx3zP9oZqUuzXGqBI4cE1lZ4Wq8bF4ZjYxbnT2N7jHDh3kQJ1vYF8w==";
+
+	@Test
+	public void testSignaturesMatchSigner() throws Exception {
+		MultivaluedMap<String, String> params = new MultivaluedHashMap<>();
+		params.putSingle("q", "title:hello world*");
+		params.putSingle("limit", "5");
+		params.putSingle("a-b", "~/x");
+		assertTrue(verify("GET", "/v1/search/default", params, null, SECRET));
+		assertTrue(verify("GET", "/v1/_me", null, null, SECRET));
+		assertTrue(verify("DELETE", "/v1/users/123", null, null, SECRET));
+		assertTrue(verify("PUT", "/v1/users/123", null, "{\"name\":\"ünicode\"}", SECRET));
+		assertTrue(verify("POST", "/v1/users", params, "{\"name\":\"test\"}", SECRET));
+		assertTrue(verify("POST", "/v1/_newkeys", null, null, SECRET));
+		// the same key is reused for the same app and date, but not after the secret changes
+		assertTrue(verify("GET", "/v1/_me", null, null, SECRET));
+		assertFalse(verify("GET", "/v1/_me", null, null, SECRET + "x"));
+	}
+
+	@Test
+	public void testTamperedRequestsAreRejected() throws Exception {
+		Map<String, String> signed = new Signer().signRequest(ACCESS_KEY, SECRET, "PUT", "http://localhost:8080",
+				"/v1/users/123", null, null, "{\"name\":\"test\"}".getBytes(StandardCharsets.UTF_8));
+		HttpServletRequest req = request("PUT", "/v1/users/123", null, "{\"name\":\"evil\"}", signed);
+		assertTrue(SignatureVerifier.isSupported(req));
+		assertFalse(SecurityUtils.isValidSignature(req, SECRET));
+		req = request("PUT", "/v1/users/124", null, "{\"name\":\"test\"}", signed);
+		assertFalse(SecurityUtils.isValidSignature(req, SECRET));
+		req = request("PUT", "/v1/users/123", null, "{\"name\":\"test\"}", signed);
+		assertTrue(SecurityUtils.isValidSignature(req, SECRET));
+	}
+
+	@Test
+	public void testUnsupportedRequestsFallBackToSigner() throws Exception {
+		MultivaluedMap<String, String> params = new MultivaluedHashMap<>();
+		params.putSingle("id", "123");
+		// POST requests without a body sign their parameters as the payload
+		Map<String, String> signed = new Signer().signRequest(ACCESS_KEY, SECRET, "POST", "http://localhost:8080",
+				"/v1/_batch", null, params, null);
+		HttpServletRequest req = request("POST", "/v1/_batch", params, null, signed);
+		assertFalse(SignatureVerifier.isSupported(req));
+		assertTrue(SecurityUtils.isValidSignature(req, SECRET));
+	}
+
+	private boolean verify(String method, String path, MultivaluedMap<String, String> params,
+			String body, String secret) throws Exception {
+		Map<String, String> signed = new Signer().signRequest(ACCESS_KEY, SECRET, method, "http://localhost:8080",
+				path, null, params, body == null ? null : body.getBytes(StandardCharsets.UTF_8));
+		HttpServletRequest req = request(method, path, params, body, signed);
+		assertTrue(SignatureVerifier.isSupported(req));
+		return SecurityUtils.isValidSignature(req, secret);
+	}
+
+	private HttpServletRequest request(String method, String path, MultivaluedMap<String, String> params,
+			String body, Map<String, String> signed) throws Exception {
+		MockHttpServletRequest req = new MockHttpServletRequest(method, path);
+		req.setScheme("http");
+		req.setServerName("localhost");
+		req.setServerPort(8080);
+		req.addHeader("Host", "localhost:8080");
+		req.addHeader("X-Amz-Date", signed.get("X-Amz-Date"));
+		req.addHeader(HttpHeaders.AUTHORIZATION, signed.get(HttpHeaders.AUTHORIZATION));
+		if (params != null) {
+			for (String key : params.keySet()) {
+				req.addParameter(key, params.getFirst(key));
+			}
+		}
+		if (body != null) {
+			req.setContent(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return new BufferedRequestWrapper(req);
+	}
+}
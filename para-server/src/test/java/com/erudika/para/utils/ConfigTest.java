@@ -38,6 +38,26 @@ public class ConfigTest {
 		assertEquals("production", Config.getConfigParam("env", ""));
 	}
 
+	@Test
+	public void testTypedParams() {
+		assertEquals(3, Config.getConfigInt("test_int", 3));
+		System.setProperty("para.test_int", "5");
+		assertEquals(5, Config.getConfigInt("test_int", 3));
+		System.setProperty("para.test_int", "7");
+		assertEquals(7, Config.getConfigInt("test_int", 3));
+		assertEquals(7.0, Config.getConfigDouble("test_int", 3.0), 0.0);
+		System.clearProperty("para.test_int");
+		assertEquals(3, Config.getConfigInt("test_int", 3));
+		assertEquals(3, Config.getConfigInt(null, 3));
+
+		assertEquals(true, Config.getConfigBoolean("test_bool", true));
+		System.setProperty("para.test_bool", "false");
+		assertEquals(false, Config.getConfigBoolean("test_bool", true));
+		Config.reload();
+		assertEquals(false, Config.getConfigBoolean("test_bool", true));
+		System.clearProperty("para.test_bool");
+	}
+
 	@Test
 	public void testGetConfig() {
 		assertNotNull(Config.getConfig());
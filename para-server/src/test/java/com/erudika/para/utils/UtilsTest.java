@@ -295,6 +295,21 @@ public class UtilsTest {
 		assertFalse(typesMatch(null));
 	}
 
+	@Test
+	public void testGetSetProperty() {
+		User u = new User("123");
+		setProperty(u, Config._EMAIL, "u@test.co");
+		setProperty(u, Config._TIMESTAMP, 123L);
+		assertEquals("u@test.co", getProperty(u, Config._EMAIL));
+		assertEquals(123L, getProperty(u, Config._TIMESTAMP));
+		assertNull(getProperty(u, "unknown"));
+
+		Sysprop s = new Sysprop("456");
+		setProperty(s, "properties.custom", "value");
+		assertEquals("value", getProperty(s, "custom"));
+		assertEquals("456", getProperty(s, Config._ID));
+	}
+
 	@Test
 	public void testGetAnnotatedFields() {
 		User u = new User();
@@ -455,6 +470,31 @@ public class UtilsTest {
 		assertEquals("name", obj3.getName());
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGetAnnotatedFieldsAsJSON() throws Exception {
+		Sysprop s = new Sysprop("123");
+		s.setType("testtype");
+		s.setName("test");
+		s.setTags(Arrays.asList("tag1", "tag2"));
+		s.addProperty("num", 5);
+		s.addProperty("nested", Collections.singletonMap("key", "value"));
+
+		String json = getAnnotatedFieldsAsJSON(s);
+		assertTrue(json.startsWith("{\"type\":\"testtype\""));
+		assertEquals(getJsonReader(Map.class).readValue(getJsonWriterNoIdent().
+				writeValueAsString(getAnnotatedFields(s, false))), getJsonReader(Map.class).readValue(json));
+		assertEquals(getJsonMapper().valueToTree(getAnnotatedFields(s, false)), getAnnotatedFieldsAsTree(s));
+
+		Sysprop s2 = fromJSON(json);
+		assertNotNull(s2);
+		assertEquals("123", s2.getId());
+		assertEquals("test", s2.getName());
+		assertEquals(s.getTags(), s2.getTags());
+		assertEquals(5, s2.getProperty("num"));
+		assertEquals("value", ((Map<String, Object>) s2.getProperty("nested")).get("key"));
+	}
+
 	@Test
 	public void testToJSON() {
 		assertNotNull(toJSON(null));